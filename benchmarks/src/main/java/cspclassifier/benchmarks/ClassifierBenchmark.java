@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.benchmarks;
+
+import cspclassifier.*;
+import cspclassifier.util.*;
+import cspclassifier.validator.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Latency and throughput of getCandidates for each classifier factory on a
+ * synthetic corpus. Run with
+ * <pre>java -jar target/benchmarks.jar ClassifierBenchmark -prof gc</pre>
+ * to report allocation rate too.
+ * @author S.Welcker
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations=3,time=2)
+@Measurement(iterations=5,time=2)
+public class ClassifierBenchmark{
+	private static final int DOCUMENTS=1024;
+	/**
+	 * The classifier factory being measured
+	 */
+	@Param({"Bayesian","TF-IDF","kNN","C4.5","SVM"})
+	public String factory;
+	/**
+	 * Number of distinct words in the corpus
+	 */
+	@Param({"1000","10000"})
+	public int vocabularySize;
+	/**
+	 * Number of categories in the corpus
+	 */
+	@Param({"4","16"})
+	public int categoryCount;
+	/**
+	 * Number of words in each document
+	 */
+	@Param({"16","256"})
+	public int documentLength;
+	/**
+	 * Number of training samples
+	 */
+	@Param({"1000"})
+	public int trainingSize;
+	private Classifier<String> classifier;
+	private Classifier<Frequencies<String>> baseClassifier;
+	private String[] documents;
+	private List<Frequencies<String>> vectors;
+	/**
+	 * Train the classifiers and prepare the documents to be classified
+	 */
+	@Setup(Level.Trial)
+	public void setup(){
+		ZipfCorpus corpus=new ZipfCorpus(vocabularySize,categoryCount,documentLength,42);
+		List<Sample<String>> samples=corpus.nextSamples(trainingSize);
+		Function<String,Frequencies<String>> preprocessor=Starter.getDefaultPreprocessor(Locale.ENGLISH,false);
+		classifier=train(Starter.getDefaultClassifierFactory(Locale.ENGLISH,false,createFactory(factory)),samples);
+		List<Sample<Frequencies<String>>> preprocessed=samples.stream().
+				map((sample)->new Sample<>(preprocessor.apply(sample.getData()),sample.getCategory())).collect(Collectors.toList());
+		baseClassifier=train(createFactory(factory),preprocessed);
+		documents=new String[DOCUMENTS];
+		vectors=new ArrayList<>(DOCUMENTS);
+		for(int i=0;i<DOCUMENTS;i++){
+			documents[i]=corpus.nextSample().getData();
+			vectors.add(preprocessor.apply(documents[i]));
+		}
+	}
+	static BagClassifierFactory<Classifier<Frequencies<String>>,?,String> createFactory(String name){
+		switch(name){
+			case "Bayesian":
+				return new BayesianClassifierFactory<>();
+			case "TF-IDF":
+				return new TfIdfClassifierFactory<>();
+			case "kNN":
+				return new KNearestClassifierFactory<String>().setK(3);
+			case "C4.5":
+				return new C45ClassifierFactory<>();
+			case "SVM":
+				return new SvmClassifierFactory<>();
+			default:
+				throw new IllegalArgumentException(name);
+		}
+	}
+	static <C extends Classifier<T>,M extends Trainable<T>,T> C train(ClassifierFactory<C,M,T> factory,List<Sample<T>> samples){
+		M model=factory.createModel();
+		model.train(samples.stream());
+		return factory.getClassifier(model);
+	}
+	/**
+	 * Latency distribution of classifying a raw document, including preprocessing
+	 * @param cursor position in the documents
+	 * @return the results
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public List<ClassificationResult> latency(Cursor cursor){
+		return classifier.getCandidates(documents[cursor.next()]);
+	}
+	/**
+	 * Throughput of classifying raw documents, including preprocessing
+	 * @param cursor position in the documents
+	 * @return the results
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public List<ClassificationResult> throughput(Cursor cursor){
+		return classifier.getCandidates(documents[cursor.next()]);
+	}
+	/**
+	 * Latency of classifying preprocessed documents, i.e. getCandidates of the
+	 * underlying classifier alone
+	 * @param cursor position in the documents
+	 * @return the results
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public List<ClassificationResult> preprocessed(Cursor cursor){
+		return baseClassifier.getCandidates(vectors.get(cursor.next()));
+	}
+	/**
+	 * Position of a benchmark thread in the documents
+	 */
+	@State(Scope.Thread)
+	public static class Cursor{
+		private int position=0;
+		int next(){
+			position=(position+1)&(DOCUMENTS-1);
+			return position;
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.benchmarks;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimator of the memory retained by an object graph, assuming a 64-bit JVM
+ * with compressed references. Objects whose fields cannot be read by
+ * reflection(JDK classes on Java 16 or later without --add-opens) are
+ * approximated through the Collection and Map interfaces.
+ * @author S.Welcker
+ */
+public class DeepSize{
+	private static final int HEADER=12;
+	private static final int ARRAY_HEADER=16;
+	private static final int REFERENCE=4;
+	private static final int MAP_ENTRY=32;
+	private static final Map<Class<?>,List<Field>> FIELDS=new HashMap<>();
+	private DeepSize(){
+	}
+	/**
+	 * Estimate the number of bytes retained by a object
+	 * @param root the object
+	 * @return estimated size in bytes
+	 */
+	public static long of(Object root){
+		IdentityHashMap<Object,Boolean> visited=new IdentityHashMap<>();
+		Deque<Object> pending=new ArrayDeque<>();
+		long size=0;
+		push(root,visited,pending);
+		while(!pending.isEmpty()){
+			Object object=pending.pop();
+			Class<?> type=object.getClass();
+			if(type.isArray()){
+				int length=Array.getLength(object);
+				Class<?> component=type.getComponentType();
+				size+=align(ARRAY_HEADER+(long)length*sizeOf(component));
+				if(!component.isPrimitive()){
+					for(Object element:(Object[])object)
+						push(element,visited,pending);
+				}
+			}else{
+				List<Field> fields=getFields(type);
+				if(fields!=null){
+					long shallow=HEADER;
+					for(Field field:fields){
+						shallow+=sizeOf(field.getType());
+						if(!field.getType().isPrimitive()){
+							try{
+								push(field.get(object),visited,pending);
+							}catch(IllegalAccessException ex){
+							}
+						}
+					}
+					size+=align(shallow);
+				}else if(object instanceof Map){
+					Map<?,?> map=(Map<?,?>)object;
+					size+=align(HEADER+4*REFERENCE)+align(ARRAY_HEADER+(long)REFERENCE*map.size()*4/3)+(long)MAP_ENTRY*map.size();
+					for(Map.Entry<?,?> entry:map.entrySet()){
+						push(entry.getKey(),visited,pending);
+						push(entry.getValue(),visited,pending);
+					}
+				}else if(object instanceof Collection){
+					Collection<?> collection=(Collection<?>)object;
+					size+=align(HEADER+2*REFERENCE)+align(ARRAY_HEADER+(long)REFERENCE*collection.size());
+					for(Object element:collection)
+						push(element,visited,pending);
+				}else{
+					size+=align(HEADER+REFERENCE);
+				}
+			}
+		}
+		return size;
+	}
+	private static void push(Object object,IdentityHashMap<Object,Boolean> visited,Deque<Object> pending){
+		if(object!=null&&!(object instanceof Class)&&visited.put(object,Boolean.TRUE)==null)
+			pending.push(object);
+	}
+	/**
+	 * @return the instance fields of a class or null if some of them are not
+	 * accessible
+	 */
+	private static synchronized List<Field> getFields(Class<?> type){
+		if(FIELDS.containsKey(type))
+			return FIELDS.get(type);
+		List<Field> fields=new ArrayList<>();
+		try{
+			for(Class<?> c=type;c!=null;c=c.getSuperclass()){
+				for(Field field:c.getDeclaredFields()){
+					if(!Modifier.isStatic(field.getModifiers())){
+						field.setAccessible(true);
+						fields.add(field);
+					}
+				}
+			}
+		}catch(RuntimeException ex){
+			fields=null;
+		}
+		FIELDS.put(type,fields);
+		return fields;
+	}
+	private static int sizeOf(Class<?> type){
+		if(type==long.class||type==double.class)
+			return 8;
+		else if(type==int.class||type==float.class)
+			return 4;
+		else if(type==short.class||type==char.class)
+			return 2;
+		else if(type==byte.class||type==boolean.class)
+			return 1;
+		else
+			return REFERENCE;
+	}
+	private static long align(long size){
+		return (size+7)&~7L;
+	}
+}
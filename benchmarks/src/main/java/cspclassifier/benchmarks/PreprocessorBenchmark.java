@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.benchmarks;
+
+import cspclassifier.*;
+import cspclassifier.util.*;
+
+import java.text.BreakIterator;
+import java.text.Normalizer;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of each stage of the text preprocessing pipeline built by Starter and
+ * of the whole pipeline. Every input consists of exactly TOKENS tokens after
+ * tokenization and whitespace filtering, so the scores are in ns/token. Run
+ * with
+ * <pre>java -jar target/benchmarks.jar PreprocessorBenchmark -prof gc</pre>
+ * to get bytes allocated per token(gc.alloc.rate.norm) too.
+ * @author S.Welcker
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations=3,time=2)
+@Measurement(iterations=5,time=2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PreprocessorBenchmark{
+	private static final int TOKENS=1000;
+	private static final String[] LATIN={"The ","classifier ","learns ","from ","labeled ","samples",", ","and ","the ","Straße ",
+		"Über ","naïve ","façade ","CAFÉ ","ﬁnance ","ＦＵＬＬ ","running ","jumped ","easily ","2019 ","3.14 ","e-mail ","isn't ","(",")","."};
+	private static final String[] CJK={"分","類","器","從","標","記","的","樣","本","學","習","，","語","言","處","理","文","字","。",
+		"日","本","語","の","テ","キ","ス","ト","を","分","析","する","２０１９"," "};
+	private static final String[] MIXED={"The ","分類器 ","learns ","from ","樣本",", ","Straße ","日本語 ","text ","テキスト ","2019年 ","CAFÉ ","。"};
+	/**
+	 * Script of the input
+	 */
+	@Param({"Latin","CJK","Mixed"})
+	public String script;
+	private Locale locale;
+	private String text;
+	private String normalized;
+	private List<String> tokens;
+	private List<String> filtered;
+	private List<String> folded;
+	private Function<String,String> normalizer;
+	private Function<String,String> transformer;
+	private Function<String,Stream<String>> tokenizer;
+	private Function<Stream<String>,Stream<String>> whitespaceFilter;
+	private Function<Stream<String>,Stream<String>> foldcaser;
+	private Function<Stream<String>,Stream<String>> stemmer;
+	private Function<Stream<String>,Stream<String>> bigramGenerator;
+	private Function<String,Stream<String>> pipeline;
+	private Function<String,Stream<String>> stemmingPipeline;
+	private Function<String,Frequencies<String>> preprocessor;
+	/**
+	 * Build the stages and the input of each stage
+	 */
+	@Setup(Level.Trial)
+	public void setup(){
+		String[] units;
+		switch(script){
+			case "Latin":
+				locale=Locale.ENGLISH;
+				units=LATIN;
+				break;
+			case "CJK":
+				locale=Locale.CHINESE;
+				units=CJK;
+				break;
+			case "Mixed":
+				locale=Locale.ENGLISH;
+				units=MIXED;
+				break;
+			default:
+				throw new IllegalArgumentException(script);
+		}
+		boolean cjk=locale==Locale.CHINESE;
+		normalizer=TextPreprocessors.getJavaNormalizier(Normalizer.Form.NFKC);
+		transformer=TextPreprocessors.getIcuTransformer("Traditional-Simplified");
+		tokenizer=TextPreprocessors.getJavaTokenizer(cjk?BreakIterator.getCharacterInstance(locale):BreakIterator.getWordInstance(locale));
+		whitespaceFilter=TextPreprocessors.getWhitespaceFilter();
+		foldcaser=TextPreprocessors.getFoldcaser();
+		stemmer=TextPreprocessors.getStemmer(locale);
+		bigramGenerator=TextPreprocessors.getNgramGenerator(2);
+		pipeline=Starter.getDefaultTokenizer(locale,false);
+		stemmingPipeline=Starter.getDefaultTokenizer(locale,true);
+		preprocessor=Starter.getDefaultPreprocessor(locale,false);
+		text=generate(units,new Random(42));
+		normalized=normalizer.apply(text);
+		tokens=tokenizer.apply(normalized).collect(Collectors.toList());
+		filtered=whitespaceFilter.apply(tokens.stream()).collect(Collectors.toList());
+		folded=foldcaser.apply(filtered.stream()).collect(Collectors.toList());
+	}
+	private long countTokens(String text){
+		return whitespaceFilter.apply(tokenizer.apply(normalizer.apply(text))).count();
+	}
+	/**
+	 * Concatenate randomly chosen units until the text contains exactly TOKENS
+	 * tokens, units that would overshoot are skipped
+	 */
+	private String generate(String[] units,Random random){
+		StringBuilder buf=new StringBuilder();
+		long count=0;
+		for(int attempt=0;count<TOKENS;attempt++){
+			if(attempt>TOKENS*100)
+				throw new IllegalStateException("Cannot generate input with "+TOKENS+" tokens");
+			int length=buf.length();
+			buf.append(units[random.nextInt(units.length)]);
+			long newCount=countTokens(buf.toString());
+			if(newCount>TOKENS)
+				buf.setLength(length);
+			else
+				count=newCount;
+		}
+		return buf.toString();
+	}
+	private static void consume(Stream<String> tokens,Blackhole blackhole){
+		tokens.forEach(blackhole::consume);
+	}
+	/**
+	 * NFKC normalization
+	 * @return the normalized text
+	 */
+	@Benchmark
+	@OperationsPerInvocation(TOKENS)
+	public String normalize(){
+		return normalizer.apply(text);
+	}
+	/**
+	 * Traditional to simplified Chinese transformation, used for Chinese only
+	 * @return the transformed text
+	 */
+	@Benchmark
+	@OperationsPerInvocation(TOKENS)
+	public String transform(){
+		return transformer.apply(normalized);
+	}
+	/**
+	 * BreakIterator based tokenization
+	 * @param blackhole sink of the tokens
+	 */
+	@Benchmark
+	@OperationsPerInvocation(TOKENS)
+	public void tokenize(Blackhole blackhole){
+		consume(tokenizer.apply(normalized),blackhole);
+	}
+	/**
+	 * Whitespace filter
+	 * @param blackhole sink of the tokens
+	 */
+	@Benchmark
+	@OperationsPerInvocation(TOKENS)
+	public void filterWhitespace(Blackhole blackhole){
+		consume(whitespaceFilter.apply(tokens.stream()),blackhole);
+	}
+	/**
+	 * ICU case folding
+	 * @param blackhole sink of the tokens
+	 */
+	@Benchmark
+	@OperationsPerInvocation(TOKENS)
+	public void foldcase(Blackhole blackhole){
+		consume(foldcaser.apply(filtered.stream()),blackhole);
+	}
+	/**
+	 * Snowball stemmer of the locale
+	 * @param blackhole sink of the tokens
+	 */
+	@Benchmark
+	@OperationsPerInvocation(TOKENS)
+	public void stem(Blackhole blackhole){
+		consume(stemmer.apply(folded.stream()),blackhole);
+	}
+	/**
+	 * Bigram generation, used for Chinese and Japanese
+	 * @param blackhole sink of the tokens
+	 */
+	@Benchmark
+	@OperationsPerInvocation(TOKENS)
+	public void bigram(Blackhole blackhole){
+		consume(bigramGenerator.apply(folded.stream()),blackhole);
+	}
+	/**
+	 * The whole pipeline of Starter.getDefaultTokenizer
+	 * @param blackhole sink of the tokens
+	 */
+	@Benchmark
+	@OperationsPerInvocation(TOKENS)
+	public void pipeline(Blackhole blackhole){
+		consume(pipeline.apply(text),blackhole);
+	}
+	/**
+	 * The whole pipeline of Starter.getDefaultTokenizer with stemming
+	 * @param blackhole sink of the tokens
+	 */
+	@Benchmark
+	@OperationsPerInvocation(TOKENS)
+	public void pipelineWithStemming(Blackhole blackhole){
+		consume(stemmingPipeline.apply(text),blackhole);
+	}
+	/**
+	 * The whole pipeline of Starter.getDefaultPreprocessor, i.e. including
+	 * counting of the tokens
+	 * @return the frequencies of the tokens
+	 */
+	@Benchmark
+	@OperationsPerInvocation(TOKENS)
+	public Frequencies<String> preprocess(){
+		return preprocessor.apply(text);
+	}
+}
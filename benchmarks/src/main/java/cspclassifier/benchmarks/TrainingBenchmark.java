@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.benchmarks;
+
+import cspclassifier.*;
+import cspclassifier.util.*;
+import cspclassifier.validator.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Harness that measures training throughput and footprint of each model type.
+ * Samples are preprocessed first, then for each model type they are fed
+ * through Trainable.train(Stream), the classifiers are built from the model,
+ * and the model is saved and loaded if it is persistable, see runPersistable. The results are
+ * written as JSON so that runs can be compared.
+ * <pre>
+ * java -cp target/benchmarks.jar cspclassifier.benchmarks.TrainingBenchmark [options]
+ *   --samples N          number of synthetic samples(default 10000)
+ *   --vocabulary N       vocabulary size of synthetic samples(default 10000)
+ *   --categories N       number of categories of synthetic samples(default 8)
+ *   --length N           words per synthetic sample(default 128)
+ *   --input FILE         use samples from a file of labeled lines instead
+ *   --locale TAG         locale of the text(default en)
+ *   --output FILE        write the JSON to a file instead of standard output
+ * </pre>
+ * Peak heap is the sum of the peak usage of the heap memory pools during
+ * training, retained bytes are estimated by walking the object graph, while
+ * estimated bytes are the cheap estimates given by MemoryAccountable.
+ * @author S.Welcker
+ */
+public class TrainingBenchmark{
+	private final List<Sample<Frequencies<String>>> samples;
+	/**
+	 * Create a harness
+	 * @param samples the preprocessed samples
+	 */
+	public TrainingBenchmark(List<Sample<Frequencies<String>>> samples){
+		this.samples=samples;
+	}
+	/**
+	 * Run the benchmark for a model type
+	 * @param name the name of the model type
+	 * @param modelSupplier create empty model
+	 * @param factories the factories using the model type, by name
+	 * @return the results
+	 */
+	public <M extends Trainable<Frequencies<String>>> Map<String,Object> run(String name,Supplier<M> modelSupplier,
+			Map<String,ClassifierFactory<? extends Classifier<Frequencies<String>>,M,Frequencies<String>>> factories){
+		return measure(name,modelSupplier.get(),factories);
+	}
+	/**
+	 * Run the benchmark for a persistable model type, the model is also saved
+	 * and loaded
+	 * @param name the name of the model type
+	 * @param modelSupplier create empty model
+	 * @param factories the factories using the model type, by name
+	 * @return the results
+	 */
+	public <M extends Trainable<Frequencies<String>>&Persistable<String>> Map<String,Object> runPersistable(String name,Supplier<M> modelSupplier,
+			Map<String,ClassifierFactory<? extends Classifier<Frequencies<String>>,M,Frequencies<String>>> factories){
+		M model=modelSupplier.get();
+		Map<String,Object> result=measure(name,model,factories);
+		result.putAll(persist(model,modelSupplier));
+		return result;
+	}
+	private <M extends Trainable<Frequencies<String>>> Map<String,Object> measure(String name,M model,
+			Map<String,ClassifierFactory<? extends Classifier<Frequencies<String>>,M,Frequencies<String>>> factories){
+		Map<String,Object> result=new LinkedHashMap<>();
+		result.put("model",name);
+		collectGarbage();
+		List<MemoryPoolMXBean> pools=ManagementFactory.getMemoryPoolMXBeans().stream().
+				filter((pool)->pool.getType()==MemoryType.HEAP).collect(Collectors.toList());
+		pools.forEach(MemoryPoolMXBean::resetPeakUsage);
+		long time=System.nanoTime();
+		model.train(samples.stream());
+		time=System.nanoTime()-time;
+		result.put("trainMillis",time/1e6);
+		result.put("samplesPerSecond",samples.size()*1e9/time);
+		result.put("peakHeapBytes",pools.stream().mapToLong((pool)->pool.getPeakUsage().getUsed()).sum());
+		result.put("retainedBytes",DeepSize.of(model));
+		result.put("estimatedBytes",MemoryAccountable.estimatedBytes(model));
+		List<Object> classifiers=new ArrayList<>();
+		for(Map.Entry<String,ClassifierFactory<? extends Classifier<Frequencies<String>>,M,Frequencies<String>>> entry:factories.entrySet()){
+			Map<String,Object> classifierResult=new LinkedHashMap<>();
+			classifierResult.put("factory",entry.getKey());
+			time=System.nanoTime();
+			Classifier<Frequencies<String>> classifier=entry.getValue().getClassifier(model);
+			time=System.nanoTime()-time;
+			classifierResult.put("getClassifierMillis",time/1e6);
+			classifierResult.put("retainedBytes",DeepSize.of(classifier));
+			classifierResult.put("estimatedBytes",MemoryAccountable.estimatedBytes(classifier));
+			classifiers.add(classifierResult);
+		}
+		result.put("classifiers",classifiers);
+		return result;
+	}
+	private static <M extends Persistable<String>> Map<String,Object> persist(M model,Supplier<M> modelSupplier){
+		Map<String,Object> result=new LinkedHashMap<>();
+		try{
+			File directory=Files.createTempDirectory("model").toFile();
+			try{
+				long time=System.nanoTime();
+				model.save(directory,Function.identity());
+				result.put("saveMillis",(System.nanoTime()-time)/1e6);
+				result.put("savedBytes",sizeOf(directory));
+				M emptyModel=modelSupplier.get();
+				time=System.nanoTime();
+				emptyModel.load(directory,Function.identity());
+				result.put("loadMillis",(System.nanoTime()-time)/1e6);
+			}finally{
+				delete(directory);
+			}
+		}catch(IOException ex){
+			result.put("persistError",ex.toString());
+		}
+		return result;
+	}
+	private static long sizeOf(File file){
+		File[] children=file.listFiles();
+		return children==null?file.length():Arrays.stream(children).mapToLong(TrainingBenchmark::sizeOf).sum();
+	}
+	private static void delete(File file){
+		File[] children=file.listFiles();
+		if(children!=null)
+			for(File child:children)
+				delete(child);
+		file.delete();
+	}
+	private static void collectGarbage(){
+		for(int i=0;i<3;i++){
+			System.gc();
+			try{
+				Thread.sleep(100);
+			}catch(InterruptedException ex){
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	/**
+	 * Run the harness
+	 * @param args options, see the class description
+	 * @throws IOException if the input cannot be read or the output cannot be written
+	 */
+	public static void main(String[] args) throws IOException{
+		Map<String,String> options=new HashMap<>();
+		for(int i=0;i+1<args.length;i+=2){
+			if(!args[i].startsWith("--"))
+				throw new IllegalArgumentException("Unknown option: "+args[i]);
+			options.put(args[i].substring(2),args[i+1]);
+		}
+		Locale locale=Locale.forLanguageTag(options.getOrDefault("locale","en"));
+		Map<String,Object> result=new LinkedHashMap<>();
+		List<Sample<String>> raw;
+		if(options.containsKey("input")){
+			try(Stream<Sample<String>> lines=TextDatasetHelper.labeledLines(Paths.get(options.get("input")))){
+				raw=lines.collect(Collectors.toList());
+			}
+			result.put("source",options.get("input"));
+		}else{
+			int vocabularySize=Integer.parseInt(options.getOrDefault("vocabulary","10000"));
+			int categoryCount=Integer.parseInt(options.getOrDefault("categories","8"));
+			int documentLength=Integer.parseInt(options.getOrDefault("length","128"));
+			raw=new ZipfCorpus(vocabularySize,categoryCount,documentLength,42).nextSamples(Integer.parseInt(options.getOrDefault("samples","10000")));
+			result.put("source","zipf");
+			result.put("vocabularySize",vocabularySize);
+			result.put("categoryCount",categoryCount);
+			result.put("documentLength",documentLength);
+		}
+		result.put("samples",raw.size());
+		result.put("javaVersion",System.getProperty("java.version"));
+		result.put("maxHeapBytes",Runtime.getRuntime().maxMemory());
+		Function<String,Frequencies<String>> preprocessor=Starter.getDefaultPreprocessor(locale,false);
+		long time=System.nanoTime();
+		List<Sample<Frequencies<String>>> samples=raw.stream().
+				map((sample)->new Sample<>(preprocessor.apply(sample.getData()),sample.getCategory())).collect(Collectors.toList());
+		time=System.nanoTime()-time;
+		result.put("preprocessMillis",time/1e6);
+		raw=null;
+		TrainingBenchmark benchmark=new TrainingBenchmark(samples);
+		List<Object> models=new ArrayList<>();
+		Map<String,ClassifierFactory<? extends Classifier<Frequencies<String>>,FrequenciesModel<String>,Frequencies<String>>> frequenciesFactories=new LinkedHashMap<>();
+		frequenciesFactories.put("Bayesian",new BayesianClassifierFactory<>());
+		frequenciesFactories.put("TF-IDF",new TfIdfClassifierFactory<>());
+		models.add(benchmark.runPersistable("FrequenciesModel",FrequenciesModel::new,frequenciesFactories));
+		Map<String,ClassifierFactory<? extends Classifier<Frequencies<String>>,DocumentVectorsModel<String>,Frequencies<String>>> vectorsFactories=new LinkedHashMap<>();
+		vectorsFactories.put("kNN",new KNearestClassifierFactory<String>().setK(3));
+		vectorsFactories.put("C4.5",new C45ClassifierFactory<>());
+		vectorsFactories.put("SVM",new SvmClassifierFactory<>());
+		models.add(benchmark.run("DocumentVectorsModel",DocumentVectorsModel::new,vectorsFactories));
+		OnlineLinearClassifierFactory<String> onlineFactory=new OnlineLinearClassifierFactory<>();
+		models.add(benchmark.run("LinearModel",onlineFactory::createModel,Collections.singletonMap("OnlineLinear",onlineFactory)));
+		result.put("models",models);
+		String json=toJson(result,new StringBuilder(),"").append('\n').toString();
+		if(options.containsKey("output"))
+			Files.write(Paths.get(options.get("output")),json.getBytes(StandardCharsets.UTF_8));
+		else
+			System.out.print(json);
+	}
+	private static StringBuilder toJson(Object value,StringBuilder buf,String indent){
+		if(value instanceof Map){
+			buf.append("{");
+			String sep="\n";
+			for(Map.Entry<?,?> entry:((Map<?,?>)value).entrySet()){
+				buf.append(sep).append(indent).append("  ");
+				toJson(entry.getKey().toString(),buf,indent+"  ").append(": ");
+				toJson(entry.getValue(),buf,indent+"  ");
+				sep=",\n";
+			}
+			buf.append('\n').append(indent).append('}');
+		}else if(value instanceof List){
+			buf.append("[");
+			String sep="\n";
+			for(Object element:(List<?>)value){
+				buf.append(sep).append(indent).append("  ");
+				toJson(element,buf,indent+"  ");
+				sep=",\n";
+			}
+			buf.append('\n').append(indent).append(']');
+		}else if(value instanceof Double){
+			double d=(Double)value;
+			buf.append(Double.isFinite(d)?String.format(Locale.ROOT,"%.3f",d):"null");
+		}else if(value instanceof Number||value instanceof Boolean){
+			buf.append(value);
+		}else if(value==null){
+			buf.append("null");
+		}else{
+			buf.append('"');
+			for(char c:value.toString().toCharArray()){
+				if(c=='"'||c=='\\')
+					buf.append('\\').append(c);
+				else if(c<0x20)
+					buf.append(String.format("\\u%04x",(int)c));
+				else
+					buf.append(c);
+			}
+			buf.append('"');
+		}
+		return buf;
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.benchmarks;
+
+import cspclassifier.*;
+import cspclassifier.validator.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generator of synthetic text corpus. Word ranks follow a Zipf distribution
+ * like natural language, some of the words in each document are drawn from a
+ * vocabulary shifted by its category so that categories can be told apart.
+ * The same seed always give the same corpus, so no data need to be downloaded.
+ * @author S.Welcker
+ */
+public class ZipfCorpus{
+	private static final double EXPONENT=1.07;
+	private static final double TOPICALITY=0.3;
+	private final int vocabularySize;
+	private final int documentLength;
+	private final double[] cumulative;
+	private final String[] words;
+	private final Category[] categories;
+	private final Random random;
+	/**
+	 * Create a generator
+	 * @param vocabularySize number of distinct words
+	 * @param categoryCount number of categories
+	 * @param documentLength number of words in each document
+	 * @param seed seed of the random generator
+	 */
+	public ZipfCorpus(int vocabularySize,int categoryCount,int documentLength,long seed){
+		this.vocabularySize=vocabularySize;
+		this.documentLength=documentLength;
+		this.random=new Random(seed);
+		cumulative=new double[vocabularySize];
+		double sum=0;
+		for(int i=0;i<vocabularySize;i++){
+			sum+=1/Math.pow(i+1,EXPONENT);
+			cumulative[i]=sum;
+		}
+		for(int i=0;i<vocabularySize;i++)
+			cumulative[i]/=sum;
+		words=new String[vocabularySize];
+		for(int i=0;i<vocabularySize;i++)
+			words[i]=toWord(i);
+		categories=new Category[categoryCount];
+		for(int i=0;i<categoryCount;i++)
+			categories[i]=new Category("c"+i);
+	}
+	private static String toWord(int id){
+		StringBuilder buf=new StringBuilder();
+		do{
+			buf.append((char)('a'+id%26));
+			id/=26;
+		}while(id>0);
+		return buf.append('x').toString();
+	}
+	private int nextRank(){
+		int i=Arrays.binarySearch(cumulative,random.nextDouble());
+		return Math.min(i>=0?i:-i-1,vocabularySize-1);
+	}
+	/**
+	 * Generate a word
+	 * @param category the index of the category of the document
+	 * @return the word
+	 */
+	private String nextWord(int category){
+		int rank=nextRank();
+		if(random.nextDouble()<TOPICALITY)
+			rank=(int)((rank+(long)category*vocabularySize/categories.length)%vocabularySize);
+		return words[rank];
+	}
+	/**
+	 * Generate a document
+	 * @param category the index of the category
+	 * @return the text of the document
+	 */
+	public String nextDocument(int category){
+		StringBuilder buf=new StringBuilder();
+		for(int i=0;i<documentLength;i++){
+			if(i>0)
+				buf.append(' ');
+			buf.append(nextWord(category));
+		}
+		return buf.toString();
+	}
+	/**
+	 * Generate a sample with a random category
+	 * @return the sample
+	 */
+	public Sample<String> nextSample(){
+		int category=random.nextInt(categories.length);
+		return new Sample<>(nextDocument(category),categories[category]);
+	}
+	/**
+	 * Generate some samples
+	 * @param count the number of samples
+	 * @return the samples
+	 */
+	public List<Sample<String>> nextSamples(int count){
+		List<Sample<String>> samples=new ArrayList<>(count);
+		for(int i=0;i<count;i++)
+			samples.add(nextSample());
+		return samples;
+	}
+	/**
+	 * Generate a data set
+	 * @param count the number of samples
+	 * @return the data set
+	 */
+	public DataSet<String> nextDataSet(int count){
+		List<Sample<String>> samples=nextSamples(count);
+		return new DataSet<>(()->samples.stream(),"Zipf("+vocabularySize+","+categories.length+","+documentLength+")");
+	}
+	/**
+	 * @return the categories
+	 */
+	public List<Category> getCategories(){
+		return Arrays.asList(categories);
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A sampled classification request
+ * @author S.Welcker
+ */
+@Name("cspclassifier.Classify")
+@Label("Classify")
+@Category("Classifier")
+@Description("A sampled classification request")
+@StackTrace(false)
+public class ClassifyEvent extends Event{
+	/**
+	 * The classifier
+	 */
+	@Label("Classifier")
+	public String classifier;
+	/**
+	 * Number of tokens in the object, -1 if unknown
+	 */
+	@Label("Tokens")
+	public long tokens;
+	/**
+	 * Number of categories scored
+	 */
+	@Label("Categories")
+	public int categories;
+}
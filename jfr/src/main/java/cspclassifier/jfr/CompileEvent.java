@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A classifier built from a model by getClassifier
+ * @author S.Welcker
+ */
+@Name("cspclassifier.Compile")
+@Label("Compile Classifier")
+@Category("Classifier")
+@Description("A classifier built from a model")
+public class CompileEvent extends Event{
+	/**
+	 * The factory
+	 */
+	@Label("Factory")
+	public String factory;
+	/**
+	 * Type of the model
+	 */
+	@Label("Model")
+	public String model;
+	/**
+	 * Number of samples trained into the model, -1 if unknown
+	 */
+	@Label("Samples")
+	public long samples;
+	/**
+	 * Number of categories of the model, -1 if unknown
+	 */
+	@Label("Categories")
+	public int categories;
+	/**
+	 * Estimated memory used by the model, -1 if unknown
+	 */
+	@Label("Estimated Model Size")
+	@DataAmount
+	public long estimatedBytes;
+	/**
+	 * Time spent in feature selection
+	 */
+	@Label("Feature Selection Time")
+	@Timespan(Timespan.NANOSECONDS)
+	public long featureSelectionTime;
+}
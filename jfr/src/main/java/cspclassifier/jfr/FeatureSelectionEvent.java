@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Features selected before building a classifier
+ * @author S.Welcker
+ */
+@Name("cspclassifier.FeatureSelection")
+@Label("Feature Selection")
+@Category("Classifier")
+@Description("Features selected before building a classifier")
+public class FeatureSelectionEvent extends Event{
+	/**
+	 * The feature selector
+	 */
+	@Label("Selector")
+	public String selector;
+	/**
+	 * Number of selected features
+	 */
+	@Label("Selected")
+	public int selected;
+}
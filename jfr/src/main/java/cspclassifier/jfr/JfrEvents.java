@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.jfr;
+
+import cspclassifier.*;
+import cspclassifier.util.*;
+import cspclassifier.validator.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import jdk.jfr.EventType;
+
+/**
+ * Wrappers that emit Java Flight Recorder events for training, classifier
+ * building, persistence and classification. When no recording is running,
+ * the wrappers only check if the events are enabled.
+ * @author S.Welcker
+ */
+public class JfrEvents{
+	private static final EventType CLASSIFY=EventType.getEventType(ClassifyEvent.class);
+	private static final ThreadLocal<long[]> FEATURE_SELECTION_TIME=ThreadLocal.withInitial(()->new long[1]);
+	private JfrEvents(){
+	}
+	/**
+	 * Emit a TrainEvent for each batch of samples trained by train(Stream)
+	 * @param <T> the type of the objects to be classified
+	 * @param model the model
+	 * @return the recording model, the original model should still be used
+	 * to build classifiers
+	 */
+	public static <T> Trainable<T> recordModel(Trainable<T> model){
+		return new Trainable<T>(){
+			@Override
+			public void train(T data,Category category){
+				model.train(data,category);
+			}
+			@Override
+			public void train(Stream<Sample<T>> samples){
+				TrainEvent event=new TrainEvent();
+				if(!event.isEnabled()){
+					model.train(samples);
+					return;
+				}
+				LongAdder count=new LongAdder();
+				event.begin();
+				model.train(samples.peek((sample)->count.increment()));
+				event.end();
+				if(event.shouldCommit()){
+					event.model=getModelName(model);
+					event.samples=count.sum();
+					event.commit();
+				}
+			}
+		};
+	}
+	/**
+	 * Emit a CompileEvent for each classifier built by a factory and
+	 * ClassifyEvent for sampled requests to the classifiers. The feature
+	 * selector of a BagClassifierFactory is wrapped by a recording one when
+	 * classifiers are built, so that time spent in feature selection is
+	 * recorded too, the factory itself is not modified.
+	 * @param <M> the type of the model
+	 * @param <T> the type of the objects to be classified
+	 * @param factory the factory
+	 * @param sampleInterval one in how many requests are recorded on average
+	 * @return the recording factory
+	 */
+	public static <M extends Trainable<T>,T> ClassifierFactory<Classifier<T>,M,T> recordFactory(ClassifierFactory<? extends Classifier<T>,M,T> factory,int sampleInterval){
+		return new RecordingClassifierFactory<>(factory,sampleInterval);
+	}
+	/**
+	 * Emit a ClassifyEvent for sampled requests to a classifier. The recording
+	 * classifier is an IncrementalClassifier if the classifier is, and it
+	 * reports the memory used by the classifier.
+	 * @param <T> the type of the objects to be classified
+	 * @param classifier the classifier
+	 * @param name the name of the classifier in the events
+	 * @param sampleInterval one in how many requests are recorded on average
+	 * @return the recording classifier
+	 */
+	public static <T> Classifier<T> recordClassifier(Classifier<T> classifier,String name,int sampleInterval){
+		return wrap((object,max)->{
+			if(!isSampled(sampleInterval))
+				return classifier.getCandidates(object,max);
+			ClassifyEvent event=new ClassifyEvent();
+			event.begin();
+			List<ClassificationResult> results=classifier.getCandidates(object,max);
+			commit(event,name,object instanceof Frequencies?countTokens((Frequencies<?>)object):-1,results);
+			return results;
+		},classifier,classifier instanceof IncrementalClassifier?(IncrementalClassifier<T>)classifier:null);
+	}
+	/**
+	 * Keep the capabilities of a classifier in its recording wrapper
+	 * @param recording the recording classifier
+	 * @param target the classifier doing the work, its memory is reported
+	 * @param trainer trains the target with samples of the wrapper, null if
+	 * the target is not an IncrementalClassifier
+	 * @return the wrapper
+	 */
+	private static <T> Classifier<T> wrap(Classifier<T> recording,Object target,Trainable<T> trainer){
+		return trainer!=null?new RecordingIncrementalClassifier<>(recording,target,trainer):new RecordingClassifier<>(recording,target);
+	}
+	/**
+	 * Save a model and emit a PersistEvent
+	 * @param <T> the type of tokens
+	 * @param model the model
+	 * @param directory where the model will be saved to
+	 * @param encoder encode token to String without tab and new line
+	 */
+	public static <T> void save(Persistable<T> model,File directory,Function<T,String> encoder){
+		PersistEvent event=new PersistEvent();
+		event.begin();
+		model.save(directory,encoder);
+		commit(event,"save",model,directory);
+	}
+	/**
+	 * Load a model and emit a PersistEvent
+	 * @param <T> the type of tokens
+	 * @param model the model
+	 * @param directory where the model is saved to
+	 * @param decoder decode String to token
+	 */
+	public static <T> void load(Persistable<T> model,File directory,Function<String,T> decoder){
+		PersistEvent event=new PersistEvent();
+		event.begin();
+		model.load(directory,decoder);
+		commit(event,"load",model,directory);
+	}
+	private static void commit(PersistEvent event,String operation,Object model,File directory){
+		event.end();
+		if(event.shouldCommit()){
+			event.operation=operation;
+			event.model=getModelName(model);
+			event.directory=directory.getAbsolutePath();
+			event.bytes=sizeOf(directory);
+			event.commit();
+		}
+	}
+	private static long sizeOf(File file){
+		File[] children=file.listFiles();
+		return children==null?file.length():Arrays.stream(children).mapToLong(JfrEvents::sizeOf).sum();
+	}
+	private static boolean isSampled(int sampleInterval){
+		return CLASSIFY.isEnabled()&&(sampleInterval<=1||ThreadLocalRandom.current().nextInt(sampleInterval)==0);
+	}
+	private static void commit(ClassifyEvent event,String name,long tokens,List<ClassificationResult> results){
+		event.end();
+		if(event.shouldCommit()){
+			event.classifier=name;
+			event.tokens=tokens;
+			event.categories=results.size();
+			event.commit();
+		}
+	}
+	private static long countTokens(Frequencies<?> frequencies){
+		long tokens=0;
+		for(Counter counter:frequencies.toMap().values())
+			tokens+=counter.getCount();
+		return tokens;
+	}
+	private static String getModelName(Object model){
+		if(model instanceof PreprocessModel)
+			model=((PreprocessModel<?,?,?>)model).getUnderlying();
+		return model.getClass().getSimpleName();
+	}
+	private static class RecordingClassifierFactory<M extends Trainable<T>,T> implements ClassifierFactory<Classifier<T>,M,T>{
+		private final ClassifierFactory<? extends Classifier<T>,M,T> factory;
+		private final int sampleInterval;
+		RecordingClassifierFactory(ClassifierFactory<? extends Classifier<T>,M,T> factory,int sampleInterval){
+			this.factory=factory;
+			this.sampleInterval=sampleInterval;
+		}
+		@Override
+		public Classifier<T> getClassifier(M model){
+			CompileEvent event=new CompileEvent();
+			long[] featureSelectionTime=FEATURE_SELECTION_TIME.get();
+			featureSelectionTime[0]=0;
+			event.begin();
+			Classifier<T> classifier;
+			//a factory building Classifier<T> preprocesses objects of type T
+			if(factory instanceof TokenStreamClassifierFactory&&model instanceof PreprocessModel){
+				@SuppressWarnings("unchecked")
+				TokenStreamClassifierFactory<?,T,?> streamFactory=(TokenStreamClassifierFactory<?,T,?>)factory;
+				classifier=compileStream(streamFactory,model,factory.toString(),sampleInterval);
+			}else if(factory instanceof PreprocessClassifierFactory&&model instanceof PreprocessModel){
+				@SuppressWarnings("unchecked")
+				PreprocessClassifierFactory<?,T,?> preprocessFactory=(PreprocessClassifierFactory<?,T,?>)factory;
+				classifier=compileStages(preprocessFactory,model,factory.toString(),sampleInterval);
+			}else
+				classifier=recordClassifier(compile(factory,model),factory.toString(),sampleInterval);
+			event.end();
+			if(event.shouldCommit()){
+				Object underlying=model instanceof PreprocessModel?((PreprocessModel<?,?,?>)model).getUnderlying():model;
+				event.factory=factory.toString();
+				event.model=getModelName(underlying);
+				event.samples=underlying instanceof TokenFrequenciesModel?((TokenFrequenciesModel<?>)underlying).getSampleCount():-1;
+				event.categories=underlying instanceof TokenFrequenciesModel?((TokenFrequenciesModel<?>)underlying).getSampleCounts().getTokenCount():-1;
+				event.estimatedBytes=MemoryAccountable.estimatedBytes(underlying);
+				event.featureSelectionTime=featureSelectionTime[0];
+				event.commit();
+			}
+			return classifier;
+		}
+		@Override
+		public M createModel(){
+			return factory.createModel();
+		}
+		@Override
+		public String toString(){
+			return factory.toString();
+		}
+	}
+	/**
+	 * Build a classifier, wrapping the feature selector of a
+	 * BagClassifierFactory by a recording one
+	 */
+	private static <M extends Trainable<T>,T> Classifier<T> compile(ClassifierFactory<? extends Classifier<T>,M,T> factory,M model){
+		if(factory instanceof BagClassifierFactory)
+			return compileBag((BagClassifierFactory<?,?,?>)factory,model);
+		return factory.getClassifier(model);
+	}
+	/**
+	 * The model was created by the factory and the type of objects to be
+	 * classified is Frequencies&lt;T&gt;, although the compiler cannot see it
+	 */
+	@SuppressWarnings("unchecked")
+	private static <S,C extends Classifier<Frequencies<T>>,M extends TokenFrequenciesModel<T>,T> Classifier<S> compileBag(BagClassifierFactory<C,M,T> factory,Object model){
+		FeatureSelector<M,T> selector=factory.getFeatureSelector();
+		return (Classifier<S>)factory.getClassifier((M)model,selector!=null?new RecordingFeatureSelector<>(selector):null);
+	}
+	/**
+	 * A model given to a PreprocessClassifierFactory was created by it, so
+	 * that its underlying model is of the type expected by the base factory
+	 */
+	@SuppressWarnings("unchecked")
+	private static <M extends Trainable<S>,T,S> M getUnderlying(PreprocessClassifierFactory<M,T,S> factory,Trainable<T> model){
+		return ((PreprocessModel<M,T,S>)model).getUnderlying();
+	}
+	private static <M extends Trainable<S>,T,S> Classifier<T> compileStages(PreprocessClassifierFactory<M,T,S> factory,Trainable<T> model,String name,int sampleInterval){
+		return recordStages(compile(factory.getBaseFactory(),getUnderlying(factory,model)),factory.getPreprocessor(),name,sampleInterval);
+	}
+	private static <T,S> Classifier<T> recordStages(Classifier<S> base,Function<T,S> preprocessor,String name,int sampleInterval){
+		return wrap((object,max)->{
+			if(!isSampled(sampleInterval))
+				return base.getCandidates(preprocessor.apply(object),max);
+			ClassifyEvent event=new ClassifyEvent();
+			event.begin();
+			S data=preprocessor.apply(object);
+			List<ClassificationResult> results=base.getCandidates(data,max);
+			commit(event,name,data instanceof Frequencies?countTokens((Frequencies<?>)data):-1,results);
+			return results;
+		},base,getTrainer(base,preprocessor));
+	}
+	private static <T,S> Trainable<T> getTrainer(Classifier<S> base,Function<T,S> preprocessor){
+		if(!(base instanceof IncrementalClassifier))
+			return null;
+		IncrementalClassifier<S> incremental=(IncrementalClassifier<S>)base;
+		return (data,category)->incremental.train(preprocessor.apply(data),category);
+	}
+	private static <M extends Trainable<Frequencies<S>>,T,S> Classifier<T> compileStream(TokenStreamClassifierFactory<M,T,S> factory,Trainable<T> model,String name,int sampleInterval){
+		Classifier<Frequencies<S>> base=compile(factory.getBaseFactory(),getUnderlying(factory,model));
+		Function<T,Frequencies<S>> preprocessor=factory.getPreprocessor();
+		if(!(base instanceof TokenStreamClassifier))
+			return recordStages(base,preprocessor,name,sampleInterval);
+		TokenStreamClassifier<S> streamClassifier=(TokenStreamClassifier<S>)base;
+		Function<T,Stream<S>> tokenizer=factory.getTokenizer();
+		return wrap((object,max)->{
+			if(!isSampled(sampleInterval))
+				return streamClassifier.getCandidates(tokenizer.apply(object),max);
+			ClassifyEvent event=new ClassifyEvent();
+			LongAdder tokens=new LongAdder();
+			event.begin();
+			List<ClassificationResult> results=streamClassifier.getCandidates(tokenizer.apply(object).peek((token)->tokens.increment()),max);
+			commit(event,name,tokens.sum(),results);
+			return results;
+		},base,getTrainer(base,preprocessor));
+	}
+	private static class RecordingClassifier<T> implements Classifier<T>,MemoryAccountable{
+		private final Classifier<T> recording;
+		private final Object target;
+		RecordingClassifier(Classifier<T> recording,Object target){
+			this.recording=recording;
+			this.target=target;
+		}
+		@Override
+		public List<ClassificationResult> getCandidates(T object,int max){
+			return recording.getCandidates(object,max);
+		}
+		@Override
+		public Map<String,Long> getMemoryBreakdown(){
+			return MemoryAccountable.getMemoryBreakdown(target);
+		}
+	}
+	private static class RecordingIncrementalClassifier<T> extends RecordingClassifier<T> implements IncrementalClassifier<T>{
+		private final Trainable<T> trainer;
+		RecordingIncrementalClassifier(Classifier<T> recording,Object target,Trainable<T> trainer){
+			super(recording,target);
+			this.trainer=trainer;
+		}
+		@Override
+		public void train(T data,Category category){
+			trainer.train(data,category);
+		}
+	}
+	private static class RecordingFeatureSelector<M extends TokenFrequenciesModel<T>,T> implements FeatureSelector<M,T>{
+		private final FeatureSelector<M,T> selector;
+		RecordingFeatureSelector(FeatureSelector<M,T> selector){
+			this.selector=selector;
+		}
+		@Override
+		public Set<T> select(M model,Function<M,? extends Classifier<Frequencies<T>>> classifierSupplier){
+			FeatureSelectionEvent event=new FeatureSelectionEvent();
+			long time=System.nanoTime();
+			event.begin();
+			Set<T> selected=selector.select(model,classifierSupplier);
+			event.end();
+			FEATURE_SELECTION_TIME.get()[0]+=System.nanoTime()-time;
+			if(event.shouldCommit()){
+				event.selector=selector.toString();
+				event.selected=selected.size();
+				event.commit();
+			}
+			return selected;
+		}
+		@Override
+		public String toString(){
+			return selector.toString();
+		}
+	}
+}
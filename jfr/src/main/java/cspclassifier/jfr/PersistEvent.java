@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A model saved to or loaded from file system
+ * @author S.Welcker
+ */
+@Name("cspclassifier.Persist")
+@Label("Persist Model")
+@Category("Classifier")
+@Description("A model saved to or loaded from file system")
+public class PersistEvent extends Event{
+	/**
+	 * save or load
+	 */
+	@Label("Operation")
+	public String operation;
+	/**
+	 * Type of the model
+	 */
+	@Label("Model")
+	public String model;
+	/**
+	 * The directory
+	 */
+	@Label("Directory")
+	public String directory;
+	/**
+	 * Total size of the files in the directory
+	 */
+	@Label("Size")
+	@DataAmount
+	public long bytes;
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A batch of samples trained into a model
+ * @author S.Welcker
+ */
+@Name("cspclassifier.Train")
+@Label("Train")
+@Category("Classifier")
+@Description("A batch of samples trained into a model")
+public class TrainEvent extends Event{
+	/**
+	 * Type of the model
+	 */
+	@Label("Model")
+	public String model;
+	/**
+	 * Number of samples in the batch
+	 */
+	@Label("Samples")
+	public long samples;
+}
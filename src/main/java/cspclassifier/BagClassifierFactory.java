@@ -46,6 +46,16 @@ public abstract class BagClassifierFactory<C extends Classifier<Frequencies<T>>,
 	}
 	@Override
 	public C getClassifier(M model){
+		return getClassifier(model,featureSelector);
+	}
+	/**
+	 * Build a classifier with a given feature selector in place of the one
+	 * set, so that it can be wrapped without modifying this factory
+	 * @param model the model
+	 * @param featureSelector the feature selector, may be null
+	 * @return the classifier
+	 */
+	public C getClassifier(M model,FeatureSelector<M,T> featureSelector){
 		if(featureSelector!=null){
 			Set<T> selected=featureSelector.select(model,this::createClassifier);
 			model.retainAll(selected);
@@ -20,8 +20,12 @@ import cspclassifier.util.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
 
 /**
  * Factory for Bayesian classifier
@@ -29,71 +33,259 @@ import java.util.Map;
  * @param <T> the type of the objects to be classified
  */
 public class BayesianClassifierFactory<T> extends BagClassifierFactory<Classifier<Frequencies<T>>,FrequenciesModel<T>,T>{
+	private long memoryLimit=0;
+	private double halfLife=0;
+	private boolean incremental=false;
 	/**
 	 * Create a Bayesian classifier factory
 	 */
 	public BayesianClassifierFactory(){
 	}
+	/**
+	 * Set the memory limit of the models created, so that rare tokens are
+	 * counted approximately
+	 * @param memoryLimit the memory to be used by a model(byte), 0 means no limit
+	 * @return this
+	 * @throws IllegalStateException if a half-life is set
+	 */
+	public BayesianClassifierFactory<T> setMemoryLimit(long memoryLimit){
+		if(memoryLimit>0&&halfLife>0)
+			throw new IllegalStateException("Memory limit cannot be combined with half-life");
+		this.memoryLimit=memoryLimit;
+		return this;
+	}
+	/**
+	 * @return the memory to be used by a model(byte), 0 means no limit
+	 */
+	public long getMemoryLimit(){
+		return memoryLimit;
+	}
+	/**
+	 * Set the half-life of the models created, so that old samples are aged out
+	 * @param halfLife the number of samples after which the weight of a sample
+	 * halves, 0 means no decay
+	 * @return this
+	 * @throws IllegalStateException if a memory limit is set
+	 */
+	public BayesianClassifierFactory<T> setHalfLife(double halfLife){
+		if(halfLife>0&&memoryLimit>0)
+			throw new IllegalStateException("Half-life cannot be combined with memory limit");
+		this.halfLife=halfLife;
+		return this;
+	}
+	/**
+	 * @return the number of samples after which the weight of a sample halves,
+	 * 0 means no decay
+	 */
+	public double getHalfLife(){
+		return halfLife;
+	}
+	/**
+	 * Set if the classifiers built are IncrementalClassifier, which keep the
+	 * counts of tokens so that new samples update only the affected entries.
+	 * If a feature selector is set, they learn only the tokens selected when
+	 * they were built.
+	 * @param incremental true to build IncrementalClassifier
+	 * @return this
+	 */
+	public BayesianClassifierFactory<T> setIncremental(boolean incremental){
+		this.incremental=incremental;
+		return this;
+	}
+	/**
+	 * @return true if the classifiers built are IncrementalClassifier
+	 */
+	public boolean isIncremental(){
+		return incremental;
+	}
 	@Override
 	public Classifier<Frequencies<T>> createClassifier(FrequenciesModel<T> model){
-		return new BayesianClassifier<>(model.getTokenFrequencies(),
-				model.getSampleCounts(),model.getTokenCounts(),model.getTotalTokenFrequencies());
+		if(incremental)
+			return new IncrementalBayesianClassifier<>(model.getTokenFrequencies(),model.getSampleCounts(),model.getTokenCounts(),getFeatureSelector()!=null);
+		return new BayesianClassifier<>(model.getTokenFrequencies(),model.getSampleCounts(),model.getTokenCounts(),false);
 	}
 	@Override
 	public FrequenciesModel<T> createModel(){
-		return new FrequenciesModel<>();
+		return (memoryLimit>0?new FrequenciesModel<T>(memoryLimit):new FrequenciesModel<T>()).setHalfLife(halfLife);
 	}
-	private static class BayesianClassifier<T> implements Classifier<Frequencies<T>>{
-		private final Map<Category,Frequencies<T>> profiles;
-		private final Frequencies<Category> documentCounts;
-		private final Frequencies<Category> tokenCounts;
-		private final Frequencies<T> tokenFrequencies;
-		private final long documentCount;
-		private final int tokenCount;
+	/**
+	 * The probability that a object belongs to a category is proportional to
+	 * the product of P(category)P(token|category) over distinct tokens, so the
+	 * logarithms of the factors are precomputed and the scores are rescaled
+	 * so that the best one is 1.
+	 */
+	private static class BayesianClassifier<T> implements TokenStreamClassifier<T>,MemoryAccountable{
+		Category[] categories;
+		double[] base;
+		final TokenPostings<T> postings;
+		final ReadWriteLock lock;
+		/**
+		 * @param incremental if the counts are kept and access is guarded by
+		 * a lock, for subclasses that update the classifier
+		 */
 		public BayesianClassifier(Map<Category,Frequencies<T>> profiles,
-				Frequencies<Category> documentCounts,Frequencies<Category> tokenCounts,
-				Frequencies<T> tokenFrequencies){
-			this.profiles=profiles;
-			this.documentCounts=documentCounts;
-			this.tokenCounts=tokenCounts;
-			this.tokenFrequencies=tokenFrequencies;
-			this.documentCount=documentCounts.toMap().values().stream().mapToLong((i)->i.getCount()).sum();
-			this.tokenCount=tokenFrequencies.getTokenCount();
+				Frequencies<Category> documentCounts,Frequencies<Category> tokenCounts,boolean incremental){
+			this.categories=profiles.keySet().toArray(new Category[0]);
+			this.base=new double[categories.length];
+			this.postings=new TokenPostings<>(incremental);
+			this.lock=incremental?new ReentrantReadWriteLock():null;
+			for(int i=0;i<categories.length;i++){
+				int category=i;
+				base[i]=Math.log(documentCounts.getFrequency(categories[i]))-Math.log(Math.max(tokenCounts.getFrequency(categories[i]),1));
+				if(incremental){
+					profiles.get(categories[i]).toMap().forEach((token,count)->
+							postings.set(postings.getOrCreateId(token),category,Math.log(count.getCount()),count.getCount()));
+				}else{
+					profiles.get(categories[i]).toMap().forEach((token,count)->
+							postings.set(postings.getOrCreateId(token),category,Math.log(count.getCount())));
+				}
+			}
 		}
 		@Override
 		public List<ClassificationResult> getCandidates(Frequencies<T> object,int max){
-			Category[] categories=profiles.keySet().toArray(new Category[0]);
+			if(lock!=null)
+				lock.readLock().lock();
+			TokenBuffer buffer=TokenBuffer.get(postings.getTokenCount());
+			try{
+				for(Map.Entry<T,Counter> e:object.toMap().entrySet()){
+					collect(e.getKey(),e.getValue().getCount(),buffer);
+				}
+				return score(buffer);
+			}finally{
+				buffer.clear();
+				if(lock!=null)
+					lock.readLock().unlock();
+			}
+		}
+		@Override
+		public List<ClassificationResult> getCandidates(Stream<T> tokens,int max){
+			if(lock!=null)
+				lock.readLock().lock();
+			TokenBuffer buffer=TokenBuffer.get(postings.getTokenCount());
+			try{
+				tokens.forEach((token)->collect(token,1,buffer));
+				return score(buffer);
+			}finally{
+				buffer.clear();
+				if(lock!=null)
+					lock.readLock().unlock();
+			}
+		}
+		@Override
+		public boolean isKnown(T token){
+			if(lock==null)
+				return postings.getId(token)!=-1;
+			lock.readLock().lock();
+			try{
+				return postings.getId(token)!=-1;
+			}finally{
+				lock.readLock().unlock();
+			}
+		}
+		@Override
+		public Map<String,Long> getMemoryBreakdown(){
+			Map<String,Long> breakdown=new LinkedHashMap<>();
+			breakdown.put(VOCABULARY,postings.getVocabularyBytes());
+			breakdown.put(INDEX,postings.getIndexBytes()+MemoryEstimator.ofArray(base.length,8)+MemoryEstimator.ofArray(categories.length,MemoryEstimator.REFERENCE));
+			return breakdown;
+		}
+		private void collect(T token,long times,TokenBuffer buffer){
+			int id=postings.getId(token);
+			if(id!=-1){
+				buffer.add(id,times);
+			}else{
+				buffer.addUnknown(token);
+			}
+		}
+		private List<ClassificationResult> score(TokenBuffer buffer){
 			double[] score=new double[categories.length];
-			Arrays.fill(score,1.0);
-			int[] maxExp=new int[]{0,0};
-			object.toMap().entrySet().forEach((e)->{
-				for(int i=0;i<categories.length;i++){
-					score[i]=Math.scalb(score[i],maxExp[0]);
-					score[i]*=getCategoryProbability(categories[i],e.getKey());
-					maxExp[1]=Math.min(-Math.getExponent(score[i]),maxExp[1]);
+			int distinct=buffer.size()+buffer.getUnknownCount();
+			for(int i=0;i<categories.length;i++){
+				score[i]=distinct*base[i];
+			}
+			for(int i=0;i<buffer.size();i++){
+				int id=buffer.getId(i);
+				int[] cats=postings.getCategories(id);
+				double[] values=postings.getValues(id);
+				for(int j=postings.getSize(id)-1;j>=0;j--){
+					score[cats[j]]+=values[j];
 				}
-				maxExp[0]=maxExp[1];
-				maxExp[1]=-Double.MIN_EXPONENT;
-			});
+			}
+			double best=Double.NEGATIVE_INFINITY;
+			for(double s:score){
+				best=Math.max(best,s);
+			}
 			ArrayList<ClassificationResult> results=new ArrayList<>(categories.length);
 			for(int i=0;i<categories.length;i++){
-				results.add(new ClassificationResult(score[i],categories[i]));
+				results.add(new ClassificationResult(Math.exp(score[i]-best),categories[i]));
 			}
 			return results;
 		}
-		private double getCategoryProbability(Category category,T token){
-			return getCategoryProbability(category)*getTokenProbability(token,category)/getTokenProbability(token);
-		}
-		private double getCategoryProbability(Category category){
-			return ((double)documentCounts.getFrequency(category))/documentCount;
+	}
+	/**
+	 * Bayesian classifier keeping the counts, so that a new sample only updates
+	 * the entries of its tokens and the base of its category. The results equal
+	 * a full rebuild unless the vocabulary is fixed, e.g. by a feature
+	 * selector, then tokens outside it are ignored until the next rebuild.
+	 */
+	private static class IncrementalBayesianClassifier<T> extends BayesianClassifier<T> implements IncrementalClassifier<Frequencies<T>>{
+		private long[] documentCounts;
+		private long[] tokenCounts;
+		private final boolean fixedVocabulary;
+		public IncrementalBayesianClassifier(Map<Category,Frequencies<T>> profiles,
+				Frequencies<Category> documentCounts,Frequencies<Category> tokenCounts,boolean fixedVocabulary){
+			super(profiles,documentCounts,tokenCounts,true);
+			this.fixedVocabulary=fixedVocabulary;
+			this.documentCounts=new long[categories.length];
+			this.tokenCounts=new long[categories.length];
+			for(int i=0;i<categories.length;i++){
+				this.documentCounts[i]=documentCounts.getFrequency(categories[i]);
+				this.tokenCounts[i]=tokenCounts.getFrequency(categories[i]);
+			}
 		}
-		private double getTokenProbability(T token,Category category){
-			long frequency=profiles.get(category).getFrequency(token);
-			return frequency!=0?((double)frequency)/tokenCounts.getFrequency(category):1.0/profiles.get(category).getTokenCount();
+		/**
+		 * Update the log-probabilities of the tokens in a sample and the base
+		 * of its category
+		 * @param data the sample data
+		 * @param category the category of the data
+		 */
+		@Override
+		public void train(Frequencies<T> data,Category category){
+			lock.writeLock().lock();
+			try{
+				int c=getOrCreateCategory(category);
+				++documentCounts[c];
+				data.toMap().forEach((token,count)->{
+					int id=fixedVocabulary?postings.getId(token):postings.getOrCreateId(token);
+					if(id==-1)
+						return;
+					int i=postings.indexOf(id,c);
+					if(i==-1){
+						postings.set(id,c,Math.log(count.getCount()),count.getCount());
+						++tokenCounts[c];
+					}else{
+						long[] counts=postings.getCounts(id);
+						counts[i]+=count.getCount();
+						postings.getValues(id)[i]=Math.log(counts[i]);
+					}
+				});
+				base[c]=Math.log(documentCounts[c])-Math.log(Math.max(tokenCounts[c],1));
+			}finally{
+				lock.writeLock().unlock();
+			}
 		}
-		private double getTokenProbability(T token){
-			long frequency=tokenFrequencies.getFrequency(token);
-			return frequency!=0?((double)frequency)/tokenCount:1.0/tokenFrequencies.getTokenCount();
+		private int getOrCreateCategory(Category category){
+			for(int i=0;i<categories.length;i++){
+				if(categories[i].equals(category))
+					return i;
+			}
+			int c=categories.length;
+			categories=Arrays.copyOf(categories,c+1);
+			categories[c]=category;
+			base=Arrays.copyOf(base,c+1);
+			documentCounts=Arrays.copyOf(documentCounts,c+1);
+			tokenCounts=Arrays.copyOf(tokenCounts,c+1);
+			return c;
 		}
 	}
 	@Override
@@ -19,6 +19,7 @@ package cspclassifier;
 import cspclassifier.util.*;
 
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -96,7 +97,7 @@ public class C45ClassifierFactory<T> extends BagClassifierFactory<Classifier<Fre
 	public DocumentVectorsModel<T> createModel(){
 		return new DocumentVectorsModel<>();
 	}
-	private static class C45Classifier<T> implements Classifier<Frequencies<T>>{
+	private static class C45Classifier<T> implements Classifier<Frequencies<T>>,MemoryAccountable{
 		private final DecisionTree<T> tree;
 		public C45Classifier(DecisionTree<T> tree){
 			this.tree=tree;
@@ -109,6 +110,15 @@ public class C45ClassifierFactory<T> extends BagClassifierFactory<Classifier<Fre
 			}
 			return Collections.singletonList(new ClassificationResult(1.0,node.getCategory()));
 		}
+		@Override
+		public Map<String,Long> getMemoryBreakdown(){
+			long[] bytes=new long[2];
+			tree.estimateBytes(bytes);
+			Map<String,Long> breakdown=new LinkedHashMap<>();
+			breakdown.put(VOCABULARY,bytes[0]);
+			breakdown.put(INDEX,bytes[1]);
+			return breakdown;
+		}
 	}
 	private static class DecisionTree<T>{
 		private final DecisionTree<T> lower;
@@ -139,6 +149,18 @@ public class C45ClassifierFactory<T> extends BagClassifierFactory<Classifier<Fre
 		public DecisionTree<T> getChild(Frequencies<T> object){
 			return object.getFrequency(feature)<=cut?lower:higher;
 		}
+		/**
+		 * Add the estimated memory used by the features and the nodes of the tree
+		 * @param bytes the memory used by the features and the nodes to be advanced
+		 */
+		void estimateBytes(long[] bytes){
+			bytes[1]+=MemoryEstimator.align(MemoryEstimator.OBJECT_HEADER+4*MemoryEstimator.REFERENCE+8);
+			if(!isLeaf()){
+				bytes[0]+=MemoryEstimator.of(feature);
+				lower.estimateBytes(bytes);
+				higher.estimateBytes(bytes);
+			}
+		}
 		@Override
 		public String toString(){
 			return toString(0,new StringBuilder()).toString();
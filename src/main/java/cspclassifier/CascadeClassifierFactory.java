@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Factory for classifier which asks a cheap classifier first and escalates
+ * to an expensive classifier only if the cheap one is not confident. Since
+ * both stages classify the same object, a preprocessing pass is shared if
+ * the factory is wrapped by PreprocessClassifierFactory.
+ * @author S.Welcker
+ * @param <M1> the type of the model of the cheap stage
+ * @param <M2> the type of the model of the expensive stage
+ * @param <T> the type of the objects to be classified
+ */
+public class CascadeClassifierFactory<M1 extends Trainable<T>,M2 extends Trainable<T>,T> implements ClassifierFactory<Classifier<T>,CascadeClassifierFactory.CascadeModel<M1,M2,T>,T>{
+	private final ClassifierFactory<? extends Classifier<T>,M1,T> cheap;
+	private final ClassifierFactory<? extends Classifier<T>,M2,T> expensive;
+	private double threshold;
+	/**
+	 * Create a cascade classifier factory
+	 * @param cheap the factory for the first stage
+	 * @param expensive the factory for the second stage
+	 * @param threshold the minimum relative margin between the best two
+	 * scores of the first stage for its result to be accepted
+	 */
+	public CascadeClassifierFactory(ClassifierFactory<? extends Classifier<T>,M1,T> cheap,
+			ClassifierFactory<? extends Classifier<T>,M2,T> expensive,double threshold){
+		this.cheap=cheap;
+		this.expensive=expensive;
+		this.threshold=threshold;
+	}
+	/**
+	 * Set the threshold
+	 * @param threshold the minimum relative margin between the best two
+	 * scores of the first stage for its result to be accepted
+	 * @return this
+	 */
+	public CascadeClassifierFactory<M1,M2,T> setThreshold(double threshold){
+		this.threshold=threshold;
+		return this;
+	}
+	/**
+	 * @return the minimum relative margin between the best two scores of
+	 * the first stage for its result to be accepted
+	 */
+	public double getThreshold(){
+		return threshold;
+	}
+	@Override
+	public CascadeClassifier<T> getClassifier(CascadeModel<M1,M2,T> model){
+		return new CascadeClassifier<>(cheap.getClassifier(model.getCheap()),expensive.getClassifier(model.getExpensive()),threshold);
+	}
+	@Override
+	public CascadeModel<M1,M2,T> createModel(){
+		return new CascadeModel<>(cheap.createModel(),expensive.createModel());
+	}
+	@Override
+	public String toString(){
+		return "Cascade["+cheap+">"+expensive+","+threshold+"]";
+	}
+	/**
+	 * Model that trains the models of both stages
+	 * @param <M1> the type of the model of the cheap stage
+	 * @param <M2> the type of the model of the expensive stage
+	 * @param <T> the type of the objects to be classified
+	 */
+	public static class CascadeModel<M1 extends Trainable<T>,M2 extends Trainable<T>,T> implements Trainable<T>,MemoryAccountable{
+		private final M1 cheap;
+		private final M2 expensive;
+		/**
+		 * Create a model
+		 * @param cheap the model of the first stage
+		 * @param expensive the model of the second stage
+		 */
+		public CascadeModel(M1 cheap,M2 expensive){
+			this.cheap=cheap;
+			this.expensive=expensive;
+		}
+		@Override
+		public void train(T data,Category category){
+			cheap.train(data,category);
+			expensive.train(data,category);
+		}
+		/**
+		 * @return the model of the first stage
+		 */
+		public M1 getCheap(){
+			return cheap;
+		}
+		/**
+		 * @return the model of the second stage
+		 */
+		public M2 getExpensive(){
+			return expensive;
+		}
+		@Override
+		public Map<String,Long> getMemoryBreakdown(){
+			return MemoryAccountable.getMemoryBreakdown(cheap,expensive);
+		}
+	}
+	/**
+	 * Classifier that escalates objects with low confidence to the second stage
+	 * @param <T> the type of the objects to be classified
+	 */
+	public static class CascadeClassifier<T> implements Classifier<T>,MemoryAccountable{
+		private final Classifier<T> cheap;
+		private final Classifier<T> expensive;
+		private final double threshold;
+		private final LongAdder answered=new LongAdder();
+		private final LongAdder escalated=new LongAdder();
+		/**
+		 * Create a cascade classifier
+		 * @param cheap the first stage
+		 * @param expensive the second stage
+		 * @param threshold the minimum relative margin between the best two
+		 * scores of the first stage for its result to be accepted
+		 */
+		public CascadeClassifier(Classifier<T> cheap,Classifier<T> expensive,double threshold){
+			this.cheap=cheap;
+			this.expensive=expensive;
+			this.threshold=threshold;
+		}
+		@Override
+		public List<ClassificationResult> getCandidates(T object,int max){
+			List<ClassificationResult> candidates=cheap.getCandidates(object,Math.max(max,2));
+			if(getMargin(candidates)>=threshold){
+				answered.increment();
+				if(candidates.size()<=max)
+					return candidates;
+				List<ClassificationResult> sorted=new ArrayList<>(candidates);
+				Collections.sort(sorted);
+				return sorted.subList(0,max);
+			}
+			escalated.increment();
+			return expensive.getCandidates(object,max);
+		}
+		@Override
+		public Map<String,Long> getMemoryBreakdown(){
+			return MemoryAccountable.getMemoryBreakdown(cheap,expensive);
+		}
+		/**
+		 * Create a classifier sharing the stages of this classifier but with
+		 * another threshold, useful to tune the threshold without retraining
+		 * @param threshold the new threshold
+		 * @return the classifier
+		 */
+		public CascadeClassifier<T> withThreshold(double threshold){
+			return new CascadeClassifier<>(cheap,expensive,threshold);
+		}
+		/**
+		 * @return the threshold
+		 */
+		public double getThreshold(){
+			return threshold;
+		}
+		/**
+		 * @return the number of objects answered by the first stage
+		 */
+		public long getAnsweredCount(){
+			return answered.sum();
+		}
+		/**
+		 * @return the number of objects escalated to the second stage
+		 */
+		public long getEscalatedCount(){
+			return escalated.sum();
+		}
+		/**
+		 * The confidence of a classification result, scores of different
+		 * classifiers are in different scales, so the margin is relative to
+		 * the best score
+		 * @param candidates the results of classification
+		 * @return (best-second)/|best|, 1 if only one candidate is given, 0 if
+		 * no candidate is given
+		 */
+		public static double getMargin(List<ClassificationResult> candidates){
+			double first=Double.NEGATIVE_INFINITY,second=Double.NEGATIVE_INFINITY;
+			for(ClassificationResult candidate:candidates){
+				double score=candidate.getScore();
+				if(score>first){
+					second=first;
+					first=score;
+				}else if(score>second){
+					second=score;
+				}
+			}
+			if(first==Double.NEGATIVE_INFINITY||first==0)
+				return 0;
+			if(second==Double.NEGATIVE_INFINITY)
+				return 1;
+			return (first-second)/Math.abs(first);
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * Cache of classifiers which are loaded lazily on first use, e.g. one
+ * classifier per tenant. Entries are evicted in least recently used order
+ * once either the number of entries or the sum of their estimated sizes
+ * exceeds the configured limits. Concurrent requests for a key that is
+ * being loaded wait for the same load.
+ * @author S.Welcker
+ * @param <K> the type of the keys
+ * @param <T> the type of the objects to be classified
+ */
+public class ClassifierCache<K,T>{
+	private final Function<? super K,? extends Classifier<T>> loader;
+	private final ToLongBiFunction<? super K,? super Classifier<T>> weigher;
+	private final int maxEntries;
+	private final long maxBytes;
+	private final LinkedHashMap<K,Entry<T>> entries=new LinkedHashMap<>(16,0.75f,true);
+	private long bytes=0;
+	private final LongAdder hits=new LongAdder();
+	private final LongAdder misses=new LongAdder();
+	private final LongAdder loads=new LongAdder();
+	private final LongAdder loadFailures=new LongAdder();
+	private final LongAdder loadTime=new LongAdder();
+	private final LongAdder evictions=new LongAdder();
+	/**
+	 * Create a cache
+	 * @param loader being used to create the classifier of a key
+	 * @param weigher estimate the number of bytes used by a loaded classifier
+	 * @param maxEntries the maximum number of classifiers to be kept
+	 * @param maxBytes the maximum sum of estimated sizes to be kept
+	 */
+	public ClassifierCache(Function<? super K,? extends Classifier<T>> loader,
+			ToLongBiFunction<? super K,? super Classifier<T>> weigher,int maxEntries,long maxBytes){
+		if(maxEntries<=0||maxBytes<=0)
+			throw new IllegalArgumentException("Limits of cache must be positive");
+		this.loader=loader;
+		this.weigher=weigher;
+		this.maxEntries=maxEntries;
+		this.maxBytes=maxBytes;
+	}
+	/**
+	 * Create a cache which loads models from directories saved by
+	 * Persistable.save and compile them with a factory, e.g. the one returned by
+	 * Starter.getDefaultClassifierFactory. The size of a classifier is its
+	 * estimated memory if it is MemoryAccountable, otherwise the size of its
+	 * directory.
+	 * @param <K> the type of the keys
+	 * @param <M> the type of the model
+	 * @param <T> the type of the objects to be classified
+	 * @param factory being used to create and compile models
+	 * @param directories map a key to the directory of its model
+	 * @param decoder decode String to token
+	 * @param maxEntries the maximum number of classifiers to be kept
+	 * @param maxBytes the maximum sum of estimated sizes to be kept
+	 * @return the cache
+	 */
+	public static <K,M extends Trainable<T>,T> ClassifierCache<K,T> fromDirectories(ClassifierFactory<? extends Classifier<T>,M,T> factory,
+			Function<? super K,File> directories,Function<String,?> decoder,int maxEntries,long maxBytes){
+		return new ClassifierCache<>((key)->factory.getClassifier(loadModel(factory,directories.apply(key),decoder)),
+				(key,classifier)->{
+					long bytes=MemoryAccountable.estimatedBytes(classifier);
+					return bytes>=0?bytes:getDirectorySize(directories.apply(key));
+				},maxEntries,maxBytes);
+	}
+	/**
+	 * Get the classifier of a key, load it if it is not cached
+	 * @param key the key
+	 * @return the classifier
+	 */
+	public Classifier<T> get(K key){
+		Entry<T> entry;
+		boolean owner=false;
+		synchronized(entries){
+			entry=entries.get(key);
+			if(entry==null){
+				entry=new Entry<>();
+				entries.put(key,entry);
+				owner=true;
+			}
+		}
+		if(owner){
+			misses.increment();
+			load(key,entry);
+		}else{
+			hits.increment();
+		}
+		try{
+			return entry.classifier.join();
+		}catch(CompletionException ex){
+			if(ex.getCause() instanceof RuntimeException)
+				throw (RuntimeException)ex.getCause();
+			if(ex.getCause() instanceof Error)
+				throw (Error)ex.getCause();
+			throw ex;
+		}
+	}
+	private void load(K key,Entry<T> entry){
+		long time=System.nanoTime();
+		Classifier<T> classifier;
+		long weight;
+		try{
+			classifier=loader.apply(key);
+			weight=weigher.applyAsLong(key,classifier);
+		}catch(Throwable ex){
+			loadFailures.increment();
+			synchronized(entries){
+				entries.remove(key,entry);
+			}
+			entry.classifier.completeExceptionally(ex);
+			return;
+		}finally{
+			loadTime.add(System.nanoTime()-time);
+		}
+		loads.increment();
+		synchronized(entries){
+			if(entries.get(key)==entry){
+				entry.weight=weight;
+				bytes+=weight;
+				evict(entry);
+			}
+		}
+		entry.classifier.complete(classifier);
+	}
+	private void evict(Entry<T> keep){
+		Iterator<Map.Entry<K,Entry<T>>> iterator=entries.entrySet().iterator();
+		while((entries.size()>maxEntries||bytes>maxBytes)&&iterator.hasNext()){
+			Entry<T> eldest=iterator.next().getValue();
+			if(eldest!=keep&&eldest.weight>=0){
+				iterator.remove();
+				bytes-=eldest.weight;
+				evictions.increment();
+			}
+		}
+	}
+	/**
+	 * Remove the classifier of a key from the cache
+	 * @param key the key
+	 */
+	public void invalidate(K key){
+		synchronized(entries){
+			Entry<T> entry=entries.remove(key);
+			if(entry!=null&&entry.weight>=0)
+				bytes-=entry.weight;
+		}
+	}
+	/**
+	 * Remove all classifiers from the cache
+	 */
+	public void invalidateAll(){
+		synchronized(entries){
+			entries.clear();
+			bytes=0;
+		}
+	}
+	/**
+	 * @return the number of classifiers cached or being loaded
+	 */
+	public int size(){
+		synchronized(entries){
+			return entries.size();
+		}
+	}
+	/**
+	 * @return the sum of estimated sizes of the cached classifiers
+	 */
+	public long getEstimatedBytes(){
+		synchronized(entries){
+			return bytes;
+		}
+	}
+	/**
+	 * @return the number of requests that found the key in the cache
+	 */
+	public long getHitCount(){
+		return hits.sum();
+	}
+	/**
+	 * @return the number of requests that triggered a load
+	 */
+	public long getMissCount(){
+		return misses.sum();
+	}
+	/**
+	 * @return the number of successful loads
+	 */
+	public long getLoadCount(){
+		return loads.sum();
+	}
+	/**
+	 * @return the number of failed loads
+	 */
+	public long getLoadFailureCount(){
+		return loadFailures.sum();
+	}
+	/**
+	 * @return total time(nanosecond) spent on loading
+	 */
+	public long getTotalLoadTime(){
+		return loadTime.sum();
+	}
+	/**
+	 * @return the number of classifiers evicted because of the limits
+	 */
+	public long getEvictionCount(){
+		return evictions.sum();
+	}
+	@Override
+	public String toString(){
+		return "hit:"+getHitCount()+"\tmiss:"+getMissCount()+"\tload:"+getLoadCount()+"\tfailure:"+getLoadFailureCount()
+				+"\tloadTime:"+getTotalLoadTime()+"\teviction:"+getEvictionCount()+"\tsize:"+size()+"\tbytes:"+getEstimatedBytes();
+	}
+	/**
+	 * Create a model with a factory and load it from a directory
+	 * @param <M> the type of the model
+	 * @param <T> the type of the objects to be classified
+	 * @param factory being used to create the model
+	 * @param directory where the model is saved to
+	 * @param decoder decode String to token
+	 * @return the loaded model
+	 */
+	static <M extends Trainable<T>,T> M loadModel(ClassifierFactory<?,M,T> factory,File directory,Function<String,?> decoder){
+		if(!directory.isDirectory())
+			throw new IllegalArgumentException("Model not found: "+directory);
+		M model=factory.createModel();
+		Object target=model instanceof PreprocessModel?((PreprocessModel<?,?,?>)model).getUnderlying():model;
+		if(!(target instanceof Persistable))
+			throw new IllegalArgumentException("Model cannot be loaded: "+target.getClass().getName());
+		load((Persistable<?>)target,directory,decoder);
+		return model;
+	}
+	/**
+	 * The decoder is supplied by the caller together with the factory, so it
+	 * produces the tokens of the model
+	 */
+	@SuppressWarnings("unchecked")
+	private static <S> void load(Persistable<S> model,File directory,Function<String,?> decoder){
+		model.load(directory,(Function<String,S>)decoder);
+	}
+	private static long getDirectorySize(File directory){
+		long size=0;
+		File[] files=directory.listFiles();
+		if(files!=null)
+			for(File file:files)
+				size+=file.isDirectory()?getDirectorySize(file):file.length();
+		return size;
+	}
+	private static class Entry<T>{
+		private final CompletableFuture<Classifier<T>> classifier=new CompletableFuture<>();
+		private long weight=-1;
+	}
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Classifier that delegates to a live classifier which can be replaced while
+ * requests are in flight. New classifiers are built on a background executor
+ * and swapped in atomically, the replaced classifier is released once the
+ * requests using it are finished.
+ * @author S.Welcker
+ * @param <M> the type of the model
+ * @param <T> the type of the objects to be classified
+ */
+public class ClassifierRegistry<M extends Trainable<T>,T> implements Classifier<T>,MemoryAccountable,AutoCloseable{
+	private final ClassifierFactory<? extends Classifier<T>,M,T> factory;
+	private final ExecutorService executor;
+	private final boolean ownExecutor;
+	private final Consumer<? super Classifier<T>> releaser;
+	private final AtomicReference<Handle<T>> current;
+	private final AtomicLong sequence=new AtomicLong();
+	private WatchService watchService;
+	/**
+	 * Create a registry, rebuild happens on a dedicated background thread
+	 * @param factory being used to build classifiers
+	 * @param initial the classifier to be served before the first rebuild
+	 */
+	public ClassifierRegistry(ClassifierFactory<? extends Classifier<T>,M,T> factory,Classifier<T> initial){
+		this(factory,initial,Executors.newSingleThreadExecutor((task)->{
+			Thread thread=new Thread(task,"classifier-rebuild");
+			thread.setDaemon(true);
+			return thread;
+		}),true,(classifier)->{
+		});
+	}
+	/**
+	 * Create a registry
+	 * @param factory being used to build classifiers
+	 * @param initial the classifier to be served before the first rebuild
+	 * @param executor being used to build classifiers, it is not shutdown by close
+	 * @param releaser being called with a replaced classifier after the
+	 * requests using it are finished
+	 */
+	public ClassifierRegistry(ClassifierFactory<? extends Classifier<T>,M,T> factory,Classifier<T> initial,
+			ExecutorService executor,Consumer<? super Classifier<T>> releaser){
+		this(factory,initial,executor,false,releaser);
+	}
+	private ClassifierRegistry(ClassifierFactory<? extends Classifier<T>,M,T> factory,Classifier<T> initial,
+			ExecutorService executor,boolean ownExecutor,Consumer<? super Classifier<T>> releaser){
+		this.factory=factory;
+		this.executor=executor;
+		this.ownExecutor=ownExecutor;
+		this.releaser=releaser;
+		this.current=new AtomicReference<>(new Handle<>(initial,0));
+	}
+	@Override
+	public List<ClassificationResult> getCandidates(T object,int max){
+		Handle<T> handle=acquire();
+		try{
+			return handle.classifier.getCandidates(object,max);
+		}finally{
+			release(handle);
+		}
+	}
+	/**
+	 * @return the classifier being served currently
+	 */
+	public Classifier<T> getCurrent(){
+		return current.get().classifier;
+	}
+	/**
+	 * Only the classifier being served currently is counted
+	 */
+	@Override
+	public Map<String,Long> getMemoryBreakdown(){
+		return MemoryAccountable.getMemoryBreakdown(current.get().classifier);
+	}
+	/**
+	 * Build a classifier from a model in background and then serve it
+	 * @param model the trained model
+	 * @return the new classifier once it is being served
+	 */
+	public CompletableFuture<Classifier<T>> rebuild(M model){
+		long version=sequence.incrementAndGet();
+		return CompletableFuture.supplyAsync(()->install(factory.getClassifier(model),version),executor);
+	}
+	/**
+	 * Load a model from a directory in background, build a classifier from
+	 * it and then serve it
+	 * @param directory where the model is saved to
+	 * @param decoder decode String to token
+	 * @return the new classifier once it is being served
+	 */
+	public CompletableFuture<Classifier<T>> rebuild(File directory,Function<String,?> decoder){
+		long version=sequence.incrementAndGet();
+		return CompletableFuture.supplyAsync(()->install(factory.getClassifier(ClassifierCache.loadModel(factory,directory,decoder)),version),executor);
+	}
+	/**
+	 * Rebuild the classifier whenever the content of a model directory is changed
+	 * @param directory where the model is saved to
+	 * @param decoder decode String to token
+	 * @param quietPeriod rebuild only after no change is detected for this
+	 * period(millisecond), so that a model being saved is not loaded halfway
+	 * @throws IOException if the directory cannot be watched
+	 */
+	public synchronized void watch(File directory,Function<String,?> decoder,long quietPeriod) throws IOException{
+		if(watchService!=null)
+			throw new IllegalStateException("A directory is being watched already");
+		WatchService service=directory.toPath().getFileSystem().newWatchService();
+		register(service,directory);
+		watchService=service;
+		Thread thread=new Thread(()->watchLoop(service,directory,decoder,quietPeriod),"classifier-watch");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	private void watchLoop(WatchService service,File directory,Function<String,?> decoder,long quietPeriod){
+		try{
+			while(true){
+				WatchKey key=service.take();
+				do{
+					key.pollEvents();
+					if(!key.reset()&&!reregister(service,directory))
+						return;
+				}while((key=service.poll(quietPeriod,TimeUnit.MILLISECONDS))!=null);
+				try{
+					rebuild(directory,decoder).join();
+				}catch(RuntimeException ex){
+					Logger.getLogger(ClassifierRegistry.class.getName()).log(Level.SEVERE,null,ex);
+				}
+			}
+		}catch(InterruptedException|ClosedWatchServiceException ex){
+		}
+	}
+	private static void register(WatchService service,File directory) throws IOException{
+		directory.toPath().register(service,StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY,StandardWatchEventKinds.ENTRY_DELETE);
+	}
+	/**
+	 * Register a directory again after its key became invalid, e.g. because it
+	 * was deleted or replaced
+	 * @return false if the directory cannot be watched any more
+	 */
+	private static boolean reregister(WatchService service,File directory){
+		try{
+			if(directory.isDirectory()){
+				register(service,directory);
+				Logger.getLogger(ClassifierRegistry.class.getName()).log(Level.WARNING,"Directory replaced, watching again: {0}",directory);
+				return true;
+			}
+			Logger.getLogger(ClassifierRegistry.class.getName()).log(Level.SEVERE,"Directory is gone, stop watching: {0}",directory);
+		}catch(IOException ex){
+			Logger.getLogger(ClassifierRegistry.class.getName()).log(Level.SEVERE,null,ex);
+		}
+		return false;
+	}
+	/**
+	 * Stop watching directory and stop the background thread created by
+	 * this registry
+	 */
+	@Override
+	public synchronized void close(){
+		if(watchService!=null){
+			try{
+				watchService.close();
+			}catch(IOException ex){
+				Logger.getLogger(ClassifierRegistry.class.getName()).log(Level.SEVERE,null,ex);
+			}
+			watchService=null;
+		}
+		if(ownExecutor)
+			executor.shutdown();
+	}
+	private Classifier<T> install(Classifier<T> classifier,long version){
+		Handle<T> next=new Handle<>(classifier,version);
+		Handle<T> old;
+		do{
+			old=current.get();
+			if(old.version>version){
+				releaser.accept(classifier);
+				return old.classifier;
+			}
+		}while(!current.compareAndSet(old,next));
+		old.retired=true;
+		if(old.inflight.get()==0)
+			old.dispose(releaser);
+		return classifier;
+	}
+	private Handle<T> acquire(){
+		while(true){
+			Handle<T> handle=current.get();
+			handle.inflight.incrementAndGet();
+			if(current.get()==handle)
+				return handle;
+			release(handle);
+		}
+	}
+	private void release(Handle<T> handle){
+		if(handle.inflight.decrementAndGet()==0&&handle.retired)
+			handle.dispose(releaser);
+	}
+	private static class Handle<T>{
+		private final Classifier<T> classifier;
+		private final long version;
+		private final AtomicInteger inflight=new AtomicInteger();
+		private final AtomicBoolean disposed=new AtomicBoolean();
+		private volatile boolean retired=false;
+		public Handle(Classifier<T> classifier,long version){
+			this.classifier=classifier;
+			this.version=version;
+		}
+		public void dispose(Consumer<? super Classifier<T>> releaser){
+			if(disposed.compareAndSet(false,true))
+				releaser.accept(classifier);
+		}
+	}
+}
@@ -18,6 +18,7 @@ package cspclassifier;
 
 import cspclassifier.util.*;
 
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -82,6 +83,37 @@ public class DocumentVectorsModel<T> extends SimpleTrainableModel<Frequencies<T>
 			v.getDocumentVectors().forEach((vector)->vector.toMap().keySet().retainAll(toKeep));
 		});
 	}	
+	@Override
+	public Map<String,Long> getMemoryBreakdown(){
+		return getMemoryBreakdown(getProfiles());
+	}
+	/**
+	 * Estimate the memory used by document vectors
+	 * @param <T> the type of tokens
+	 * @param vectorsProfiles the document vectors of each category
+	 * @return estimated number of bytes used by each part
+	 */
+	static <T> Map<String,Long> getMemoryBreakdown(Map<Category,VectorsProfile<T>> vectorsProfiles){
+		long entries=0,vectors=0,profiles=MemoryEstimator.ofMap(vectorsProfiles);
+		double keyBytes=0;
+		for(VectorsProfile<T> profile:vectorsProfiles.values()){
+			List<Frequencies<T>> documentVectors=profile.getDocumentVectors();
+			profiles+=MemoryEstimator.align(MemoryEstimator.OBJECT_HEADER+MemoryEstimator.REFERENCE)+MemoryEstimator.ofCollection(documentVectors);
+			for(Frequencies<T> vector:documentVectors){
+				Map<T,Counter> map=vector.toMap();
+				if(keyBytes==0)
+					keyBytes=MemoryEstimator.getAverageSize(map.keySet());
+				entries+=map.size();
+				vectors+=MemoryEstimator.ofFrequencies(vector);
+			}
+		}
+		Map<String,Long> breakdown=new LinkedHashMap<>();
+		breakdown.put(VOCABULARY,(long)(keyBytes*entries));
+		breakdown.put(COUNTS,MemoryEstimator.COUNTER*entries);
+		breakdown.put(PROFILES,profiles);
+		breakdown.put(VECTORS,vectors);
+		return breakdown;
+	}
 	/**
 	 * Profile that records document vector
 	 * @param <T> the type of tokens
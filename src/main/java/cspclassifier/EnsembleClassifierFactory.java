@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier;
+
+import cspclassifier.util.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Factory for classifier which combines the results of some classifiers.
+ * The members are asked concurrently, members that do not answer before the
+ * deadline or fail are ignored, but at least one answer is always waited for. By default they run on a fixed-size pool of
+ * daemon threads owned by the factory, not the common pool, so that classifying
+ * from parallel streams does not block the workers of the common pool. The pool
+ * has max(members,processors) threads and a bounded queue, members that do not
+ * fit in the queue are cancelled and ignored like slow members.
+ * @author S.Welcker
+ * @param <T> the type of the objects to be classified
+ */
+public class EnsembleClassifierFactory<T> implements ClassifierFactory<Classifier<T>,EnsembleClassifierFactory.EnsembleModel<T>,T>{
+	private final List<ClassifierFactory<? extends Classifier<T>,? extends Trainable<T>,T>> factories=new ArrayList<>();
+	private final List<Double> weights=new ArrayList<>();
+	private Voting voting=Voting.SCORE;
+	private ExecutorService executor;
+	private ThreadPoolExecutor defaultExecutor;
+	private long deadline=0;
+	/**
+	 * Create a ensemble classifier factory without member
+	 */
+	public EnsembleClassifierFactory(){
+	}
+	/**
+	 * Add a member
+	 * @param factory the factory of the member
+	 * @param weight the weight of the member in voting
+	 * @return this
+	 */
+	public EnsembleClassifierFactory<T> addMember(ClassifierFactory<? extends Classifier<T>,? extends Trainable<T>,T> factory,double weight){
+		factories.add(factory);
+		weights.add(weight);
+		return this;
+	}
+	/**
+	 * Set the way to combine results of members
+	 * @param voting the way
+	 * @return this
+	 */
+	public EnsembleClassifierFactory<T> setVoting(Voting voting){
+		this.voting=voting;
+		return this;
+	}
+	/**
+	 * @return the way to combine results of members
+	 */
+	public Voting getVoting(){
+		return voting;
+	}
+	/**
+	 * Set the executor being used to run members, the number of threads it use
+	 * bounds the number of members running at the same time. Avoid executors
+	 * whose threads may classify through this ensemble, e.g. the common pool
+	 * when parallel streams are used.
+	 * @param executor the executor, null to use the default pool
+	 * @return this
+	 */
+	public EnsembleClassifierFactory<T> setExecutor(ExecutorService executor){
+		this.executor=executor;
+		return this;
+	}
+	/**
+	 * @return the executor being used to run members
+	 */
+	public synchronized ExecutorService getExecutor(){
+		if(executor!=null)
+			return executor;
+		int threads=Math.max(factories.size(),Runtime.getRuntime().availableProcessors());
+		if(defaultExecutor==null||defaultExecutor.getCorePoolSize()<threads)
+			defaultExecutor=createDefaultExecutor(threads);
+		return defaultExecutor;
+	}
+	/**
+	 * Set the deadline
+	 * @param deadline maximum time(millisecond) to wait for members, 0 means no limit
+	 * @return this
+	 */
+	public EnsembleClassifierFactory<T> setDeadline(long deadline){
+		this.deadline=deadline;
+		return this;
+	}
+	/**
+	 * @return maximum time(millisecond) to wait for members, 0 means no limit
+	 */
+	public long getDeadline(){
+		return deadline;
+	}
+	@Override
+	public EnsembleClassifier<T> getClassifier(EnsembleModel<T> model){
+		List<Classifier<T>> classifiers=model.builders.stream().map(Supplier::get).collect(Collectors.toList());
+		double[] weight=weights.stream().mapToDouble((w)->w).toArray();
+		return new EnsembleClassifier<>(classifiers,weight,voting,getExecutor(),deadline);
+	}
+	@Override
+	public EnsembleModel<T> createModel(){
+		List<Trainable<T>> members=new ArrayList<>(factories.size());
+		List<Supplier<Classifier<T>>> builders=new ArrayList<>(factories.size());
+		for(ClassifierFactory<? extends Classifier<T>,? extends Trainable<T>,T> factory:factories)
+			addMember(factory,members,builders);
+		return new EnsembleModel<>(members,builders);
+	}
+	private static <M extends Trainable<T>,T> void addMember(ClassifierFactory<? extends Classifier<T>,M,T> factory,
+			List<Trainable<T>> members,List<Supplier<Classifier<T>>> builders){
+		M model=factory.createModel();
+		members.add(model);
+		builders.add(()->factory.getClassifier(model));
+	}
+	@Override
+	public String toString(){
+		return "Ensemble"+factories+voting;
+	}
+	/**
+	 * The ways to combine results of members
+	 */
+	public enum Voting{
+		/**
+		 * Sum of weighted scores, the scores of each member are first rescaled
+		 * into [0,1] since members score in different scales
+		 */
+		SCORE,
+		/**
+		 * Sum of weighted reciprocal ranks
+		 */
+		RANK
+	}
+	/**
+	 * The number of queued members per thread of the default pool
+	 */
+	private static final int QUEUE_PER_THREAD=16;
+	/**
+	 * Create the pool being used by default to run members. Idle threads
+	 * terminate so that a replaced pool goes away, members rejected by the
+	 * full queue are cancelled instead of blocking or failing the caller.
+	 * @param threads the number of threads
+	 * @return the pool
+	 */
+	private static ThreadPoolExecutor createDefaultExecutor(int threads){
+		ThreadPoolExecutor pool=new ThreadPoolExecutor(threads,threads,60,TimeUnit.SECONDS,new ArrayBlockingQueue<>(threads*QUEUE_PER_THREAD),(task)->{
+			Thread thread=new Thread(task,"ensemble-member");
+			thread.setDaemon(true);
+			return thread;
+		},(task,executor)->{
+			if(task instanceof Future)
+				((Future<?>)task).cancel(false);
+		});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+	/**
+	 * Model that trains the models of all members
+	 * @param <T> the type of the objects to be classified
+	 */
+	public static class EnsembleModel<T> implements Trainable<T>,MemoryAccountable{
+		private final List<Trainable<T>> members;
+		private final List<Supplier<Classifier<T>>> builders;
+		/**
+		 * Create a model
+		 * @param members the models of the members
+		 * @param builders build the classifier of each member from its model
+		 */
+		public EnsembleModel(List<Trainable<T>> members,List<Supplier<Classifier<T>>> builders){
+			this.members=members;
+			this.builders=builders;
+		}
+		@Override
+		public void train(T data,Category category){
+			for(Trainable<T> member:members)
+				member.train(data,category);
+		}
+		/**
+		 * @return the models of the members
+		 */
+		public List<Trainable<T>> getMembers(){
+			return members;
+		}
+		@Override
+		public Map<String,Long> getMemoryBreakdown(){
+			return MemoryAccountable.getMemoryBreakdown(members.toArray());
+		}
+	}
+	/**
+	 * Classifier that combines the results of some classifiers
+	 * @param <T> the type of the objects to be classified
+	 */
+	public static class EnsembleClassifier<T> implements Classifier<T>,MemoryAccountable{
+		private final List<Classifier<T>> members;
+		private final double[] weights;
+		private final Voting voting;
+		private final ExecutorService executor;
+		private final long deadline;
+		private final LongAdder partial=new LongAdder();
+		/**
+		 * Create a classifier
+		 * @param members the members
+		 * @param weights the weights of the members
+		 * @param voting the way to combine results of members
+		 * @param executor being used to run members
+		 * @param deadline maximum time(millisecond) to wait for members, 0 means no limit
+		 */
+		public EnsembleClassifier(List<Classifier<T>> members,double[] weights,Voting voting,ExecutorService executor,long deadline){
+			this.members=members;
+			this.weights=weights;
+			this.voting=voting;
+			this.executor=executor;
+			this.deadline=deadline;
+		}
+		/**
+		 * Ask all members and combine their results. If no member answered
+		 * before the deadline, the first member answering after it is used.
+		 * @param object the object to be classified
+		 * @param max the number of top scored results required
+		 * @return the combined results
+		 * @throws CancellationException if the thread is interrupted while
+		 * waiting for members, the interrupt status is kept
+		 * @throws IllegalStateException if every member failed or was rejected
+		 * by the executor
+		 */
+		@Override
+		public List<ClassificationResult> getCandidates(T object,int max){
+			CompletionService<List<ClassificationResult>> service=new ExecutorCompletionService<>(executor);
+			List<Future<List<ClassificationResult>>> futures=new ArrayList<>(members.size());
+			long limit=System.nanoTime()+TimeUnit.MILLISECONDS.toNanos(deadline);
+			DoubleCounters<Category> votes=new DoubleCounters<>(true);
+			int answered=0;
+			Throwable failure=null;
+			try{
+				for(Classifier<T> member:members)
+					futures.add(service.submit(()->member.getCandidates(object)));
+				for(int remaining=futures.size();remaining>0;remaining--){
+					Future<List<ClassificationResult>> future;
+					if(deadline>0&&answered>0){
+						future=service.poll(limit-System.nanoTime(),TimeUnit.NANOSECONDS);
+						if(future==null)
+							break;
+					}else{
+						future=service.take();
+					}
+					int i=futures.indexOf(future);
+					try{
+						vote(future.get(),weights[i],votes);
+						++answered;
+					}catch(CancellationException ex){
+					}catch(ExecutionException ex){
+						Logger.getLogger(EnsembleClassifierFactory.class.getName()).log(Level.WARNING,"Member "+i+" failed",ex.getCause());
+						failure=ex.getCause();
+					}
+				}
+			}catch(InterruptedException ex){
+				Thread.currentThread().interrupt();
+				throw new CancellationException("Interrupted while waiting for members");
+			}finally{
+				for(Future<List<ClassificationResult>> future:futures)
+					future.cancel(true);
+			}
+			if(answered==0)
+				throw new IllegalStateException("None of the "+members.size()+" members answered",failure);
+			if(answered<members.size())
+				partial.increment();
+			List<ClassificationResult> results=votes.toMap().entrySet().stream().
+					map((e)->new ClassificationResult(e.getValue().getValue(),e.getKey())).sorted().collect(Collectors.toList());
+			return results.size()>max?results.subList(0,max):results;
+		}
+		private void vote(List<ClassificationResult> candidates,double weight,DoubleCounters<Category> votes){
+			if(voting==Voting.RANK){
+				List<ClassificationResult> sorted=new ArrayList<>(candidates);
+				Collections.sort(sorted);
+				for(int i=0;i<sorted.size();i++){
+					votes.advanceCounter(sorted.get(i).getCategory(),weight/(i+1));
+				}
+			}else{
+				double min=Double.POSITIVE_INFINITY,max=Double.NEGATIVE_INFINITY;
+				for(ClassificationResult candidate:candidates){
+					min=Math.min(min,candidate.getScore());
+					max=Math.max(max,candidate.getScore());
+				}
+				double range=max-min;
+				for(ClassificationResult candidate:candidates){
+					votes.advanceCounter(candidate.getCategory(),range>0?weight*(candidate.getScore()-min)/range:weight);
+				}
+			}
+		}
+		/**
+		 * @return the number of requests answered without the results of
+		 * some members because they are too slow or failed
+		 */
+		public long getPartialCount(){
+			return partial.sum();
+		}
+		@Override
+		public Map<String,Long> getMemoryBreakdown(){
+			return MemoryAccountable.getMemoryBreakdown(members.toArray());
+		}
+	}
+}
@@ -17,38 +17,375 @@
 package cspclassifier;
 
 import cspclassifier.util.*;
+import cspclassifier.validator.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
- * Trainable model being used to classify streams based on frequencies of token in the stream
+ * Trainable model being used to classify streams based on frequencies of token in the stream.
+ * In bounded mode, tokens are counted by a count-min sketch first and only
+ * those reaching a frequency threshold are counted exactly, the threshold is
+ * doubled whenever the exact profiles exceed the memory limit.
+ * In spilling mode, train(Stream) counts into per-thread buffers which are
+ * written to disk as sorted runs and merged at the end.
+ * In decaying mode, each sample is weighted by 2^(t/halfLife) where t is the
+ * number of samples trained before it, so that the frequencies seen through the
+ * getters halve every halfLife samples without touching the counters. The
+ * counters are rescaled and tokens that decayed away are dropped at compaction.
+ * Spilling mode cannot be combined with bounded mode, because the runs are
+ * merged without the sketch. Decaying mode cannot be combined with bounded or
+ * spilling mode, because neither the sketch nor the sorted runs know the
+ * weights of the samples.
  * @author Chan Chung Kwong, modified by S.Welcker 2019
  * @param <T> the type of tokens in the streams
  */
 public class FrequenciesModel<T> extends SimpleTrainableModel<Frequencies<T>,FrequenciesModel.FrequencyProfile<T>> 
 		implements TokenFrequenciesModel<T>,Persistable<T>{
+	private final CountMinSketch<T> sketch;
+	private final long memoryLimit;
+	private long threshold;
+	private long entries;
+	private long maxEntries;
+	private File spillDirectory;
+	private Function<T,String> encoder;
+	private Function<String,T> decoder;
+	private int spillBufferSize=1<<20;
+	private long minFrequency=1;
+	private double halfLife=0;
+	private long clock=0;
+	private double peak=0;
+	private long compactionInterval=Long.MAX_VALUE;
+	private double compactionThreshold=0.5;
 	/**
 	 * Create a model
 	 */
 	public FrequenciesModel(){
+		this(null,1,Long.MAX_VALUE);
+	}
+	/**
+	 * Create a model in bounded mode, a quarter of the memory is used by the
+	 * sketch and tokens appeared only once are not counted exactly
+	 * @param memoryLimit the memory to be used(byte)
+	 */
+	public FrequenciesModel(long memoryLimit){
+		this(CountMinSketch.withMemory(memoryLimit/4,0.01),2,memoryLimit-memoryLimit/4);
+	}
+	/**
+	 * Create a model in bounded mode
+	 * @param sketch being used to count tokens before they reach the threshold
+	 * @param threshold the initial frequency threshold
+	 * @param memoryLimit the memory to be used by the exact profiles(byte)
+	 */
+	public FrequenciesModel(CountMinSketch<T> sketch,long threshold,long memoryLimit){
 		super(()->new FrequenciesModel.FrequencyProfile<>(),(data,profile)->profile.update(data));
+		this.sketch=sketch;
+		this.threshold=threshold;
+		this.memoryLimit=memoryLimit;
+		this.maxEntries=memoryLimit/ENTRY_BYTES;
+	}
+	@Override
+	public void train(Frequencies<T> data,Category category){
+		if(halfLife>0){
+			long maxCount=1;
+			for(Counter counter:data.toMap().values())
+				maxCount=Math.max(maxCount,counter.getCount());
+			if(peak+getScale()*maxCount>=MAX_COUNTER)
+				compact();
+			double weight=getScale();
+			getProfiles().computeIfAbsent(category,(key)->new FrequencyProfile<>()).update(data,Math.round(weight));
+			peak+=weight*maxCount;
+			++clock;
+			if(clock>=compactionInterval)
+				compact();
+			return;
+		}
+		if(sketch==null){
+			super.train(data,category);
+			return;
+		}
+		Frequencies<T> admitted=new Frequencies<>(true);
+		data.toMap().forEach((token,count)->{
+			if(sketch.add(token,count.getCount())>=threshold)
+				admitted.toMap().put(token,count);
+		});
+		FrequencyProfile<T> profile=getProfiles().get(category);
+		long before=profile==null?0:profile.getTokenFrequencies().getTokenCount();
+		super.train(admitted,category);
+		entries+=getProfiles().get(category).getTokenFrequencies().getTokenCount()-before;
+		if(entries>maxEntries)
+			shrink();
+	}
+	/**
+	 * Train the model, in spilling mode the samples are counted in parallel if
+	 * the stream is parallel
+	 * @param samples a stream of samples
+	 * @throws UncheckedIOException if the runs cannot be written or read
+	 */
+	@Override
+	public void train(Stream<Sample<Frequencies<T>>> samples){
+		if(spillDirectory==null){
+			super.train(samples);
+			return;
+		}
+		try(SpillingAggregator<T> aggregator=new SpillingAggregator<>(spillDirectory,encoder,spillBufferSize)){
+			samples.forEach((sample)->aggregator.add(sample.getData(),sample.getCategory()));
+			Map<String,FrequencyProfile<T>> profiles=new HashMap<>();
+			aggregator.getDocumentCounts().forEach((category,count)->{
+				FrequencyProfile<T> profile=getProfiles().computeIfAbsent(category,(key)->new FrequencyProfile<>());
+				profile.setDocumentCount(profile.getDocumentCount()+count.sum());
+				profiles.put(category.getName(),profile);
+			});
+			DecodedToken<T> last=new DecodedToken<>();
+			aggregator.merge(minFrequency,(token,category,tokenFrequency,documentFrequency)->{
+				if(!token.equals(last.encoded)){
+					last.encoded=token;
+					last.decoded=decoder.apply(token);
+				}
+				FrequencyProfile<T> profile=profiles.get(category);
+				profile.getTokenFrequencies().advanceFrequency(last.decoded,tokenFrequency);
+				profile.getDocumentFrequencies().advanceFrequency(last.decoded,documentFrequency);
+			});
+		}catch(IOException ex){
+			throw new UncheckedIOException(ex);
+		}
+		entries=countEntries();
+	}
+	/**
+	 * Set the spilling mode, which is used by train(Stream) to count samples
+	 * with limited memory
+	 * @param spillDirectory where the sorted runs are written to, null to
+	 * disable spilling
+	 * @param encoder encode token to String without tab and new line
+	 * @param decoder decode String to token
+	 * @return this
+	 * @throws IllegalStateException if the model is in bounded or decaying mode
+	 */
+	public FrequenciesModel<T> setSpilling(File spillDirectory,Function<T,String> encoder,Function<String,T> decoder){
+		if(spillDirectory!=null&&sketch!=null)
+			throw new IllegalStateException("Spilling mode cannot be combined with bounded mode");
+		if(spillDirectory!=null&&halfLife>0)
+			throw new IllegalStateException("Spilling mode cannot be combined with decaying mode");
+		this.spillDirectory=spillDirectory;
+		this.encoder=encoder;
+		this.decoder=decoder;
+		return this;
+	}
+	/**
+	 * @return where the sorted runs are written to, null if not in spilling mode
+	 */
+	public File getSpillDirectory(){
+		return spillDirectory;
+	}
+	/**
+	 * Set the buffer size in spilling mode
+	 * @param spillBufferSize the number of distinct token and category pairs
+	 * counted by a thread before they are written to disk
+	 * @return this
+	 */
+	public FrequenciesModel<T> setSpillBufferSize(int spillBufferSize){
+		this.spillBufferSize=spillBufferSize;
+		return this;
+	}
+	/**
+	 * @return the number of distinct token and category pairs counted by a
+	 * thread before they are written to disk
+	 */
+	public int getSpillBufferSize(){
+		return spillBufferSize;
+	}
+	/**
+	 * Set the minimum frequency in spilling mode, so that the merged profiles
+	 * fit in memory
+	 * @param minFrequency tokens whose total frequency in a call of
+	 * train(Stream) is lower are not kept
+	 * @return this
+	 */
+	public FrequenciesModel<T> setMinFrequency(long minFrequency){
+		this.minFrequency=minFrequency;
+		return this;
+	}
+	/**
+	 * @return tokens whose total frequency in a call of train(Stream) is lower
+	 * are not kept in spilling mode
+	 */
+	public long getMinFrequency(){
+		return minFrequency;
+	}
+	/**
+	 * Set the decaying mode, it must be set before training or loading, since
+	 * decayed and undecayed counts cannot be mixed
+	 * @param halfLife the number of samples after which the weight of a sample
+	 * halves, 0 means no decay
+	 * @return this
+	 * @throws IllegalStateException if the model is in bounded or spilling
+	 * mode, or already holds samples
+	 */
+	public FrequenciesModel<T> setHalfLife(double halfLife){
+		if(halfLife!=this.halfLife&&!getProfiles().isEmpty())
+			throw new IllegalStateException("Half-life cannot be changed after training");
+		if(halfLife>0&&(sketch!=null||spillDirectory!=null))
+			throw new IllegalStateException("Decaying mode cannot be combined with bounded or spilling mode");
+		this.halfLife=halfLife;
+		return this;
+	}
+	/**
+	 * @return the number of samples after which the weight of a sample halves,
+	 * 0 means no decay
+	 */
+	public double getHalfLife(){
+		return halfLife;
+	}
+	/**
+	 * Set how often compaction happens in decaying mode, it also happens
+	 * before a sample may overflow the counters
+	 * @param compactionInterval the number of samples between compactions
+	 * @return this
+	 */
+	public FrequenciesModel<T> setCompactionInterval(long compactionInterval){
+		this.compactionInterval=compactionInterval;
+		return this;
+	}
+	/**
+	 * @return the number of samples between compactions
+	 */
+	public long getCompactionInterval(){
+		return compactionInterval;
+	}
+	/**
+	 * Set the threshold of compaction
+	 * @param compactionThreshold tokens and categories whose decayed frequency
+	 * is lower are dropped at compaction
+	 * @return this
+	 */
+	public FrequenciesModel<T> setCompactionThreshold(double compactionThreshold){
+		this.compactionThreshold=compactionThreshold;
+		return this;
+	}
+	/**
+	 * @return tokens and categories whose decayed frequency is lower are
+	 * dropped at compaction
+	 */
+	public double getCompactionThreshold(){
+		return compactionThreshold;
+	}
+	/**
+	 * Rescale the counters so that a new sample has weight 1 again, and drop
+	 * tokens and categories whose decayed frequency is below the threshold.
+	 * Does nothing if not in decaying mode.
+	 */
+	public void compact(){
+		if(halfLife<=0)
+			return;
+		double factor=UNIT/getScale();
+		long minimum=(long)Math.ceil(compactionThreshold*UNIT);
+		getProfiles().values().removeIf((profile)->{
+			profile.setDocumentCount(Math.round(profile.getDocumentCount()*factor));
+			compact(profile.getTokenFrequencies(),factor,minimum);
+			compact(profile.getDocumentFrequencies(),factor,minimum);
+			return profile.getDocumentCount()<minimum;
+		});
+		clock=0;
+		entries=countEntries();
+		peak=findPeak();
+	}
+	private static <T> void compact(Frequencies<T> frequencies,double factor,long minimum){
+		Iterator<Counter> iterator=frequencies.toMap().values().iterator();
+		while(iterator.hasNext()){
+			Counter counter=iterator.next();
+			long count=Math.round(counter.getCount()*factor);
+			if(count<minimum)
+				iterator.remove();
+			else
+				counter.advance(count-counter.getCount());
+		}
+	}
+	/**
+	 * @return the weight of a new sample in the units of the counters
+	 */
+	private double getScale(){
+		return halfLife>0?UNIT*Math.pow(2,clock/halfLife):1;
+	}
+	private <K> Frequencies<K> decay(Frequencies<K> counters,double scale){
+		if(halfLife<=0)
+			return counters;
+		Frequencies<K> decayed=new Frequencies<>(true);
+		counters.toMap().forEach((key,counter)->{
+			long count=Math.round(counter.getCount()/scale);
+			if(count>0)
+				decayed.toMap().put(key,new Counter(count));
+		});
+		return decayed;
+	}
+	private long decay(long count,double scale){
+		return halfLife>0?Math.round(count/scale):count;
+	}
+	private void shrink(){
+		long bytes=estimatedBytes()-sketch.getBytes();
+		while(bytes>memoryLimit&&entries>0){
+			threshold*=2;
+			getProfiles().forEach((k,v)->{
+				v.getDocumentFrequencies().toMap().keySet().removeIf((token)->sketch.estimate(token)<threshold);
+				v.getTokenFrequencies().toMap().keySet().removeIf((token)->sketch.estimate(token)<threshold);
+			});
+			entries=countEntries();
+			bytes=estimatedBytes()-sketch.getBytes();
+		}
+		maxEntries=bytes>0?(long)((double)memoryLimit/bytes*entries):memoryLimit/ENTRY_BYTES;
+	}
+	/**
+	 * @return the largest counter
+	 */
+	private long findPeak(){
+		long max=0;
+		for(FrequencyProfile<T> profile:getProfiles().values()){
+			max=Math.max(max,profile.getDocumentCount());
+			for(Counter counter:profile.getTokenFrequencies().toMap().values())
+				max=Math.max(max,counter.getCount());
+		}
+		return max;
+	}
+	private long countEntries(){
+		return getProfiles().values().stream().mapToLong((profile)->profile.getTokenFrequencies().getTokenCount()).sum();
+	}
+	/**
+	 * @return the sketch counting all tokens, null if not in bounded mode
+	 */
+	public CountMinSketch<T> getSketch(){
+		return sketch;
+	}
+	/**
+	 * In bounded mode, every token whose total frequency reaches the threshold
+	 * is kept, and the frequencies kept for a token fall short of the true
+	 * ones by less than the threshold in total. Tokens whose total frequency
+	 * is below the threshold minus the error bound of the sketch are kept only
+	 * with probability at most delta of the sketch.
+	 * @return current frequency threshold
+	 */
+	public long getThreshold(){
+		return threshold;
 	}
 	@Override
 	public long getSampleCount(){
-		return getProfiles().values().stream().mapToLong((profile)->profile.getDocumentCount()).sum();
+		return Math.round(getProfiles().values().stream().mapToLong((profile)->profile.getDocumentCount()).sum()/getScale());
 	}
 	@Override
 	public Map<Category,Frequencies<T>> getTokenFrequencies(){
-		return getProfiles().entrySet().stream().collect(Collectors.toMap((e)->e.getKey(),(e)->e.getValue().getTokenFrequencies()));
+		double scale=getScale();
+		return getProfiles().entrySet().stream().collect(Collectors.toMap((e)->e.getKey(),(e)->decay(e.getValue().getTokenFrequencies(),scale)));
 	}
 	@Override
 	public Frequencies<T> getTotalDocumentFrequencies(){
@@ -56,7 +393,7 @@ public class FrequenciesModel<T> extends SimpleTrainableModel<Frequencies<T>,Fre
 		getProfiles().forEach((k,v)->{
 			documentFrequenciesRaw.merge(v.getDocumentFrequencies());
 		});
-		return documentFrequenciesRaw;
+		return decay(documentFrequenciesRaw,getScale());
 	}
 	@Override
 	public Frequencies<T> getTotalTokenFrequencies(){
@@ -64,15 +401,17 @@ public class FrequenciesModel<T> extends SimpleTrainableModel<Frequencies<T>,Fre
 		getProfiles().forEach((k,v)->{
 			tokenFrequenciesRaw.merge(v.getTokenFrequencies());
 		});
-		return tokenFrequenciesRaw;
+		return decay(tokenFrequenciesRaw,getScale());
 	}
 	@Override
 	public Frequencies<Category> getSampleCounts(){
-		return new Frequencies<>(getProfiles().entrySet().stream().collect(Collectors.toMap((e)->e.getKey(),(e)->new Counter(e.getValue().getDocumentCount()))));
+		double scale=getScale();
+		return new Frequencies<>(getProfiles().entrySet().stream().collect(Collectors.toMap((e)->e.getKey(),(e)->new Counter(decay(e.getValue().getDocumentCount(),scale)))));
 	}
 	@Override
 	public Frequencies<Category> getTokenCounts(){
-		return new Frequencies<>(getProfiles().entrySet().stream().collect(Collectors.toMap((e)->e.getKey(),(e)->new Counter(e.getValue().getTokenFrequencies().getTokenCount()))));
+		double scale=getScale();
+		return new Frequencies<>(getProfiles().entrySet().stream().collect(Collectors.toMap((e)->e.getKey(),(e)->new Counter(decay(e.getValue().getTokenFrequencies(),scale).getTokenCount()))));
 	}
 	@Override
 	public void retainAll(Set<T> toKeep){
@@ -80,15 +419,33 @@ public class FrequenciesModel<T> extends SimpleTrainableModel<Frequencies<T>,Fre
 			v.getDocumentFrequencies().toMap().keySet().retainAll(toKeep);
 			v.getTokenFrequencies().toMap().keySet().retainAll(toKeep);
 		});
+		entries=countEntries();
+	}
+	@Override
+	public Map<String,Long> getMemoryBreakdown(){
+		long vocabulary=0,counts=0,profiles=MemoryEstimator.ofMap(getProfiles());
+		for(FrequencyProfile<T> profile:getProfiles().values()){
+			Map<T,Counter> tokenFrequencies=profile.getTokenFrequencies().toMap();
+			vocabulary+=MemoryEstimator.ofElements(tokenFrequencies.keySet());
+			counts+=(long)MemoryEstimator.COUNTER*(tokenFrequencies.size()+profile.getDocumentFrequencies().getTokenCount());
+			profiles+=MemoryEstimator.align(MemoryEstimator.OBJECT_HEADER+8+2*MemoryEstimator.REFERENCE)
+					+MemoryEstimator.ofFrequencies(profile.getTokenFrequencies())+MemoryEstimator.ofFrequencies(profile.getDocumentFrequencies());
+		}
+		Map<String,Long> breakdown=new LinkedHashMap<>();
+		breakdown.put(VOCABULARY,vocabulary);
+		breakdown.put(COUNTS,sketch==null?counts:counts+sketch.getBytes());
+		breakdown.put(PROFILES,profiles);
+		return breakdown;
 	}
 	@Override
 	public void save(File directory,Function<T,String> encoder){
 		directory.mkdirs();
+		double scale=getScale();
 		getProfiles().forEach((category,profile)->{
 			try{
-				Files.write(new File(directory,category+DOC_COUNT).toPath(),Long.toString(profile.getDocumentCount()).getBytes(StandardCharsets.UTF_8));
-				Files.write(new File(directory,category+DOC_FREQ).toPath(),profile.getDocumentFrequencies().toMap().entrySet().stream().map((e)->(CharSequence)(encoder.apply(e.getKey())+"\t"+e.getValue()))::iterator);
-				Files.write(new File(directory,category+TOKEN_FREQ).toPath(),profile.getTokenFrequencies().toMap().entrySet().stream().map((e)->(CharSequence)(encoder.apply(e.getKey())+"\t"+e.getValue()))::iterator);
+				Files.write(new File(directory,category+DOC_COUNT).toPath(),Long.toString(decay(profile.getDocumentCount(),scale)).getBytes(StandardCharsets.UTF_8));
+				Files.write(new File(directory,category+DOC_FREQ).toPath(),decay(profile.getDocumentFrequencies(),scale).toMap().entrySet().stream().map((e)->(CharSequence)(encoder.apply(e.getKey())+"\t"+e.getValue()))::iterator);
+				Files.write(new File(directory,category+TOKEN_FREQ).toPath(),decay(profile.getTokenFrequencies(),scale).toMap().entrySet().stream().map((e)->(CharSequence)(encoder.apply(e.getKey())+"\t"+e.getValue()))::iterator);
 			}catch(IOException ex){
 				Logger.getLogger(FrequenciesModel.class.getName()).log(Level.SEVERE,null,ex);
 			}
@@ -96,6 +453,7 @@ public class FrequenciesModel<T> extends SimpleTrainableModel<Frequencies<T>,Fre
 	}
 	@Override
 	public void load(File directory,Function<String,T> decoder){
+		double scale=getScale();
 		try{
 			Files.list(directory.toPath()).filter((path)->path.getFileName().toString().endsWith(DOC_COUNT)).forEach((path)->{
 				String categoryName=path.getFileName().toString();
@@ -106,11 +464,11 @@ public class FrequenciesModel<T> extends SimpleTrainableModel<Frequencies<T>,Fre
 				}
 				FrequencyProfile<T> profile=getProfiles().get(category);
 				try{
-					profile.setDocumentCount(Long.valueOf(new String(Files.readAllBytes(path),StandardCharsets.UTF_8).trim()));
+					profile.setDocumentCount(scale(Long.parseLong(new String(Files.readAllBytes(path),StandardCharsets.UTF_8).trim()),scale));
 					Files.lines(new File(directory,categoryName+DOC_FREQ).toPath(),StandardCharsets.UTF_8).
-							forEach((line)->loadLine(line,profile.getDocumentFrequencies(),decoder));
+							forEach((line)->loadLine(line,profile.getDocumentFrequencies(),decoder,scale));
 					Files.lines(new File(directory,categoryName+TOKEN_FREQ).toPath(),StandardCharsets.UTF_8).
-							forEach((line)->loadLine(line,profile.getTokenFrequencies(),decoder));
+							forEach((line)->loadLine(line,profile.getTokenFrequencies(),decoder,scale));
 				}catch(IOException ex){
 					Logger.getLogger(FrequenciesModel.class.getName()).log(Level.SEVERE,null,ex);
 				}
@@ -118,16 +476,41 @@ public class FrequenciesModel<T> extends SimpleTrainableModel<Frequencies<T>,Fre
 		}catch(IOException ex){
 			Logger.getLogger(FrequenciesModel.class.getName()).log(Level.SEVERE,null,ex);
 		}
+		entries=countEntries();
+		if(halfLife>0)
+			peak=findPeak();
 	}
-	private void loadLine(String line,Frequencies<T> frequencies,Function<String,T> decoder){
+	private void loadLine(String line,Frequencies<T> frequencies,Function<String,T> decoder,double scale){
 		int cut=line.indexOf('\t');
 		if(cut!=-1){
-			frequencies.advanceFrequency(decoder.apply(line.substring(0,cut)),Long.valueOf(line.substring(cut+1)));
+			frequencies.advanceFrequency(decoder.apply(line.substring(0,cut)),scale(Long.parseLong(line.substring(cut+1)),scale));
 		}
 	}
+	/**
+	 * Convert a saved count into the units of the counters, counts are kept
+	 * exact if not in decaying mode
+	 */
+	private long scale(long count,double scale){
+		return halfLife>0?Math.round(count*scale):count;
+	}
 	private static final String DOC_FREQ="_docFreq";
 	private static final String TOKEN_FREQ="_tokenFreq";
 	private static final String DOC_COUNT="_docCount";
+	/**
+	 * Guess of the memory used by a token in a profile, refined once the
+	 * memory limit is reached
+	 */
+	private static final int ENTRY_BYTES=256;
+	/**
+	 * Weight of a sample in the units of the counters right after compaction
+	 * in decaying mode
+	 */
+	private static final long UNIT=1<<16;
+	/**
+	 * Bound of the counters in decaying mode, compaction happens before a
+	 * sample may push any counter beyond it
+	 */
+	private static final double MAX_COUNTER=Long.MAX_VALUE/4;
 	/**
 	 * Profile that records frequencies of each token
 	 * @param <T> the type of tokens
@@ -150,6 +533,18 @@ public class FrequenciesModel<T> extends SimpleTrainableModel<Frequencies<T>,Fre
 			object.toMap().keySet().forEach((token)->documentFrequencies.advanceFrequency(token));
 			++documentCount;
 		}
+		/**
+		 * Update the profile based on weighted sample data
+		 * @param object sample data
+		 * @param weight the weight of the sample
+		 */
+		public void update(Frequencies<T> object,long weight){
+			object.toMap().forEach((token,count)->{
+				tokenFrequencies.advanceFrequency(token,count.getCount()*weight);
+				documentFrequencies.advanceFrequency(token,weight);
+			});
+			documentCount+=weight;
+		}
 		/**
 		 * @return the number of samples that contains each token in the category
 		 */
@@ -172,4 +567,11 @@ public class FrequenciesModel<T> extends SimpleTrainableModel<Frequencies<T>,Fre
 			this.documentCount=documentCount;
 		}
 	}
+	/**
+	 * The last token being decoded, entries of a token are merged consecutively
+	 */
+	private static class DecodedToken<T>{
+		private String encoded;
+		private T decoded;
+	}
 }
@@ -0,0 +1,27 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier;
+
+/**
+ * Classifier which can learn from new samples after it is built, without
+ * rebuilding it from the model. Training is safe to run while other threads
+ * classify, and it does not update the model the classifier was built from.
+ * @author S.Welcker
+ * @param <T> the type of the objects to be classified
+ */
+public interface IncrementalClassifier<T> extends Classifier<T>,Trainable<T>{
+}
@@ -18,6 +18,7 @@ package cspclassifier;
 
 import cspclassifier.util.*;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -75,7 +76,7 @@ public class KNearestClassifierFactory<T> extends BagClassifierFactory<Classifie
 	public DocumentVectorsModel<T> createModel(){
 		return new DocumentVectorsModel<>();
 	}
-	private static class KNearestClassifier<T> implements Classifier<Frequencies<T>>{
+	private static class KNearestClassifier<T> implements Classifier<Frequencies<T>>,MemoryAccountable{
 		private final TfIdfFormula tfIdfFormula;
 		private final Frequencies<T> documentFrequencies;
 		private final long documentCount;
@@ -117,6 +118,18 @@ public class KNearestClassifierFactory<T> extends BagClassifierFactory<Classifie
 		private double getTfIdf(T token,long freq){
 			return tfIdfFormula.calculate(freq,documentFrequencies.getFrequency(token),documentCount);
 		}
+		/**
+		 * The document vectors are shared with the model
+		 */
+		@Override
+		public Map<String,Long> getMemoryBreakdown(){
+			Map<String,Long> breakdown=DocumentVectorsModel.getMemoryBreakdown(profiles);
+			long tokenCount=documentFrequencies.getTokenCount();
+			breakdown.put(VOCABULARY,breakdown.get(VOCABULARY)+MemoryEstimator.ofElements(documentFrequencies.toMap().keySet()));
+			breakdown.put(COUNTS,breakdown.get(COUNTS)+MemoryEstimator.COUNTER*tokenCount);
+			breakdown.put(INDEX,MemoryEstimator.ofFrequencies(documentFrequencies));
+			return breakdown;
+		}
 	}
 	@Override
 	protected String getName(){
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Model or classifier that can estimate the memory it uses. The estimates are
+ * computed from the sizes of its structures instead of walking the heap, so
+ * they are cheap but approximate.
+ * @author S.Welcker
+ */
+public interface MemoryAccountable{
+	/**
+	 * Memory used by the tokens themselves
+	 */
+	String VOCABULARY="vocabulary";
+	/**
+	 * Memory used by counters and numeric tables
+	 */
+	String COUNTS="counts";
+	/**
+	 * Memory used by the structures holding per-category profiles
+	 */
+	String PROFILES="profiles";
+	/**
+	 * Memory used by stored document vectors
+	 */
+	String VECTORS="vectors";
+	/**
+	 * Memory used by index structures built for classification
+	 */
+	String INDEX="index";
+	/**
+	 * @return estimated number of bytes used
+	 */
+	default long estimatedBytes(){
+		return getMemoryBreakdown().values().stream().mapToLong((bytes)->bytes).sum();
+	}
+	/**
+	 * @return estimated number of bytes used by each part, e.g. VOCABULARY
+	 */
+	Map<String,Long> getMemoryBreakdown();
+	/**
+	 * Estimate the memory used by a object
+	 * @param object a model or a classifier
+	 * @return estimated number of bytes used, -1 if the object is not
+	 * MemoryAccountable
+	 */
+	static long estimatedBytes(Object object){
+		return object instanceof MemoryAccountable?((MemoryAccountable)object).estimatedBytes():-1;
+	}
+	/**
+	 * Sum up the estimated memory used by some parts
+	 * @param parts models or classifiers, those not MemoryAccountable are ignored
+	 * @return estimated number of bytes used by each part
+	 */
+	static Map<String,Long> getMemoryBreakdown(Object... parts){
+		Map<String,Long> breakdown=new LinkedHashMap<>();
+		for(Object part:parts){
+			if(part instanceof MemoryAccountable)
+				((MemoryAccountable)part).getMemoryBreakdown().forEach((key,bytes)->breakdown.merge(key,bytes,Long::sum));
+		}
+		return breakdown;
+	}
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier;
+
+import cspclassifier.util.*;
+import cspclassifier.validator.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Factory for logistic regression classifier trained online. Tokens are hashed
+ * into a fixed number of features, so the model is just a weight matrix whose
+ * size does not depend on the number of samples or tokens, and it is updated
+ * by each sample with SGD or AdaGrad. Classifiers read the weights of the
+ * model directly, so they reflect further training immediately.
+ * @author S.Welcker
+ * @param <T> the type of tokens
+ */
+public class OnlineLinearClassifierFactory<T> implements ClassifierFactory<Classifier<Frequencies<T>>,OnlineLinearClassifierFactory.LinearModel<T>,Frequencies<T>>{
+	private int bits=18;
+	private double learningRate=0.5;
+	private double regularization=1e-6;
+	private boolean adaGrad=true;
+	private boolean hogwild=false;
+	/**
+	 * Create a online linear classifier factory
+	 */
+	public OnlineLinearClassifierFactory(){
+	}
+	/**
+	 * Set the number of features
+	 * @param bits the logarithm to base 2 of the number of features, from 1
+	 * to 28
+	 * @return this
+	 * @throws IllegalArgumentException if bits is out of range
+	 */
+	public OnlineLinearClassifierFactory<T> setBits(int bits){
+		if(bits<1||bits>28)
+			throw new IllegalArgumentException("Bits must be between 1 and 28: "+bits);
+		this.bits=bits;
+		return this;
+	}
+	/**
+	 * @return the logarithm to base 2 of the number of features
+	 */
+	public int getBits(){
+		return bits;
+	}
+	/**
+	 * Set the learning rate
+	 * @param learningRate the step size of SGD, or the initial step size of
+	 * AdaGrad
+	 * @return this
+	 */
+	public OnlineLinearClassifierFactory<T> setLearningRate(double learningRate){
+		this.learningRate=learningRate;
+		return this;
+	}
+	/**
+	 * @return the step size of SGD, or the initial step size of AdaGrad
+	 */
+	public double getLearningRate(){
+		return learningRate;
+	}
+	/**
+	 * Set the L2 regularization, which is applied to the weights of the
+	 * features present in a sample when it is trained
+	 * @param regularization the coefficient of L2 regularization
+	 * @return this
+	 */
+	public OnlineLinearClassifierFactory<T> setRegularization(double regularization){
+		this.regularization=regularization;
+		return this;
+	}
+	/**
+	 * @return the coefficient of L2 regularization
+	 */
+	public double getRegularization(){
+		return regularization;
+	}
+	/**
+	 * Set if AdaGrad is used, so that rare features get larger steps
+	 * @param adaGrad true to use AdaGrad, false to use SGD with constant step
+	 * @return this
+	 */
+	public OnlineLinearClassifierFactory<T> setAdaGrad(boolean adaGrad){
+		this.adaGrad=adaGrad;
+		return this;
+	}
+	/**
+	 * @return true if AdaGrad is used, false if SGD with constant step is used
+	 */
+	public boolean isAdaGrad(){
+		return adaGrad;
+	}
+	/**
+	 * Set if train(Stream) updates the weights from all threads without
+	 * locking(Hogwild), some updates may be lost but they are sparse so the
+	 * model still converges
+	 * @param hogwild true to train in parallel
+	 * @return this
+	 */
+	public OnlineLinearClassifierFactory<T> setHogwild(boolean hogwild){
+		this.hogwild=hogwild;
+		return this;
+	}
+	/**
+	 * @return true if train(Stream) updates the weights in parallel
+	 */
+	public boolean isHogwild(){
+		return hogwild;
+	}
+	@Override
+	public Classifier<Frequencies<T>> getClassifier(LinearModel<T> model){
+		return new LinearClassifier<>(model);
+	}
+	@Override
+	public LinearModel<T> createModel(){
+		return new LinearModel<>(bits,learningRate,regularization,adaGrad,hogwild);
+	}
+	@Override
+	public String toString(){
+		return "OnlineLinear"+(adaGrad?"[AdaGrad]":"[SGD]");
+	}
+	/**
+	 * Weight matrix of multinomial logistic regression over hashed features.
+	 * The features of a sample are log(1+frequency) of its tokens, normalized
+	 * to unit length, each token is hashed to a feature with a random sign.
+	 * @param <T> the type of tokens
+	 */
+	public static class LinearModel<T> implements Trainable<Frequencies<T>>,MemoryAccountable{
+		private final int mask;
+		private final double learningRate;
+		private final double regularization;
+		private final boolean adaGrad;
+		private final boolean hogwild;
+		private final Map<Category,Integer> ordinals=new ConcurrentHashMap<>();
+		private final LongAdder sampleCount=new LongAdder();
+		private volatile Weights weights=new Weights(new Category[0],new double[0][],new double[0][]);
+		/**
+		 * Create a model
+		 * @param bits the logarithm to base 2 of the number of features
+		 * @param learningRate the step size
+		 * @param regularization the coefficient of L2 regularization
+		 * @param adaGrad true to use AdaGrad, false to use SGD
+		 * @param hogwild true to train in parallel
+		 */
+		public LinearModel(int bits,double learningRate,double regularization,boolean adaGrad,boolean hogwild){
+			this.mask=(1<<bits)-1;
+			this.learningRate=learningRate;
+			this.regularization=regularization;
+			this.adaGrad=adaGrad;
+			this.hogwild=hogwild;
+		}
+		@Override
+		public void train(Frequencies<T> data,Category category){
+			int target=getOrdinal(category);
+			Weights current=weights;
+			double[][] w=current.weights;
+			double[][] g=current.squares;
+			int n=data.getTokenCount();
+			int[] features=new int[n];
+			double[] values=new double[n];
+			extract(data,features,values);
+			double[] probabilities=getProbabilities(w,features,values,n);
+			for(int c=0;c<w.length;c++){
+				double error=c==target?probabilities[c]-1:probabilities[c];
+				double[] wc=w[c];
+				double[] gc=adaGrad?g[c]:null;
+				for(int i=0;i<n;i++){
+					int j=features[i];
+					update(wc,gc,j,error*values[i]+regularization*wc[j]);
+				}
+				update(wc,gc,mask+1,error);
+			}
+			sampleCount.increment();
+		}
+		private void update(double[] w,double[] g,int j,double gradient){
+			if(g!=null){
+				g[j]+=gradient*gradient;
+				if(g[j]>0)
+					w[j]-=learningRate*gradient/Math.sqrt(g[j]);
+			}else{
+				w[j]-=learningRate*gradient;
+			}
+		}
+		/**
+		 * Train the model, in Hogwild mode the samples are trained in
+		 * parallel without locking
+		 * @param samples a stream of samples
+		 */
+		@Override
+		public void train(Stream<Sample<Frequencies<T>>> samples){
+			if(hogwild)
+				samples.parallel().forEach((sample)->train(sample.getData(),sample.getCategory()));
+			else
+				Trainable.super.train(samples);
+		}
+		private int getOrdinal(Category category){
+			Integer ordinal=ordinals.get(category);
+			return ordinal!=null?ordinal:addCategory(category);
+		}
+		private synchronized int addCategory(Category category){
+			Integer ordinal=ordinals.get(category);
+			if(ordinal!=null)
+				return ordinal;
+			Weights current=weights;
+			int size=current.categories.length;
+			double[][] w=Arrays.copyOf(current.weights,size+1);
+			w[size]=new double[mask+2];
+			double[][] g=Arrays.copyOf(current.squares,size+1);
+			g[size]=adaGrad?new double[mask+2]:null;
+			Category[] c=Arrays.copyOf(current.categories,size+1);
+			c[size]=category;
+			weights=new Weights(c,w,g);
+			ordinals.put(category,size);
+			return size;
+		}
+		private void extract(Frequencies<T> data,int[] features,double[] values){
+			int i=0;
+			double norm=0;
+			for(Map.Entry<T,Counter> e:data.toMap().entrySet()){
+				long h=hash(e.getKey());
+				features[i]=(int)h&mask;
+				values[i]=(h<0?-1:1)*Math.log1p(e.getValue().getCount());
+				norm+=values[i]*values[i];
+				++i;
+			}
+			if(norm>0){
+				norm=Math.sqrt(norm);
+				for(i=0;i<values.length;i++)
+					values[i]/=norm;
+			}
+		}
+		private double[] getProbabilities(double[][] w,int[] features,double[] values,int n){
+			double[] scores=new double[w.length];
+			double max=Double.NEGATIVE_INFINITY;
+			for(int c=0;c<w.length;c++){
+				double[] wc=w[c];
+				double score=wc[mask+1];
+				for(int i=0;i<n;i++)
+					score+=wc[features[i]]*values[i];
+				scores[c]=score;
+				max=Math.max(max,score);
+			}
+			double sum=0;
+			for(int c=0;c<scores.length;c++){
+				scores[c]=Math.exp(scores[c]-max);
+				sum+=scores[c];
+			}
+			for(int c=0;c<scores.length;c++)
+				scores[c]/=sum;
+			return scores;
+		}
+		private static long hash(Object token){
+			long h=(token==null?0:token.hashCode())*0x9E3779B97F4A7C15L;
+			h=(h^(h>>>30))*0xBF58476D1CE4E5B9L;
+			h=(h^(h>>>27))*0x94D049BB133111EBL;
+			return h^(h>>>31);
+		}
+		/**
+		 * @return the number of samples trained
+		 */
+		public long getSampleCount(){
+			return sampleCount.sum();
+		}
+		/**
+		 * @return the categories seen so far
+		 */
+		public List<Category> getCategories(){
+			return Arrays.asList(weights.categories.clone());
+		}
+		@Override
+		public Map<String,Long> getMemoryBreakdown(){
+			int size=weights.categories.length;
+			long row=MemoryEstimator.ofArray(mask+2,8);
+			Map<String,Long> breakdown=new LinkedHashMap<>();
+			breakdown.put(COUNTS,(adaGrad?2:1)*(size*row+MemoryEstimator.ofArray(size,MemoryEstimator.REFERENCE)));
+			breakdown.put(PROFILES,MemoryEstimator.ofMap(ordinals)+16L*size+MemoryEstimator.ofArray(size,MemoryEstimator.REFERENCE));
+			return breakdown;
+		}
+	}
+	/**
+	 * Snapshot of the rows of the weight matrix, replaced when a category is
+	 * added while the rows themselves are updated in place
+	 */
+	private static class Weights{
+		private final Category[] categories;
+		private final double[][] weights;
+		private final double[][] squares;
+		Weights(Category[] categories,double[][] weights,double[][] squares){
+			this.categories=categories;
+			this.weights=weights;
+			this.squares=squares;
+		}
+	}
+	/**
+	 * Classifier which scores categories by their probabilities under the
+	 * current weights of a model
+	 */
+	private static class LinearClassifier<T> implements Classifier<Frequencies<T>>,MemoryAccountable{
+		private final LinearModel<T> model;
+		LinearClassifier(LinearModel<T> model){
+			this.model=model;
+		}
+		@Override
+		public List<ClassificationResult> getCandidates(Frequencies<T> object,int max){
+			Weights current=model.weights;
+			double[][] w=current.weights;
+			Category[] categories=current.categories;
+			int n=object.getTokenCount();
+			int[] features=new int[n];
+			double[] values=new double[n];
+			model.extract(object,features,values);
+			double[] probabilities=model.getProbabilities(w,features,values,n);
+			List<ClassificationResult> results=new ArrayList<>(probabilities.length);
+			for(int c=0;c<probabilities.length;c++)
+				results.add(new ClassificationResult(probabilities[c],categories[c]));
+			return results;
+		}
+		/**
+		 * @return the memory used by the model, since the classifier shares
+		 * its weights
+		 */
+		@Override
+		public Map<String,Long> getMemoryBreakdown(){
+			return model.getMemoryBreakdown();
+		}
+	}
+}
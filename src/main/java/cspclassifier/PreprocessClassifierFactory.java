@@ -17,6 +17,7 @@
 package cspclassifier;
 
 import java.util.List;
+import java.util.Map;
 import java.util.function.Function;
 
 /**
@@ -38,9 +39,24 @@ public class PreprocessClassifierFactory<M extends Trainable<S>,T,S> implements
 		this.preprocessor=preprocessor;
 		this.baseFactory=baseFactory;
 	}
+	/**
+	 * @return the preprocessor
+	 */
+	public Function<T,S> getPreprocessor(){
+		return preprocessor;
+	}
+	/**
+	 * @return the based factory
+	 */
+	public ClassifierFactory<? extends Classifier<S>,M,S> getBaseFactory(){
+		return baseFactory;
+	}
 	@Override
 	public Classifier<T> getClassifier(PreprocessModel<M,T,S> model){
-		return new PreprocessClassifier(preprocessor,baseFactory.getClassifier(model.getUnderlying()));
+		Classifier<S> base=baseFactory.getClassifier(model.getUnderlying());
+		if(base instanceof IncrementalClassifier)
+			return new IncrementalPreprocessClassifier<>(preprocessor,(IncrementalClassifier<S>)base);
+		return new PreprocessClassifier<>(preprocessor,base);
 	}
 	@Override
 	public PreprocessModel<M,T,S> createModel(){
@@ -50,10 +66,10 @@ public class PreprocessClassifierFactory<M extends Trainable<S>,T,S> implements
 	public String toString(){
 		return "preprocessed "+baseFactory.toString();
 	}
-	private static class PreprocessClassifier<T,S> implements Classifier<T>{
-		private final Function<T,S> preprocessor;
-		private final Classifier<S> baseClassifier;
-		public PreprocessClassifier(Function<T,S> preprocessor,Classifier<S> baseClassifier){
+	private static class PreprocessClassifier<T,S,C extends Classifier<S>> implements Classifier<T>,MemoryAccountable{
+		protected final Function<T,S> preprocessor;
+		protected final C baseClassifier;
+		public PreprocessClassifier(Function<T,S> preprocessor,C baseClassifier){
 			this.preprocessor=preprocessor;
 			this.baseClassifier=baseClassifier;
 		}
@@ -61,5 +77,18 @@ public class PreprocessClassifierFactory<M extends Trainable<S>,T,S> implements
 		public List<ClassificationResult> getCandidates(T object,int max){
 			return baseClassifier.getCandidates(preprocessor.apply(object),max);
 		}
+		@Override
+		public Map<String,Long> getMemoryBreakdown(){
+			return MemoryAccountable.getMemoryBreakdown(baseClassifier);
+		}
+	}
+	private static class IncrementalPreprocessClassifier<T,S> extends PreprocessClassifier<T,S,IncrementalClassifier<S>> implements IncrementalClassifier<T>{
+		public IncrementalPreprocessClassifier(Function<T,S> preprocessor,IncrementalClassifier<S> baseClassifier){
+			super(preprocessor,baseClassifier);
+		}
+		@Override
+		public void train(T data,Category category){
+			baseClassifier.train(preprocessor.apply(data),category);
+		}
 	}
 }
@@ -16,7 +16,11 @@
  */
 package cspclassifier;
 
+import cspclassifier.validator.*;
+
+import java.util.Map;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * Model based on another model
@@ -25,7 +29,7 @@ import java.util.function.Function;
  * @param <T> type of the objects to be classified
  * @param <S> type of the objects that the backed model can classify
  */
-public class PreprocessModel<M extends Trainable<S>,T,S> implements Trainable<T>{
+public class PreprocessModel<M extends Trainable<S>,T,S> implements Trainable<T>,MemoryAccountable{
 	private final M underlying;
 	private final Function<T,S> preprocessor;
 	/**
@@ -53,4 +57,17 @@ public class PreprocessModel<M extends Trainable<S>,T,S> implements Trainable<T>
 	public void train(T data,Category category){
 		underlying.train(preprocessor.apply(data),category);
 	}
+	/**
+	 * Train the model, if the stream is parallel, preprocessing is done in
+	 * parallel while the backed model is still trained sequentially
+	 * @param samples a stream of samples
+	 */
+	@Override
+	public void train(Stream<Sample<T>> samples){
+		underlying.train(samples.map((sample)->new Sample<>(preprocessor.apply(sample.getData()),sample.getCategory())));
+	}
+	@Override
+	public Map<String,Long> getMemoryBreakdown(){
+		return MemoryAccountable.getMemoryBreakdown(underlying);
+	}
 }
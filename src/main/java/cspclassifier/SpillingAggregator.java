@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier;
+
+import cspclassifier.util.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Aggregate token frequencies of each category out of core. Each thread counts
+ * into its own buffer, which is written to a temporary file as a run sorted by
+ * token and category when it is full, the runs are merged at the end. At most
+ * MAX_FAN_IN runs are opened at the same time, more runs are first merged into
+ * larger ones in intermediate passes.
+ * @author S.Welcker
+ * @param <T> the type of tokens
+ */
+class SpillingAggregator<T> implements Closeable{
+	/**
+	 * The maximum number of runs being merged at the same time
+	 */
+	static final int MAX_FAN_IN=64;
+	private final File directory;
+	private final Function<T,String> encoder;
+	private final int bufferSize;
+	private final ThreadLocal<Buffer> buffer;
+	private final List<Buffer> buffers=new ArrayList<>();
+	private final List<File> runs=new ArrayList<>();
+	private final Map<Category,LongAdder> documentCounts=new ConcurrentHashMap<>();
+	/**
+	 * Create a aggregator
+	 * @param directory where the runs are written to
+	 * @param encoder encode token to String without tab and new line
+	 * @param bufferSize the number of entries counted by a thread before they
+	 * are written to disk
+	 */
+	SpillingAggregator(File directory,Function<T,String> encoder,int bufferSize){
+		this.directory=directory;
+		this.encoder=encoder;
+		this.bufferSize=bufferSize;
+		this.buffer=ThreadLocal.withInitial(()->{
+			Buffer holder=new Buffer();
+			synchronized(buffers){
+				buffers.add(holder);
+			}
+			return holder;
+		});
+	}
+	/**
+	 * Count a sample, may be called from different threads
+	 * @param data the tokens of the sample
+	 * @param category the category of the sample
+	 * @throws UncheckedIOException if a run cannot be written
+	 */
+	void add(Frequencies<T> data,Category category){
+		Map<String,long[]> counts=buffer.get().counts;
+		String suffix='\t'+category.getName();
+		data.toMap().forEach((token,count)->{
+			long[] entry=counts.computeIfAbsent(encoder.apply(token)+suffix,(key)->new long[2]);
+			entry[0]+=count.getCount();
+			++entry[1];
+		});
+		documentCounts.computeIfAbsent(category,(key)->new LongAdder()).increment();
+		if(counts.size()>=bufferSize){
+			try{
+				spill(counts);
+			}catch(IOException ex){
+				throw new UncheckedIOException(ex);
+			}
+		}
+	}
+	private void spill(Map<String,long[]> counts) throws IOException{
+		try(RunWriter out=new RunWriter(createRun())){
+			for(String key:counts.keySet().stream().sorted().toArray(String[]::new)){
+				long[] entry=counts.get(key);
+				out.write(key,entry[0],entry[1]);
+			}
+		}
+		counts.clear();
+	}
+	private File createRun() throws IOException{
+		File run=File.createTempFile("run",".bin",directory);
+		synchronized(runs){
+			runs.add(run);
+		}
+		return run;
+	}
+	/**
+	 * Merge the runs, should be called after all samples are added. Entries of
+	 * the same token are passed consecutively.
+	 * @param minFrequency tokens whose total frequency in all categories is
+	 * lower are dropped
+	 * @param consumer receive the token, the category, the token frequency and
+	 * the document frequency of each entry
+	 * @throws IOException if the runs cannot be written or read
+	 */
+	void merge(long minFrequency,EntryConsumer consumer) throws IOException{
+		for(Buffer holder:buffers)
+			if(!holder.counts.isEmpty())
+				spill(holder.counts);
+		while(runs.size()>MAX_FAN_IN){
+			List<File> batch=new ArrayList<>(runs.subList(0,MAX_FAN_IN));
+			runs.subList(0,MAX_FAN_IN).clear();
+			try(RunWriter out=new RunWriter(createRun())){
+				merge(batch,out::write);
+			}finally{
+				for(File run:batch)
+					run.delete();
+			}
+		}
+		String[] token=new String[1];
+		Map<String,long[]> group=new HashMap<>();
+		long[] total=new long[1];
+		merge(runs,(key,tokenFrequency,documentFrequency)->{
+			int cut=key.indexOf('\t');
+			String currentToken=key.substring(0,cut);
+			if(!currentToken.equals(token[0])){
+				emit(token[0],group,total[0],minFrequency,consumer);
+				token[0]=currentToken;
+				total[0]=0;
+			}
+			group.put(key.substring(cut+1),new long[]{tokenFrequency,documentFrequency});
+			total[0]+=tokenFrequency;
+		});
+		emit(token[0],group,total[0],minFrequency,consumer);
+	}
+	/**
+	 * Merge some runs, the frequencies of equal keys are summed up
+	 * @param files the runs
+	 * @param consumer receive the keys in order
+	 * @throws IOException if the runs cannot be read or the consumer failed
+	 */
+	private static void merge(List<File> files,KeyConsumer consumer) throws IOException{
+		PriorityQueue<Run> queue=new PriorityQueue<>();
+		try{
+			for(File file:files){
+				Run run=new Run(file);
+				if(run.next())
+					queue.add(run);
+				else
+					run.close();
+			}
+			String key=null;
+			long tokenFrequency=0,documentFrequency=0;
+			while(!queue.isEmpty()){
+				Run run=queue.poll();
+				if(!run.key.equals(key)){
+					if(key!=null)
+						consumer.accept(key,tokenFrequency,documentFrequency);
+					key=run.key;
+					tokenFrequency=0;
+					documentFrequency=0;
+				}
+				tokenFrequency+=run.tokenFrequency;
+				documentFrequency+=run.documentFrequency;
+				if(run.next())
+					queue.add(run);
+				else
+					run.close();
+			}
+			if(key!=null)
+				consumer.accept(key,tokenFrequency,documentFrequency);
+		}finally{
+			for(Run run:queue)
+				run.close();
+		}
+	}
+	private static void emit(String token,Map<String,long[]> group,long total,long minFrequency,EntryConsumer consumer){
+		if(token!=null&&total>=minFrequency)
+			group.forEach((category,entry)->consumer.accept(token,category,entry[0],entry[1]));
+		group.clear();
+	}
+	/**
+	 * @return the number of samples added in each category
+	 */
+	Map<Category,LongAdder> getDocumentCounts(){
+		return documentCounts;
+	}
+	/**
+	 * Delete the runs and release the buffers. The buffers are dropped from
+	 * their holders, since the ThreadLocal of other threads, e.g. workers of
+	 * the common pool, cannot be removed from here.
+	 */
+	@Override
+	public void close(){
+		for(File run:runs)
+			run.delete();
+		runs.clear();
+		synchronized(buffers){
+			for(Buffer holder:buffers)
+				holder.counts=null;
+			buffers.clear();
+		}
+		buffer.remove();
+	}
+	/**
+	 * Holder of the buffer of a thread
+	 */
+	private static class Buffer{
+		private Map<String,long[]> counts=new HashMap<>();
+	}
+	/**
+	 * Receiver of merged entries
+	 */
+	interface EntryConsumer{
+		/**
+		 * Receive a entry
+		 * @param token the encoded token
+		 * @param category the name of the category
+		 * @param tokenFrequency the frequency of the token in the category
+		 * @param documentFrequency the number of samples in the category
+		 * containing the token
+		 */
+		void accept(String token,String category,long tokenFrequency,long documentFrequency);
+	}
+	private interface KeyConsumer{
+		void accept(String key,long tokenFrequency,long documentFrequency) throws IOException;
+	}
+	private static class RunWriter implements Closeable{
+		private final DataOutputStream out;
+		RunWriter(File file) throws IOException{
+			out=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),1<<16));
+		}
+		/**
+		 * Write a entry, the key is written as its length and UTF-8 bytes, so
+		 * that it is not limited to 64KB like writeUTF
+		 */
+		void write(String key,long tokenFrequency,long documentFrequency) throws IOException{
+			byte[] bytes=key.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+			out.writeLong(tokenFrequency);
+			out.writeLong(documentFrequency);
+		}
+		@Override
+		public void close() throws IOException{
+			out.close();
+		}
+	}
+	private static class Run implements Comparable<Run>,Closeable{
+		private final DataInputStream in;
+		private String key;
+		private long tokenFrequency,documentFrequency;
+		Run(File file) throws IOException{
+			in=new DataInputStream(new BufferedInputStream(new FileInputStream(file),1<<16));
+		}
+		boolean next() throws IOException{
+			int length;
+			try{
+				length=in.readInt();
+			}catch(EOFException ex){
+				return false;
+			}
+			byte[] bytes=new byte[length];
+			in.readFully(bytes);
+			key=new String(bytes,StandardCharsets.UTF_8);
+			tokenFrequency=in.readLong();
+			documentFrequency=in.readLong();
+			return true;
+		}
+		@Override
+		public int compareTo(Run o){
+			return key.compareTo(o.key);
+		}
+		@Override
+		public void close() throws IOException{
+			in.close();
+		}
+	}
+}
@@ -21,6 +21,9 @@ import cspclassifier.validator.*;
 
 import java.text.BreakIterator;
 import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 import java.util.function.Function;
 import java.util.stream.Stream;
@@ -56,7 +59,7 @@ public class Starter{
 	 * @return a ClassifierFactory
 	 */
 	public static ClassifierFactory<? extends Classifier<String>,? extends Trainable<String>,String> getDefaultClassifierFactory(Locale locale,boolean stemming,ClassifierFactory<Classifier<Frequencies<String>>,?,Frequencies<String>> base){
-		return new PreprocessClassifierFactory<>(getDefaultPreprocessor(locale,stemming),base);
+		return new TokenStreamClassifierFactory<>(getDefaultTokenizer(locale,stemming),base);
 	}
 	/**
 	 * Get a text preprocessor that is currently considered a good try
@@ -65,6 +68,16 @@ public class Starter{
 	 * @return the text preprocessor
 	 */
 	public static Function<String,Frequencies<String>> getDefaultPreprocessor(Locale locale,boolean stemming){
+		return getDefaultTokenizer(locale,stemming).andThen((s)->new Frequencies<>(s));
+	}
+	/**
+	 * Get a text preprocessor that is currently considered a good try, the
+	 * tokens are not counted so that they can be streamed into a classifier
+	 * @param locale locale of the text to be classified
+	 * @param stemming apply stemmer or not
+	 * @return the text preprocessor
+	 */
+	public static Function<String,Stream<String>> getDefaultTokenizer(Locale locale,boolean stemming){
 		Function<String,String> preTokenize=TextPreprocessors.getJavaNormalizier(Normalizer.Form.NFKC);
 		Function<String,Stream<String>> tokenizer;
 		Function<Stream<String>,Stream<String>> postTokenize=TextPreprocessors.getWhitespaceFilter().andThen(TextPreprocessors.getFoldcaser());
@@ -79,7 +92,7 @@ public class Starter{
 		}else{
 			tokenizer=TextPreprocessors.getJavaTokenizer(BreakIterator.getWordInstance(locale));
 		}
-		return TextPreprocessors.of(preTokenize,tokenizer,postTokenize);
+		return TextPreprocessors.tokens(preTokenize,tokenizer,postTokenize);
 	}
 	/**
 	 * Get a ClassifierFactory based on a dataset
@@ -90,19 +103,21 @@ public class Starter{
 	public static ClassifierFactory<? extends Classifier<String>,? extends Trainable<String>,String> getDefaultClassifierFactory(Locale locale,DataSet<String> set){
 		SplitDataSet<String> randomSplit=DataDivider.randomSplit(set,0.7);
 		Validator<String> validator=new Validator<>();
-		validator.validate(new SplitDataSet[]{randomSplit},getStandardClassifierFactories(locale));
+		validator.validate(Collections.singletonList(randomSplit),getStandardClassifierFactories(locale));
 		return validator.selectMostAccurate();
 	}
-	private static ClassifierFactory[] getStandardClassifierFactories(Locale locale){
-		ClassifierFactory factory1=Starter.getDefaultClassifierFactory(locale,false,new TfIdfClassifierFactory());
-		ClassifierFactory factory2=Starter.getDefaultClassifierFactory(locale,false,new BayesianClassifierFactory());
-		//ClassifierFactory factory3=Starter.getDefaultClassifierFactory(locale,false,new KNearestClassifierFactory().setK(3));
-		ClassifierFactory factory3=Starter.getDefaultClassifierFactory(locale,false,new C45ClassifierFactory());
-		ClassifierFactory factory4=Starter.getDefaultClassifierFactory(locale,false,new SvmClassifierFactory());
+	private static List<ClassifierFactory<? extends Classifier<String>,? extends Trainable<String>,String>> getStandardClassifierFactories(Locale locale){
+		//the tokenizer is shared so that Validator preprocess samples once for all factories
+		Function<String,Stream<String>> tokenizer=getDefaultTokenizer(locale,false);
+		ClassifierFactory<? extends Classifier<String>,? extends Trainable<String>,String> factory1=new TokenStreamClassifierFactory<>(tokenizer,new TfIdfClassifierFactory<>());
+		ClassifierFactory<? extends Classifier<String>,? extends Trainable<String>,String> factory2=new TokenStreamClassifierFactory<>(tokenizer,new BayesianClassifierFactory<>());
+		//ClassifierFactory<? extends Classifier<String>,? extends Trainable<String>,String> factory3=new TokenStreamClassifierFactory<>(tokenizer,new KNearestClassifierFactory<String>().setK(3));
+		ClassifierFactory<? extends Classifier<String>,? extends Trainable<String>,String> factory3=new TokenStreamClassifierFactory<>(tokenizer,new C45ClassifierFactory<>());
+		ClassifierFactory<? extends Classifier<String>,? extends Trainable<String>,String> factory4=new TokenStreamClassifierFactory<>(tokenizer,new SvmClassifierFactory<>());
 		//ClassifierFactory factory5=Starter.getDefaultClassifierFactory(locale,true,new TfIdfClassifierFactory());
 		//ClassifierFactory factory6=Starter.getDefaultClassifierFactory(locale,true,new BayesianClassifierFactory());
 		//ClassifierFactory factory7=Starter.getDefaultClassifierFactory(locale,true,new KNearestClassifierFactory().setK(3));
 		//ClassifierFactory factory8=Starter.getDefaultClassifierFactory(locale,true,new SvmClassifierFactory());
-		return new ClassifierFactory[]{factory1,factory2,factory3,factory4};
+		return Arrays.asList(factory1,factory2,factory3,factory4);
 	}
 }
@@ -20,6 +20,7 @@ import cspclassifier.util.*;
 import de.bwaldvogel.liblinear.*;
 
 import java.util.*;
+import java.util.stream.Stream;
 
 /**
  *
@@ -119,53 +120,105 @@ public class SvmClassifierFactory<T> extends BagClassifierFactory<Classifier<Fre
 		Arrays.sort(features,(f,g)->Integer.compare(f.getIndex(),g.getIndex()));
 		return features;	
 	}
-	private static class SvmClassifier<T> implements Classifier<Frequencies<T>>{
-		private final Model model;
-		private final Frequencies<T> documentFrequencies;
+	/**
+	 * The decision values of liblinear are computed directly from the weight
+	 * matrix, the score of each category is its decision value
+	 */
+	private static class SvmClassifier<T> implements TokenStreamClassifier<T>,MemoryAccountable{
+		private final Map<T,Integer> tokenIndex;
+		private final long[] documentFrequencies;
 		private final long documentCount;
 		private final TfIdfFormula tfIdfFormula;
-		private final Map<T,Integer> tokenIndex;
+		private final double[] weights;
+		private final int weightCount;
+		private final int featureCount;
 		private final Category[] categories;
 		public SvmClassifier(Model model,Map<T,Integer> tokenIndex,
 				Frequencies<T> documentFrequencies,long documentCount,
 				TfIdfFormula tfIdfFormula,Category[] categories){
-			this.model=model;
 			this.tokenIndex=tokenIndex;
-			this.categories=categories;
 			this.documentCount=documentCount;
-			this.documentFrequencies=documentFrequencies;
 			this.tfIdfFormula=tfIdfFormula;
+			this.documentFrequencies=new long[tokenIndex.size()];
+			tokenIndex.forEach((token,index)->this.documentFrequencies[index-1]=documentFrequencies.getFrequency(token));
+			this.weights=model.getFeatureWeights();
+			this.weightCount=model.getNrClass()==2&&model.getSolverType()!=SolverType.MCSVM_CS?1:model.getNrClass();
+			this.featureCount=model.getBias()>=0?model.getNrFeature()+1:model.getNrFeature();
+			int[] labels=model.getLabels();
+			this.categories=new Category[labels.length];
+			for(int i=0;i<labels.length;i++){
+				this.categories[i]=categories[labels[i]];
+			}
 		}
 		@Override
 		public List<ClassificationResult> getCandidates(Frequencies<T> unknown,int max){
-			Feature[] features=toFeatureArray(unknown,tokenIndex,documentFrequencies,documentCount,tfIdfFormula);
-	        double[] dec_values = new double[model.getNrClass()];
-	        List<ClassificationResult> lcr = new LinkedList<ClassificationResult>();
-	        
-			int categoryIndex=(int)(Linear.predictValues(model,features, dec_values)+0.5);
-			if(categoryIndex>=0&&categoryIndex<categories.length) {
-				lcr.add(new ClassificationResult(1.0,categories[categoryIndex]));
-                for (int i = 0; i < dec_values.length; i++) {
-    				if(!((i+1)==categoryIndex)) lcr.add(new ClassificationResult(dec_values[i],categories[i+1]));
-                }
-
-				return lcr;
+			TokenBuffer buffer=TokenBuffer.get(tokenIndex.size());
+			try{
+				for(Map.Entry<T,Counter> e:unknown.toMap().entrySet()){
+					collect(e.getKey(),e.getValue().getCount(),buffer);
+				}
+				return score(buffer);
+			}finally{
+				buffer.clear();
+			}
+		}
+		@Override
+		public List<ClassificationResult> getCandidates(Stream<T> tokens,int max){
+			TokenBuffer buffer=TokenBuffer.get(tokenIndex.size());
+			try{
+				tokens.forEach((token)->collect(token,1,buffer));
+				return score(buffer);
+			}finally{
+				buffer.clear();
 			}
-			else
-				return Collections.emptyList();
 		}
-		private static <T> Feature[] toFeatureArray(Frequencies<T> object,Map<T,Integer> tokenIndex,
-				Frequencies<T> documentFrequencies,long documentCount,TfIdfFormula formula){
-			Feature[] features=object.toMap().entrySet().stream().filter((e)->tokenIndex.containsKey(e.getKey())).
-					map((e)->new FeatureNode(tokenIndex.get(e.getKey()),formula.calculate(e.getValue().getCount(),documentFrequencies.getFrequency(e.getKey()),documentCount))).toArray(Feature[]::new);
+		@Override
+		public boolean isKnown(T token){
+			return tokenIndex.containsKey(token);
+		}
+		@Override
+		public Map<String,Long> getMemoryBreakdown(){
+			Map<String,Long> breakdown=new LinkedHashMap<>();
+			breakdown.put(VOCABULARY,MemoryEstimator.ofElements(tokenIndex.keySet()));
+			breakdown.put(COUNTS,MemoryEstimator.ofArray(documentFrequencies.length,8));
+			breakdown.put(INDEX,MemoryEstimator.ofMap(tokenIndex)+16L*tokenIndex.size()+MemoryEstimator.ofArray(weights.length,8)
+					+MemoryEstimator.ofArray(categories.length,MemoryEstimator.REFERENCE));
+			return breakdown;
+		}
+		private void collect(T token,long times,TokenBuffer buffer){
+			Integer index=tokenIndex.get(token);
+			if(index!=null)
+				buffer.add(index-1,times);
+		}
+		private List<ClassificationResult> score(TokenBuffer buffer){
+			double[] values=new double[buffer.size()];
 			double factor=0;
-			for(Feature feature:features)
-				factor+=feature.getValue()*feature.getValue();
+			for(int i=0;i<buffer.size();i++){
+				values[i]=tfIdfFormula.calculate(buffer.getCount(i),documentFrequencies[buffer.getId(i)],documentCount);
+				factor+=values[i]*values[i];
+			}
 			factor=Math.sqrt(factor);
-			for(Feature feature:features)
-				feature.setValue(feature.getValue()/factor);
-			Arrays.sort(features,(f,g)->Integer.compare(f.getIndex(),g.getIndex()));
-			return features;	
+			double[] decisions=new double[weightCount];
+			for(int i=0;i<buffer.size();i++){
+				int id=buffer.getId(i);
+				if(id<featureCount&&factor>0){
+					double value=values[i]/factor;
+					int offset=id*weightCount;
+					for(int j=0;j<weightCount;j++){
+						decisions[j]+=weights[offset+j]*value;
+					}
+				}
+			}
+			List<ClassificationResult> results=new ArrayList<>(categories.length);
+			if(weightCount==1&&categories.length==2){
+				results.add(new ClassificationResult(decisions[0],categories[0]));
+				results.add(new ClassificationResult(-decisions[0],categories[1]));
+			}else{
+				for(int i=0;i<weightCount;i++){
+					results.add(new ClassificationResult(decisions[i],categories[i]));
+				}
+			}
+			return results;
 		}
 	}
 	@Override
@@ -44,7 +44,18 @@ public class TextPreprocessors{
 	 * @return the combined preprocessor
 	 */
 	public static Function<String,Frequencies<String>> of(Function<String,String> preTokenize,Function<String,Stream<String>> tokenizer,Function<Stream<String>,Stream<String>> postTokenize){
-		return preTokenize.andThen(tokenizer).andThen(postTokenize).andThen((s)->new Frequencies<>(s));
+		return tokens(preTokenize,tokenizer,postTokenize).andThen((s)->new Frequencies<>(s));
+	}
+	/**
+	 * Combining a tokenizer and some filters without counting the tokens
+	 *
+	 * @param preTokenize the filter being applied before tokenization
+	 * @param tokenizer being used to break text into tokens
+	 * @param postTokenize the filter being applied after tokenization
+	 * @return the combined preprocessor
+	 */
+	public static Function<String,Stream<String>> tokens(Function<String,String> preTokenize,Function<String,Stream<String>> tokenizer,Function<Stream<String>,Stream<String>> postTokenize){
+		return preTokenize.andThen(tokenizer).andThen(postTokenize);
 	}
 	/**
 	 * Combining a tokenizer and some filters
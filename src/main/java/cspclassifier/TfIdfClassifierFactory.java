@@ -18,10 +18,14 @@ package cspclassifier;
 
 import cspclassifier.util.*;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
 
 /**
  * 
@@ -31,6 +35,9 @@ import java.util.stream.Collectors;
  */
 public class TfIdfClassifierFactory<T> extends BagClassifierFactory<Classifier<Frequencies<T>>,FrequenciesModel<T>,T>{
 	private TfIdfFormula tfIdfFormula;
+	private long memoryLimit=0;
+	private double halfLife=0;
+	private boolean incremental=false;
 	/**
 	 * Create a factory with standard TF-IDF formula
 	 */
@@ -52,68 +59,255 @@ public class TfIdfClassifierFactory<T> extends BagClassifierFactory<Classifier<F
 	public TfIdfFormula getTfIdfFormula(){
 		return tfIdfFormula;
 	}
+	/**
+	 * Set the memory limit of the models created, so that rare tokens are
+	 * counted approximately
+	 * @param memoryLimit the memory to be used by a model(byte), 0 means no limit
+	 * @return this
+	 * @throws IllegalStateException if a half-life is set
+	 */
+	public TfIdfClassifierFactory<T> setMemoryLimit(long memoryLimit){
+		if(memoryLimit>0&&halfLife>0)
+			throw new IllegalStateException("Memory limit cannot be combined with half-life");
+		this.memoryLimit=memoryLimit;
+		return this;
+	}
+	/**
+	 * @return the memory to be used by a model(byte), 0 means no limit
+	 */
+	public long getMemoryLimit(){
+		return memoryLimit;
+	}
+	/**
+	 * Set the half-life of the models created, so that old samples are aged out
+	 * @param halfLife the number of samples after which the weight of a sample
+	 * halves, 0 means no decay
+	 * @return this
+	 * @throws IllegalStateException if a memory limit is set
+	 */
+	public TfIdfClassifierFactory<T> setHalfLife(double halfLife){
+		if(halfLife>0&&memoryLimit>0)
+			throw new IllegalStateException("Half-life cannot be combined with memory limit");
+		this.halfLife=halfLife;
+		return this;
+	}
+	/**
+	 * @return the number of samples after which the weight of a sample halves,
+	 * 0 means no decay
+	 */
+	public double getHalfLife(){
+		return halfLife;
+	}
+	/**
+	 * Set if the classifiers built are IncrementalClassifier, which keep the
+	 * counts of tokens so that new samples update only the affected entries.
+	 * If a feature selector is set, they learn only the tokens selected when
+	 * they were built.
+	 * @param incremental true to build IncrementalClassifier
+	 * @return this
+	 */
+	public TfIdfClassifierFactory<T> setIncremental(boolean incremental){
+		this.incremental=incremental;
+		return this;
+	}
+	/**
+	 * @return true if the classifiers built are IncrementalClassifier
+	 */
+	public boolean isIncremental(){
+		return incremental;
+	}
 	@Override
 	public Classifier<Frequencies<T>> createClassifier(FrequenciesModel<T> model){
+		if(incremental)
+			return new IncrementalTfIdfClassifier<>(model.getTokenFrequencies(),
+					model.getTotalDocumentFrequencies(),model.getSampleCount(),tfIdfFormula,getFeatureSelector()!=null);
 		return new TfIdfClassifier<>(model.getTokenFrequencies(),
-				model.getTotalDocumentFrequencies(),model.getSampleCount(),tfIdfFormula);
+				model.getTotalDocumentFrequencies(),model.getSampleCount(),tfIdfFormula,false);
 	}
 	@Override
 	public FrequenciesModel<T> createModel(){
-		return new FrequenciesModel<>();
+		return (memoryLimit>0?new FrequenciesModel<T>(memoryLimit):new FrequenciesModel<T>()).setHalfLife(halfLife);
 	}
 	
-	private static class TfIdfClassifier<T> implements Classifier<Frequencies<T>>{
-		private final Map<Category,Frequencies<T>> profiles;
-		private final DoubleCounters<Category> norms;
-		private final Frequencies<T> documentFrequencies;
-		private final long documentCount;
-		private final TfIdfFormula tfIdfFormula;
+	/**
+	 * The TF-IDF vectors of the categories are precomputed as an inverted
+	 * index, tokens that never appeared in training are ignored.
+	 */
+	private static class TfIdfClassifier<T> implements TokenStreamClassifier<T>,MemoryAccountable{
+		Category[] categories;
+		double[] norms;
+		long[] documentFrequencies;
+		final TokenPostings<T> postings;
+		long documentCount;
+		final TfIdfFormula tfIdfFormula;
+		final ReadWriteLock lock;
+		/**
+		 * @param incremental if the token frequencies are kept and access is
+		 * guarded by a lock, for subclasses that update the classifier
+		 */
 		public TfIdfClassifier(Map<Category,Frequencies<T>> profiles,
 				Frequencies<T> documentFrequencies,long documentCount,
-				TfIdfFormula tfIdfFormula){
-			this.profiles=profiles;
-			this.documentFrequencies=documentFrequencies;
+				TfIdfFormula tfIdfFormula,boolean incremental){
+			this.categories=profiles.keySet().toArray(new Category[0]);
+			this.norms=new double[categories.length];
+			this.documentFrequencies=new long[documentFrequencies.getTokenCount()];
 			this.documentCount=documentCount;
 			this.tfIdfFormula=tfIdfFormula;
-			norms=new DoubleCounters<>(true);
-			profiles.forEach((c,f)->f.toMap().forEach((t,v)->{
-				double tfidf=tfIdfFormula.calculate(v.getCount(),documentFrequencies.getFrequency(t),documentCount);
-				norms.advanceCounter(c,tfidf*tfidf);
-			}));
+			this.postings=new TokenPostings<>(incremental);
+			this.lock=incremental?new ReentrantReadWriteLock():null;
+			documentFrequencies.toMap().forEach((token,count)->this.documentFrequencies[postings.getOrCreateId(token)]=count.getCount());
+			for(int i=0;i<categories.length;i++){
+				int category=i;
+				profiles.get(categories[i]).toMap().forEach((token,count)->{
+					int id=postings.getId(token);
+					if(id!=-1){
+						double tfidf=tfIdfFormula.calculate(count.getCount(),this.documentFrequencies[id],documentCount);
+						if(incremental)
+							postings.set(id,category,tfidf,count.getCount());
+						else
+							postings.set(id,category,tfidf);
+						norms[category]+=tfidf*tfidf;
+					}
+				});
+			}
 		}
 		@Override
 		public List<ClassificationResult> getCandidates(Frequencies<T> document,int max){
-			return profiles.entrySet().stream().map((e)->new ClassificationResult(cosSquare(document,e.getValue(),norms.getFrequency(e.getKey())),e.getKey())).
-					collect(Collectors.toList());
+			if(lock!=null)
+				lock.readLock().lock();
+			TokenBuffer buffer=TokenBuffer.get(postings.getTokenCount());
+			try{
+				for(Map.Entry<T,Counter> e:document.toMap().entrySet()){
+					collect(e.getKey(),e.getValue().getCount(),buffer);
+				}
+				return score(buffer);
+			}finally{
+				buffer.clear();
+				if(lock!=null)
+					lock.readLock().unlock();
+			}
 		}
-		private double cosSquare(Frequencies<T> document,Frequencies<T> category,double categoryNorm){
-			double documentNorm=norm(document);
-			Frequencies<T> shorter,longer;
-			if(document.getTokenCount()>category.getTokenCount()){
-				shorter=category;
-				longer=document;
-			}else{
-				shorter=document;
-				longer=category;
+		@Override
+		public List<ClassificationResult> getCandidates(Stream<T> tokens,int max){
+			if(lock!=null)
+				lock.readLock().lock();
+			TokenBuffer buffer=TokenBuffer.get(postings.getTokenCount());
+			try{
+				tokens.forEach((token)->collect(token,1,buffer));
+				return score(buffer);
+			}finally{
+				buffer.clear();
+				if(lock!=null)
+					lock.readLock().unlock();
 			}
-			double product=0;
-			Iterator<Map.Entry<T,Counter>> iterator=shorter.toMap().entrySet().iterator();
-			while(iterator.hasNext()){
-				Map.Entry<T,Counter> next=iterator.next();
-				T token=next.getKey();
-				double shortTfIdf=tfIdfFormula.calculate(next.getValue().getCount(),documentFrequencies.getFrequency(token),documentCount);
-				double longTfIdf=tfIdfFormula.calculate(longer.getFrequency(token),documentFrequencies.getFrequency(token),documentCount);
-				product+=shortTfIdf*longTfIdf;
+		}
+		@Override
+		public boolean isKnown(T token){
+			if(lock==null)
+				return postings.getId(token)!=-1;
+			lock.readLock().lock();
+			try{
+				return postings.getId(token)!=-1;
+			}finally{
+				lock.readLock().unlock();
 			}
-			return product*product/(documentNorm*categoryNorm);
 		}
-		private double norm(Frequencies<T> document){
+		@Override
+		public Map<String,Long> getMemoryBreakdown(){
+			Map<String,Long> breakdown=new LinkedHashMap<>();
+			breakdown.put(VOCABULARY,postings.getVocabularyBytes());
+			breakdown.put(COUNTS,MemoryEstimator.ofArray(documentFrequencies.length,8));
+			breakdown.put(INDEX,postings.getIndexBytes()+MemoryEstimator.ofArray(norms.length,8)+MemoryEstimator.ofArray(categories.length,MemoryEstimator.REFERENCE));
+			return breakdown;
+		}
+		private void collect(T token,long times,TokenBuffer buffer){
+			int id=postings.getId(token);
+			if(id!=-1)
+				buffer.add(id,times);
+		}
+		private List<ClassificationResult> score(TokenBuffer buffer){
+			double[] product=new double[categories.length];
 			double documentNorm=0;
-			for(Map.Entry<T,Counter> entry:document.toMap().entrySet()){
-				double tfidf=tfIdfFormula.calculate(entry.getValue().getCount(),documentFrequencies.getFrequency(entry.getKey()),documentCount);
+			for(int i=0;i<buffer.size();i++){
+				int id=buffer.getId(i);
+				double tfidf=tfIdfFormula.calculate(buffer.getCount(i),documentFrequencies[id],documentCount);
 				documentNorm+=tfidf*tfidf;
+				int[] cats=postings.getCategories(id);
+				double[] values=postings.getValues(id);
+				for(int j=postings.getSize(id)-1;j>=0;j--){
+					product[cats[j]]+=tfidf*values[j];
+				}
+			}
+			List<ClassificationResult> results=new ArrayList<>(categories.length);
+			for(int i=0;i<categories.length;i++){
+				results.add(new ClassificationResult(product[i]*product[i]/(documentNorm*norms[i]),categories[i]));
+			}
+			return results;
+		}
+	}
+	/**
+	 * TF-IDF classifier keeping the token frequencies, so that a new sample
+	 * only updates the entries of its tokens and the norms of the categories
+	 * containing them, entries of other tokens keep the IDF computed with the
+	 * older number of samples until the classifier is rebuilt. If the
+	 * vocabulary is fixed, e.g. by a feature selector, tokens outside it are
+	 * ignored until the next rebuild.
+	 */
+	private static class IncrementalTfIdfClassifier<T> extends TfIdfClassifier<T> implements IncrementalClassifier<Frequencies<T>>{
+		private final boolean fixedVocabulary;
+		public IncrementalTfIdfClassifier(Map<Category,Frequencies<T>> profiles,
+				Frequencies<T> documentFrequencies,long documentCount,
+				TfIdfFormula tfIdfFormula,boolean fixedVocabulary){
+			super(profiles,documentFrequencies,documentCount,tfIdfFormula,true);
+			this.fixedVocabulary=fixedVocabulary;
+		}
+		/**
+		 * Update the TF-IDF entries of the tokens in a sample in all categories
+		 * and the norms of those categories
+		 * @param data the sample data
+		 * @param category the category of the data
+		 */
+		@Override
+		public void train(Frequencies<T> data,Category category){
+			lock.writeLock().lock();
+			try{
+				int c=getOrCreateCategory(category);
+				++documentCount;
+				data.toMap().forEach((token,count)->{
+					int id=fixedVocabulary?postings.getId(token):postings.getOrCreateId(token);
+					if(id==-1)
+						return;
+					if(id==documentFrequencies.length)
+						documentFrequencies=Arrays.copyOf(documentFrequencies,Math.max(id*2,16));
+					++documentFrequencies[id];
+					int i=postings.indexOf(id,c);
+					if(i==-1)
+						postings.set(id,c,0,count.getCount());
+					else
+						postings.getCounts(id)[i]+=count.getCount();
+					int[] cats=postings.getCategories(id);
+					double[] values=postings.getValues(id);
+					long[] counts=postings.getCounts(id);
+					for(int j=postings.getSize(id)-1;j>=0;j--){
+						double tfidf=tfIdfFormula.calculate(counts[j],documentFrequencies[id],documentCount);
+						norms[cats[j]]+=tfidf*tfidf-values[j]*values[j];
+						values[j]=tfidf;
+					}
+				});
+			}finally{
+				lock.writeLock().unlock();
+			}
+		}
+		private int getOrCreateCategory(Category category){
+			for(int i=0;i<categories.length;i++){
+				if(categories[i].equals(category))
+					return i;
 			}
-			return documentNorm;
+			int c=categories.length;
+			categories=Arrays.copyOf(categories,c+1);
+			categories[c]=category;
+			norms=Arrays.copyOf(norms,c+1);
+			return c;
 		}
 	}
 	@Override
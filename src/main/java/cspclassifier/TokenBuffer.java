@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Per thread buffer that counts the tokens of a document by token id, so
+ * that compiled classifiers can score a document without building a map.
+ * The buffer must be cleared after use.
+ * @author S.Welcker
+ */
+final class TokenBuffer{
+	private static final ThreadLocal<TokenBuffer> BUFFERS=ThreadLocal.withInitial(()->new TokenBuffer());
+	private long[] counts=new long[256];
+	private int[] ids=new int[64];
+	private int size=0;
+	private final Set<Object> unknown=new HashSet<>();
+	private TokenBuffer(){
+	}
+	/**
+	 * Get the buffer of current thread
+	 * @param vocabularySize the number of token ids that may be added
+	 * @return the buffer
+	 */
+	static TokenBuffer get(int vocabularySize){
+		TokenBuffer buffer=BUFFERS.get();
+		if(buffer.counts.length<vocabularySize)
+			buffer.counts=Arrays.copyOf(buffer.counts,Math.max(vocabularySize,buffer.counts.length*2));
+		return buffer;
+	}
+	/**
+	 * Count a known token
+	 * @param id the id of the token
+	 * @param times to be added
+	 */
+	void add(int id,long times){
+		if(counts[id]==0){
+			if(size==ids.length)
+				ids=Arrays.copyOf(ids,size*2);
+			ids[size++]=id;
+		}
+		counts[id]+=times;
+	}
+	/**
+	 * Record a token that is not in the vocabulary
+	 * @param token the token
+	 */
+	void addUnknown(Object token){
+		unknown.add(token);
+	}
+	/**
+	 * @return the number of distinct known tokens
+	 */
+	int size(){
+		return size;
+	}
+	/**
+	 * @param i index of a distinct known token
+	 * @return the id of the token
+	 */
+	int getId(int i){
+		return ids[i];
+	}
+	/**
+	 * @param i index of a distinct known token
+	 * @return the number of occurrences of the token
+	 */
+	long getCount(int i){
+		return counts[ids[i]];
+	}
+	/**
+	 * @return the number of distinct unknown tokens
+	 */
+	int getUnknownCount(){
+		return unknown.size();
+	}
+	/**
+	 * Reset the buffer
+	 */
+	void clear(){
+		for(int i=0;i<size;i++)
+			counts[ids[i]]=0;
+		size=0;
+		if(!unknown.isEmpty())
+			unknown.clear();
+	}
+}
@@ -26,7 +26,7 @@ import java.util.Set;
  * @author Chan Chung Kwong, modified by S.Welcker 2019
  * @param <T> type of the object to be classified
  */
-public interface TokenFrequenciesModel<T> extends Trainable<Frequencies<T>>{
+public interface TokenFrequenciesModel<T> extends Trainable<Frequencies<T>>,MemoryAccountable{
 	/**
 	 * @return the number of samples trained
 	 */
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier;
+
+import cspclassifier.util.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiled inverted index which maps each token to an id and each id to
+ * a value for every category containing the token, optionally together with
+ * a count so that the values can be updated later
+ * @author S.Welcker
+ * @param <T> the type of tokens
+ */
+final class TokenPostings<T>{
+	private final Map<T,Integer> index=new HashMap<>();
+	private int[][] categories=new int[16][];
+	private double[][] values=new double[16][];
+	private int[] sizes=new int[16];
+	private long[][] counts;
+	/**
+	 * Create a index without counts
+	 */
+	TokenPostings(){
+		this(false);
+	}
+	/**
+	 * Create a index
+	 * @param counting if counts are kept along with the values
+	 */
+	TokenPostings(boolean counting){
+		if(counting)
+			counts=new long[16][];
+	}
+	/**
+	 * Get the id of a token
+	 * @param token the token
+	 * @return the id or -1 if the token is unknown
+	 */
+	int getId(T token){
+		Integer id=index.get(token);
+		return id==null?-1:id;
+	}
+	/**
+	 * Get the id of a token, assign a new id if it is unknown
+	 * @param token the token
+	 * @return the id
+	 */
+	int getOrCreateId(T token){
+		Integer id=index.get(token);
+		if(id==null){
+			id=index.size();
+			index.put(token,id);
+			if(id==sizes.length){
+				categories=Arrays.copyOf(categories,id*2);
+				values=Arrays.copyOf(values,id*2);
+				sizes=Arrays.copyOf(sizes,id*2);
+				if(counts!=null)
+					counts=Arrays.copyOf(counts,id*2);
+			}
+			categories[id]=new int[2];
+			values[id]=new double[2];
+			if(counts!=null)
+				counts[id]=new long[2];
+		}
+		return id;
+	}
+	/**
+	 * Set the value of a token in a category
+	 * @param id the id of the token
+	 * @param category the index of the category
+	 * @param value the value
+	 */
+	void set(int id,int category,double value){
+		put(id,category,value);
+	}
+	/**
+	 * Set the value and the count of a token in a category, the index should
+	 * be counting
+	 * @param id the id of the token
+	 * @param category the index of the category
+	 * @param value the value
+	 * @param count the count
+	 */
+	void set(int id,int category,double value,long count){
+		int i=put(id,category,value);
+		counts[id][i]=count;
+	}
+	private int put(int id,int category,double value){
+		int i=indexOf(id,category);
+		if(i!=-1){
+			values[id][i]=value;
+			return i;
+		}
+		int[] cats=categories[id];
+		int size=sizes[id];
+		if(size==cats.length){
+			categories[id]=cats=Arrays.copyOf(cats,size*2);
+			values[id]=Arrays.copyOf(values[id],size*2);
+			if(counts!=null)
+				counts[id]=Arrays.copyOf(counts[id],size*2);
+		}
+		cats[size]=category;
+		values[id][size]=value;
+		sizes[id]=size+1;
+		return size;
+	}
+	/**
+	 * @param id the id of a token
+	 * @param category the index of a category
+	 * @return the position of the category in the postings of the token, -1
+	 * if the category does not contain the token
+	 */
+	int indexOf(int id,int category){
+		int[] cats=categories[id];
+		for(int i=sizes[id]-1;i>=0;i--){
+			if(cats[i]==category)
+				return i;
+		}
+		return -1;
+	}
+	/**
+	 * @return the number of tokens
+	 */
+	int getTokenCount(){
+		return index.size();
+	}
+	/**
+	 * @param id the id of a token
+	 * @return the number of categories containing the token
+	 */
+	int getSize(int id){
+		return sizes[id];
+	}
+	/**
+	 * @param id the id of a token
+	 * @return the indices of categories containing the token, only the first
+	 * getSize(id) elements are valid
+	 */
+	int[] getCategories(int id){
+		return categories[id];
+	}
+	/**
+	 * @param id the id of a token
+	 * @return the values of the token in the categories, only the first
+	 * getSize(id) elements are valid
+	 */
+	double[] getValues(int id){
+		return values[id];
+	}
+	/**
+	 * @param id the id of a token
+	 * @return the counts of the token in the categories, only the first
+	 * getSize(id) elements are valid, null if the index is not counting
+	 */
+	long[] getCounts(int id){
+		return counts==null?null:counts[id];
+	}
+	/**
+	 * @return estimated memory used by the tokens
+	 */
+	long getVocabularyBytes(){
+		return MemoryEstimator.ofElements(index.keySet());
+	}
+	/**
+	 * @return estimated memory used by the index excluding the tokens
+	 */
+	long getIndexBytes(){
+		int tokenCount=index.size();
+		long bytes=MemoryEstimator.ofMap(index)+16L*tokenCount
+				+2*MemoryEstimator.ofArray(categories.length,MemoryEstimator.REFERENCE)+MemoryEstimator.ofArray(sizes.length,4);
+		for(int i=0;i<tokenCount;i++){
+			bytes+=MemoryEstimator.ofArray(categories[i].length,4)+MemoryEstimator.ofArray(values[i].length,8);
+			if(counts!=null)
+				bytes+=MemoryEstimator.ofArray(counts[i].length,8);
+		}
+		if(counts!=null)
+			bytes+=MemoryEstimator.ofArray(counts.length,MemoryEstimator.REFERENCE);
+		return bytes;
+	}
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier;
+
+import cspclassifier.util.*;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Classifier of token frequencies which can also consume the tokens directly
+ * as they come out of a preprocessing pipeline, without building a
+ * frequencies table first
+ * @author S.Welcker
+ * @param <T> the type of tokens
+ */
+public interface TokenStreamClassifier<T> extends Classifier<Frequencies<T>>{
+	/**
+	 * Classify a stream of tokens
+	 * @param tokens the tokens of the object to be classified
+	 * @param max the number of top scored results required
+	 * @return the results of classification
+	 */
+	List<ClassificationResult> getCandidates(Stream<T> tokens,int max);
+	/**
+	 * Check if a token is in the vocabulary of the classifier
+	 * @param token the token
+	 * @return true if the token affects the scores
+	 */
+	boolean isKnown(T token);
+}
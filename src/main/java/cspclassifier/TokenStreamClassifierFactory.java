@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier;
+
+import cspclassifier.util.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * A factory that build classifier which first break data into tokens and
+ * then apply a classifier of token frequencies. If the classifier is a
+ * TokenStreamClassifier, the tokens are streamed into it directly, otherwise
+ * they are counted first.
+ * @author S.Welcker
+ * @param <M> the type of the model
+ * @param <T> the type of the objects to be classified
+ * @param <S> the type of the tokens
+ */
+public class TokenStreamClassifierFactory<M extends Trainable<Frequencies<S>>,T,S> extends PreprocessClassifierFactory<M,T,Frequencies<S>>{
+	private final Function<T,Stream<S>> tokenizer;
+	/**
+	 * Create a factory
+	 * @param tokenizer being used to break data into tokens
+	 * @param baseFactory the based factory
+	 */
+	public TokenStreamClassifierFactory(Function<T,Stream<S>> tokenizer,ClassifierFactory<? extends Classifier<Frequencies<S>>,M,Frequencies<S>> baseFactory){
+		super(tokenizer.andThen((tokens)->new Frequencies<>(tokens)),baseFactory);
+		this.tokenizer=tokenizer;
+	}
+	/**
+	 * @return the tokenizer
+	 */
+	public Function<T,Stream<S>> getTokenizer(){
+		return tokenizer;
+	}
+	@Override
+	public Classifier<T> getClassifier(PreprocessModel<M,T,Frequencies<S>> model){
+		Classifier<Frequencies<S>> base=getBaseFactory().getClassifier(model.getUnderlying());
+		if(base instanceof TokenStreamClassifier&&base instanceof IncrementalClassifier)
+			return new IncrementalStreamingClassifier<>(tokenizer,(TokenStreamClassifier<S>)base,getPreprocessor(),(IncrementalClassifier<Frequencies<S>>)base);
+		else if(base instanceof TokenStreamClassifier)
+			return new StreamingClassifier<>(tokenizer,(TokenStreamClassifier<S>)base);
+		else
+			return (object,max)->base.getCandidates(getPreprocessor().apply(object),max);
+	}
+	private static class StreamingClassifier<T,S> implements Classifier<T>,MemoryAccountable{
+		private final Function<T,Stream<S>> tokenizer;
+		private final TokenStreamClassifier<S> baseClassifier;
+		public StreamingClassifier(Function<T,Stream<S>> tokenizer,TokenStreamClassifier<S> baseClassifier){
+			this.tokenizer=tokenizer;
+			this.baseClassifier=baseClassifier;
+		}
+		@Override
+		public List<ClassificationResult> getCandidates(T object,int max){
+			return baseClassifier.getCandidates(tokenizer.apply(object),max);
+		}
+		@Override
+		public Map<String,Long> getMemoryBreakdown(){
+			return MemoryAccountable.getMemoryBreakdown(baseClassifier);
+		}
+	}
+	private static class IncrementalStreamingClassifier<T,S> extends StreamingClassifier<T,S> implements IncrementalClassifier<T>{
+		private final Function<T,Frequencies<S>> preprocessor;
+		private final IncrementalClassifier<Frequencies<S>> incrementalClassifier;
+		public IncrementalStreamingClassifier(Function<T,Stream<S>> tokenizer,TokenStreamClassifier<S> baseClassifier,
+				Function<T,Frequencies<S>> preprocessor,IncrementalClassifier<Frequencies<S>> incrementalClassifier){
+			super(tokenizer,baseClassifier);
+			this.preprocessor=preprocessor;
+			this.incrementalClassifier=incrementalClassifier;
+		}
+		@Override
+		public void train(T data,Category category){
+			incrementalClassifier.train(preprocessor.apply(data),category);
+		}
+	}
+}
@@ -33,10 +33,11 @@ public interface Trainable<T>{
 	 */
 	void train(T data, Category category);
 	/**
-	 * Train the model
+	 * Train the model, the samples are passed to train(T,Category) one by one
+	 * in encounter order, so the stream may be parallel
 	 * @param samples a stream of samples
 	 */
 	default void train(Stream<Sample<T>> samples){
-		samples.forEach((sample)->train(sample.getData(),sample.getCategory()));
+		samples.forEachOrdered((sample)->train(sample.getData(),sample.getCategory()));
 	}
 }
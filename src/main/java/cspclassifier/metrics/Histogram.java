@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe histogram of non-negative long values with log-linear buckets
+ * in the style of HdrHistogram. Values below 256 are counted exactly, larger
+ * values fall into buckets whose width is less than 1% of their lower bound,
+ * so recording a value is a few bit operations and an atomic increment.
+ * @author S.Welcker
+ */
+public class Histogram{
+	private static final int SUB_BUCKET_BITS=8;
+	private static final int SUB_BUCKET_COUNT=1<<SUB_BUCKET_BITS;
+	private static final int HALF_COUNT=SUB_BUCKET_COUNT/2;
+	private static final int BUCKET_COUNT=SUB_BUCKET_COUNT+(63-SUB_BUCKET_BITS)*HALF_COUNT;
+	private final AtomicLongArray counts=new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder count=new LongAdder();
+	private final LongAdder sum=new LongAdder();
+	private final AtomicLong max=new AtomicLong();
+	/**
+	 * Create a empty histogram
+	 */
+	public Histogram(){
+	}
+	/**
+	 * Record a value
+	 * @param value the value, negative values are recorded as 0
+	 */
+	public void record(long value){
+		if(value<0)
+			value=0;
+		counts.incrementAndGet(getIndex(value));
+		count.increment();
+		sum.add(value);
+		long current;
+		while(value>(current=max.get())&&!max.compareAndSet(current,value)){
+		}
+	}
+	private static int getIndex(long value){
+		if(value<SUB_BUCKET_COUNT)
+			return (int)value;
+		int exponent=63-Long.numberOfLeadingZeros(value);
+		int shift=exponent-SUB_BUCKET_BITS+1;
+		return SUB_BUCKET_COUNT+(exponent-SUB_BUCKET_BITS)*HALF_COUNT+(int)(value>>>shift)-HALF_COUNT;
+	}
+	private static long getHighestEquivalentValue(int index){
+		if(index<SUB_BUCKET_COUNT)
+			return index;
+		int exponent=SUB_BUCKET_BITS+(index-SUB_BUCKET_COUNT)/HALF_COUNT;
+		int shift=exponent-SUB_BUCKET_BITS+1;
+		long subBucket=(index-SUB_BUCKET_COUNT)%HALF_COUNT+HALF_COUNT;
+		return (subBucket<<shift)+(1L<<shift)-1;
+	}
+	/**
+	 * @return the number of recorded values
+	 */
+	public long getCount(){
+		return count.sum();
+	}
+	/**
+	 * @return the largest recorded value
+	 */
+	public long getMax(){
+		return max.get();
+	}
+	/**
+	 * @return the mean of recorded values, 0 if empty
+	 */
+	public double getMean(){
+		long n=count.sum();
+		return n==0?0:(double)sum.sum()/n;
+	}
+	/**
+	 * Get a percentile, the result is accurate to 1% relatively
+	 * @param percentile between 0 and 100
+	 * @return the smallest value that is not exceeded by the given percentage
+	 * of recorded values, 0 if empty
+	 */
+	public long getValueAtPercentile(double percentile){
+		long total=0;
+		for(int i=0;i<BUCKET_COUNT;i++)
+			total+=counts.get(i);
+		if(total==0)
+			return 0;
+		long rank=Math.max(1,(long)Math.ceil(Math.min(percentile,100.0)/100.0*total));
+		long seen=0;
+		for(int i=0;i<BUCKET_COUNT;i++){
+			seen+=counts.get(i);
+			if(seen>=rank)
+				return Math.min(getHighestEquivalentValue(i),max.get());
+		}
+		return max.get();
+	}
+	/**
+	 * Remove all recorded values
+	 */
+	public void reset(){
+		for(int i=0;i<BUCKET_COUNT;i++)
+			counts.set(i,0);
+		count.reset();
+		sum.reset();
+		max.set(0);
+	}
+	@Override
+	public String toString(){
+		return "count="+getCount()+" p50="+getValueAtPercentile(50)+" p99="+getValueAtPercentile(99)
+				+" p999="+getValueAtPercentile(99.9)+" max="+getMax();
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recorder that keeps a latency histogram and a failure count for each stage,
+ * a histogram of tokens per document and the ratio of unknown tokens
+ * @author S.Welcker
+ */
+public class HistogramMetricsRecorder implements MetricsRecorder{
+	private final Histogram[] latencies=new Histogram[Stage.values().length];
+	private final LongAdder[] failures=new LongAdder[Stage.values().length];
+	private final Histogram tokensPerDocument=new Histogram();
+	private final LongAdder tokens=new LongAdder();
+	private final LongAdder unknownTokens=new LongAdder();
+	private final LongAdder batchSamples=new LongAdder();
+	/**
+	 * Create a recorder
+	 */
+	public HistogramMetricsRecorder(){
+		for(int i=0;i<latencies.length;i++){
+			latencies[i]=new Histogram();
+			failures[i]=new LongAdder();
+		}
+	}
+	@Override
+	public void recordLatency(Stage stage,long nanos){
+		latencies[stage.ordinal()].record(nanos);
+	}
+	@Override
+	public void recordFailure(Stage stage){
+		failures[stage.ordinal()].increment();
+	}
+	@Override
+	public void recordTokens(long tokens,long unknownTokens){
+		tokensPerDocument.record(tokens);
+		this.tokens.add(tokens);
+		this.unknownTokens.add(unknownTokens);
+	}
+	@Override
+	public void recordBatch(long samples){
+		batchSamples.add(samples);
+	}
+	/**
+	 * @param stage the stage
+	 * @return the histogram of time(nanosecond) spent in the stage
+	 */
+	public Histogram getLatencies(Stage stage){
+		return latencies[stage.ordinal()];
+	}
+	/**
+	 * @param stage the stage
+	 * @return the number of failures in the stage
+	 */
+	public long getFailureCount(Stage stage){
+		return failures[stage.ordinal()].sum();
+	}
+	/**
+	 * @return the histogram of number of tokens per document
+	 */
+	public Histogram getTokensPerDocument(){
+		return tokensPerDocument;
+	}
+	/**
+	 * @return the fraction of tokens that are not in the vocabulary of the
+	 * classifier
+	 */
+	public double getUnknownTokenRatio(){
+		long total=tokens.sum();
+		return total==0?0:(double)unknownTokens.sum()/total;
+	}
+	/**
+	 * @return the number of samples trained in streams
+	 */
+	public long getBatchSampleCount(){
+		return batchSamples.sum();
+	}
+	/**
+	 * Remove all recorded values
+	 */
+	public void reset(){
+		for(int i=0;i<latencies.length;i++){
+			latencies[i].reset();
+			failures[i].reset();
+		}
+		tokensPerDocument.reset();
+		tokens.reset();
+		unknownTokens.reset();
+		batchSamples.reset();
+	}
+	@Override
+	public String toString(){
+		StringBuilder buf=new StringBuilder();
+		for(Stage stage:Stage.values()){
+			Histogram histogram=getLatencies(stage);
+			if(histogram.getCount()>0||getFailureCount(stage)>0){
+				buf.append(stage).append(": count=").append(histogram.getCount()).
+						append(" failures=").append(getFailureCount(stage)).
+						append(" p50=").append(toMicros(histogram.getValueAtPercentile(50))).
+						append("us p99=").append(toMicros(histogram.getValueAtPercentile(99))).
+						append("us max=").append(toMicros(histogram.getMax())).append("us\n");
+			}
+		}
+		if(batchSamples.sum()>0)
+			buf.append("samples in batches: ").append(batchSamples.sum()).append('\n');
+		if(tokensPerDocument.getCount()>0){
+			buf.append("tokens/document: p50=").append(tokensPerDocument.getValueAtPercentile(50)).
+					append(" p99=").append(tokensPerDocument.getValueAtPercentile(99)).
+					append(" unknown=").append(String.format("%.2f%%",getUnknownTokenRatio()*100)).append('\n');
+		}
+		return buf.toString();
+	}
+	private static long toMicros(long nanos){
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.metrics;
+
+import cspclassifier.*;
+import cspclassifier.metrics.MetricsRecorder.Stage;
+import cspclassifier.util.*;
+import cspclassifier.validator.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Wrappers that measure classifiers, preprocessors and models. If the
+ * recorder is disabled, e.g. MetricsRecorder.NOOP, the wrapped object is
+ * returned as is, so that there is no overhead at all. The wrappers implement
+ * TokenStreamClassifier and IncrementalClassifier whenever the wrapped
+ * classifiers do.
+ * @author S.Welcker
+ */
+public class Metrics{
+	private Metrics(){
+	}
+	/**
+	 * Measure the time spent in scoring. If the objects being classified are
+	 * token frequencies, the number of tokens is recorded too, together with
+	 * the number of unknown tokens if the classifier is a TokenStreamClassifier.
+	 * @param <T> the type of the objects to be classified
+	 * @param classifier the classifier
+	 * @param recorder the recorder
+	 * @return the measured classifier
+	 */
+	public static <T> Classifier<T> meterClassifier(Classifier<T> classifier,MetricsRecorder recorder){
+		if(!recorder.isEnabled())
+			return classifier;
+		if(classifier instanceof TokenStreamClassifier)
+			return meterTokenStream(classifier,recorder);
+		if(classifier instanceof IncrementalClassifier)
+			return new MeteredIncrementalClassifier<>((IncrementalClassifier<T>)classifier,recorder);
+		return new MeteredClassifier<>(classifier,recorder);
+	}
+	/**
+	 * Measure the time spent in scoring together with the number of tokens
+	 * and unknown tokens
+	 * @param <T> the type of the tokens
+	 * @param classifier the classifier
+	 * @param recorder the recorder
+	 * @return the measured classifier
+	 */
+	public static <T> TokenStreamClassifier<T> meterClassifier(TokenStreamClassifier<T> classifier,MetricsRecorder recorder){
+		if(!recorder.isEnabled())
+			return classifier;
+		if(classifier instanceof IncrementalClassifier)
+			return new MeteredIncrementalTokenStreamClassifier<>(classifier,recorder);
+		return new MeteredTokenStreamClassifier<>(classifier,recorder);
+	}
+	/**
+	 * A TokenStreamClassifier&lt;S&gt; is a Classifier&lt;Frequencies&lt;S&gt;&gt;,
+	 * so T is Frequencies&lt;S&gt; here although the compiler cannot see it
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> Classifier<T> meterTokenStream(Classifier<T> classifier,MetricsRecorder recorder){
+		return (Classifier<T>)meterClassifier((TokenStreamClassifier<?>)classifier,recorder);
+	}
+	private static void recordTokens(Frequencies<?> document,MetricsRecorder recorder){
+		long tokens=0;
+		for(Counter counter:document.toMap().values())
+			tokens+=counter.getCount();
+		recorder.recordTokens(tokens,0);
+	}
+	private static <T> void recordTokens(Frequencies<T> document,TokenStreamClassifier<T> vocabulary,MetricsRecorder recorder){
+		long tokens=0,unknown=0;
+		for(Map.Entry<T,Counter> e:document.toMap().entrySet()){
+			long count=e.getValue().getCount();
+			tokens+=count;
+			if(!vocabulary.isKnown(e.getKey()))
+				unknown+=count;
+		}
+		recorder.recordTokens(tokens,unknown);
+	}
+	private static <T> List<ClassificationResult> score(Classifier<T> classifier,T object,int max,MetricsRecorder recorder){
+		long time=System.nanoTime();
+		try{
+			List<ClassificationResult> candidates=classifier.getCandidates(object,max);
+			recorder.recordLatency(Stage.SCORE,System.nanoTime()-time);
+			return candidates;
+		}catch(RuntimeException ex){
+			recorder.recordFailure(Stage.SCORE);
+			throw ex;
+		}
+	}
+	private static <T> void train(Trainable<T> model,T data,Category category,MetricsRecorder recorder){
+		long time=System.nanoTime();
+		try{
+			model.train(data,category);
+			recorder.recordLatency(Stage.TRAIN,System.nanoTime()-time);
+		}catch(RuntimeException ex){
+			recorder.recordFailure(Stage.TRAIN);
+			throw ex;
+		}
+	}
+	/**
+	 * Measure the time spent in preprocessing
+	 * @param <T> the type of the objects before preprocessing
+	 * @param <S> the type of the objects after preprocessing
+	 * @param preprocessor the preprocessor
+	 * @param recorder the recorder
+	 * @return the measured preprocessor
+	 */
+	public static <T,S> Function<T,S> meterPreprocessor(Function<T,S> preprocessor,MetricsRecorder recorder){
+		if(!recorder.isEnabled())
+			return preprocessor;
+		return (object)->{
+			long time=System.nanoTime();
+			try{
+				S result=preprocessor.apply(object);
+				recorder.recordLatency(Stage.PREPROCESS,System.nanoTime()-time);
+				return result;
+			}catch(RuntimeException ex){
+				recorder.recordFailure(Stage.PREPROCESS);
+				throw ex;
+			}
+		};
+	}
+	/**
+	 * Measure the time spent in training for each sample, the original model
+	 * should still be used to build classifiers. Streams of samples are still
+	 * trained by the model itself, so the time spent on a stream is recorded
+	 * once as TRAIN_BATCH together with the number of samples.
+	 * @param <T> the type of the objects to be classified
+	 * @param model the model
+	 * @param recorder the recorder
+	 * @return the measured model
+	 */
+	public static <T> Trainable<T> meterModel(Trainable<T> model,MetricsRecorder recorder){
+		if(!recorder.isEnabled())
+			return model;
+		return new MeteredModel<>(model,recorder);
+	}
+	/**
+	 * Measure the classifiers built by a factory. PreprocessClassifierFactory,
+	 * including TokenStreamClassifierFactory, is measured as by
+	 * meterFactory(PreprocessClassifierFactory,MetricsRecorder) even if its
+	 * static type is only ClassifierFactory.
+	 * @param <M> the type of the model
+	 * @param <T> the type of the objects to be classified
+	 * @param factory the factory
+	 * @param recorder the recorder
+	 * @return the factory of measured classifiers
+	 */
+	public static <M extends Trainable<T>,T> ClassifierFactory<Classifier<T>,M,T> meterFactory(ClassifierFactory<? extends Classifier<T>,M,T> factory,MetricsRecorder recorder){
+		if(!recorder.isEnabled())
+			return asFactoryOfClassifier(factory);
+		if(factory instanceof PreprocessClassifierFactory)
+			return asFactoryOfClassifier(meterFactory((PreprocessClassifierFactory<?,?,?>)factory,recorder));
+		return new MeteredClassifierFactory<>(factory,recorder);
+	}
+	/**
+	 * Factories only produce classifiers and consume their own models, so a
+	 * factory of some Classifier&lt;T&gt; is a factory of Classifier&lt;T&gt;,
+	 * and a metered PreprocessClassifierFactory takes the same models as the
+	 * factory it wraps although the compiler cannot see it
+	 */
+	@SuppressWarnings("unchecked")
+	private static <M extends Trainable<T>,T> ClassifierFactory<Classifier<T>,M,T> asFactoryOfClassifier(ClassifierFactory<? extends Classifier<?>,?,?> factory){
+		return (ClassifierFactory<Classifier<T>,M,T>)factory;
+	}
+	/**
+	 * Measure the classifiers built by a factory, preprocessing and scoring
+	 * are measured separately, so tokens are counted before scoring even if
+	 * the factory would stream them into the classifier. Models created by the
+	 * returned factory are not measured.
+	 * @param <M> the type of the underlying model
+	 * @param <T> the type of the objects to be classified
+	 * @param <S> the type of the objects after preprocessing
+	 * @param factory the factory
+	 * @param recorder the recorder
+	 * @return the factory of measured classifiers
+	 */
+	public static <M extends Trainable<S>,T,S> PreprocessClassifierFactory<M,T,S> meterFactory(PreprocessClassifierFactory<M,T,S> factory,MetricsRecorder recorder){
+		if(!recorder.isEnabled())
+			return factory;
+		return new PreprocessClassifierFactory<M,T,S>(meterPreprocessor(factory.getPreprocessor(),recorder),meterFactory(factory.getBaseFactory(),recorder)){
+			@Override
+			public PreprocessModel<M,T,S> createModel(){
+				return factory.createModel();
+			}
+			@Override
+			public String toString(){
+				return "metered "+factory.toString();
+			}
+		};
+	}
+	private static class MeteredClassifierFactory<M extends Trainable<T>,T> implements ClassifierFactory<Classifier<T>,M,T>{
+		private final ClassifierFactory<? extends Classifier<T>,M,T> factory;
+		private final MetricsRecorder recorder;
+		MeteredClassifierFactory(ClassifierFactory<? extends Classifier<T>,M,T> factory,MetricsRecorder recorder){
+			this.factory=factory;
+			this.recorder=recorder;
+		}
+		@Override
+		public Classifier<T> getClassifier(M model){
+			return meterClassifier(factory.getClassifier(model),recorder);
+		}
+		@Override
+		public M createModel(){
+			return factory.createModel();
+		}
+		@Override
+		public String toString(){
+			return "metered "+factory.toString();
+		}
+	}
+	private static class MeteredModel<T> implements Trainable<T>{
+		private final Trainable<T> model;
+		private final MetricsRecorder recorder;
+		MeteredModel(Trainable<T> model,MetricsRecorder recorder){
+			this.model=model;
+			this.recorder=recorder;
+		}
+		@Override
+		public void train(T data,Category category){
+			Metrics.train(model,data,category,recorder);
+		}
+		@Override
+		public void train(Stream<Sample<T>> samples){
+			LongAdder count=new LongAdder();
+			long time=System.nanoTime();
+			try{
+				model.train(samples.peek((sample)->count.increment()));
+			}catch(RuntimeException ex){
+				recorder.recordFailure(Stage.TRAIN_BATCH);
+				throw ex;
+			}
+			recorder.recordLatency(Stage.TRAIN_BATCH,System.nanoTime()-time);
+			recorder.recordBatch(count.sum());
+		}
+	}
+	private static class MeteredClassifier<T> implements Classifier<T>{
+		private final Classifier<T> classifier;
+		final MetricsRecorder recorder;
+		MeteredClassifier(Classifier<T> classifier,MetricsRecorder recorder){
+			this.classifier=classifier;
+			this.recorder=recorder;
+		}
+		@Override
+		public List<ClassificationResult> getCandidates(T object,int max){
+			if(object instanceof Frequencies)
+				recordTokens((Frequencies<?>)object,recorder);
+			return score(classifier,object,max,recorder);
+		}
+	}
+	private static class MeteredIncrementalClassifier<T> extends MeteredClassifier<T> implements IncrementalClassifier<T>{
+		private final IncrementalClassifier<T> classifier;
+		MeteredIncrementalClassifier(IncrementalClassifier<T> classifier,MetricsRecorder recorder){
+			super(classifier,recorder);
+			this.classifier=classifier;
+		}
+		@Override
+		public void train(T data,Category category){
+			Metrics.train(classifier,data,category,recorder);
+		}
+	}
+	private static class MeteredTokenStreamClassifier<T> implements TokenStreamClassifier<T>{
+		private final TokenStreamClassifier<T> classifier;
+		final MetricsRecorder recorder;
+		MeteredTokenStreamClassifier(TokenStreamClassifier<T> classifier,MetricsRecorder recorder){
+			this.classifier=classifier;
+			this.recorder=recorder;
+		}
+		@Override
+		public List<ClassificationResult> getCandidates(Frequencies<T> document,int max){
+			recordTokens(document,classifier,recorder);
+			return score(classifier,document,max,recorder);
+		}
+		@Override
+		public List<ClassificationResult> getCandidates(Stream<T> tokens,int max){
+			long[] counts=new long[2];
+			Stream<T> counted=tokens.peek((token)->{
+				++counts[0];
+				if(!classifier.isKnown(token))
+					++counts[1];
+			});
+			long time=System.nanoTime();
+			try{
+				List<ClassificationResult> candidates=classifier.getCandidates(counted,max);
+				recorder.recordLatency(Stage.SCORE,System.nanoTime()-time);
+				recorder.recordTokens(counts[0],counts[1]);
+				return candidates;
+			}catch(RuntimeException ex){
+				recorder.recordFailure(Stage.SCORE);
+				throw ex;
+			}
+		}
+		@Override
+		public boolean isKnown(T token){
+			return classifier.isKnown(token);
+		}
+	}
+	private static class MeteredIncrementalTokenStreamClassifier<T> extends MeteredTokenStreamClassifier<T> implements IncrementalClassifier<Frequencies<T>>{
+		private final IncrementalClassifier<Frequencies<T>> classifier;
+		MeteredIncrementalTokenStreamClassifier(TokenStreamClassifier<T> classifier,MetricsRecorder recorder){
+			super(classifier,recorder);
+			this.classifier=(IncrementalClassifier<Frequencies<T>>)classifier;
+		}
+		@Override
+		public void train(Frequencies<T> data,Category category){
+			Metrics.train(classifier,data,category,recorder);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.metrics;
+
+/**
+ * Receiver of measurements taken by the wrappers in Metrics. Implementations
+ * must be thread safe, adapters to external metrics libraries can be plugged
+ * in by implementing this interface.
+ * @author S.Welcker
+ */
+public interface MetricsRecorder{
+	/**
+	 * Recorder that ignore everything, wrappers are not created at all for it
+	 */
+	MetricsRecorder NOOP=new MetricsRecorder(){
+		@Override
+		public boolean isEnabled(){
+			return false;
+		}
+		@Override
+		public void recordLatency(Stage stage,long nanos){
+		}
+		@Override
+		public void recordFailure(Stage stage){
+		}
+		@Override
+		public void recordTokens(long tokens,long unknownTokens){
+		}
+		@Override
+		public void recordBatch(long samples){
+		}
+	};
+	/**
+	 * @return false if the measurements are discarded, so that they need
+	 * not to be taken
+	 */
+	default boolean isEnabled(){
+		return true;
+	}
+	/**
+	 * Record the time spent in a stage for one object
+	 * @param stage the stage
+	 * @param nanos the time in nanoseconds
+	 */
+	void recordLatency(Stage stage,long nanos);
+	/**
+	 * Record that a stage failed with exception
+	 * @param stage the stage
+	 */
+	void recordFailure(Stage stage);
+	/**
+	 * Record the tokens of a document being classified
+	 * @param tokens the number of tokens
+	 * @param unknownTokens the number of tokens that are not in the vocabulary
+	 * of the classifier
+	 */
+	void recordTokens(long tokens,long unknownTokens);
+	/**
+	 * Record the size of a stream of samples being trained, its latency is
+	 * recorded as TRAIN_BATCH
+	 * @param samples the number of samples
+	 */
+	default void recordBatch(long samples){
+	}
+	/**
+	 * The stages being measured
+	 */
+	enum Stage{
+		/**
+		 * Convert a object into the form accepted by the classifier, e.g. tokenization
+		 */
+		PREPROCESS,
+		/**
+		 * Score the categories
+		 */
+		SCORE,
+		/**
+		 * Train a model with a sample
+		 */
+		TRAIN,
+		/**
+		 * Train a model with a stream of samples
+		 */
+		TRAIN_BATCH
+	}
+}
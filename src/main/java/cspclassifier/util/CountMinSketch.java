@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.util;
+
+/**
+ * Count-min sketch, i.e. approximate frequencies in fixed memory. Estimates
+ * never fall below the true frequencies, and with probability at least 1-delta
+ * exceed them by at most epsilon times the total count. Objects with the same
+ * hashCode are indistinguishable, so their hashCode should be well spread.
+ * @author S.Welcker
+ * @param <T> the type of the objects to be counted
+ */
+public class CountMinSketch<T>{
+	private final long[] counters;
+	private final int width,depth;
+	private long total;
+	/**
+	 * Create a sketch
+	 * @param epsilon the error relative to the total count
+	 * @param delta the probability that an estimate exceeds the error
+	 */
+	public CountMinSketch(double epsilon,double delta){
+		this((int)Math.ceil(Math.E/epsilon),(int)Math.ceil(Math.log(1/delta)));
+	}
+	/**
+	 * Create a sketch
+	 * @param width the number of counters in each row
+	 * @param depth the number of rows
+	 */
+	public CountMinSketch(int width,int depth){
+		if(width<1||depth<1||(long)width*depth>Integer.MAX_VALUE-8)
+			throw new IllegalArgumentException();
+		this.width=width;
+		this.depth=depth;
+		this.counters=new long[width*depth];
+	}
+	/**
+	 * Create a sketch using a given amount of memory
+	 * @param bytes the memory to be used
+	 * @param delta the probability that an estimate exceeds the error
+	 * @param <T> the type of the objects to be counted
+	 * @return the sketch
+	 */
+	public static <T> CountMinSketch<T> withMemory(long bytes,double delta){
+		int depth=(int)Math.ceil(Math.log(1/delta));
+		return new CountMinSketch<>((int)Math.min(Math.max((bytes-MemoryEstimator.ARRAY_HEADER)/(8L*depth),1),(Integer.MAX_VALUE-8)/depth),depth);
+	}
+	/**
+	 * Increase the frequency of a object, only the counters at the minimum
+	 * are raised(conservative update), which keeps the bounds but reduces the
+	 * error
+	 * @param token the object
+	 * @param times to be added
+	 * @return the estimated frequency of the object after the update
+	 */
+	public long add(T token,long times){
+		total+=times;
+		long hash=mix(token==null?0:token.hashCode());
+		long estimate=Long.MAX_VALUE;
+		for(int i=0;i<depth;i++)
+			estimate=Math.min(estimate,counters[index(hash,i)]);
+		estimate+=times;
+		for(int i=0;i<depth;i++){
+			int index=index(hash,i);
+			if(counters[index]<estimate)
+				counters[index]=estimate;
+		}
+		return estimate;
+	}
+	/**
+	 * @param token the object
+	 * @return the estimated frequency of the object
+	 */
+	public long estimate(T token){
+		long hash=mix(token==null?0:token.hashCode());
+		long estimate=Long.MAX_VALUE;
+		for(int i=0;i<depth;i++)
+			estimate=Math.min(estimate,counters[index(hash,i)]);
+		return estimate;
+	}
+	/**
+	 * @return the sum of all frequencies added
+	 */
+	public long getTotal(){
+		return total;
+	}
+	/**
+	 * @return the error relative to the total count
+	 */
+	public double getEpsilon(){
+		return Math.E/width;
+	}
+	/**
+	 * @return the probability that an estimate exceeds the error
+	 */
+	public double getDelta(){
+		return Math.exp(-depth);
+	}
+	/**
+	 * @return the error that an estimate exceeds with probability at most
+	 * delta given the current total count
+	 */
+	public long getErrorBound(){
+		return (long)Math.ceil(getEpsilon()*total);
+	}
+	/**
+	 * @return the memory used by the counters
+	 */
+	public long getBytes(){
+		return MemoryEstimator.ofArray(counters.length,8);
+	}
+	private int index(long hash,int row){
+		long h=hash+(row+1)*0x9E3779B97F4A7C15L;
+		h=(h^(h>>>30))*0xBF58476D1CE4E5B9L;
+		h=(h^(h>>>27))*0x94D049BB133111EBL;
+		h^=h>>>31;
+		return row*width+(int)((h>>>1)%width);
+	}
+	private static long mix(int hashCode){
+		return hashCode*0xC2B2AE3D27D4EB4FL;
+	}
+	@Override
+	public String toString(){
+		return "CountMin["+width+"x"+depth+"]";
+	}
+}
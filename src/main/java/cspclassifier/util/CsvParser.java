@@ -19,6 +19,7 @@ package cspclassifier.util;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -31,6 +32,7 @@ public class CsvParser implements Iterator<List<String>>{
 	private final Iterator<String> lines;
 	private final char separator;
 	private final char quotationMark;
+	private final StringBuilder field=new StringBuilder();
 	/**
 	 * Create a parser, the first line is skiped
 	 * @param lines the input lines
@@ -58,7 +60,8 @@ public class CsvParser implements Iterator<List<String>>{
 		this.lines=lines.iterator();
 		this.quotationMark=quotationMark;
 		this.separator=separator;
-		this.lines.next();
+		if(skipHeader&&this.lines.hasNext())
+			this.lines.next();
 	}
 	@Override
 	public boolean hasNext(){
@@ -75,7 +78,7 @@ public class CsvParser implements Iterator<List<String>>{
 				row.add(line.substring(last,i));
 				last=i+1;
 			}else if(c==quotationMark){
-				StringBuilder field=new StringBuilder();
+				field.setLength(0);
 				quote:
 				while(true){
 					for(i=i+1;i<line.length();i++){
@@ -97,8 +100,13 @@ public class CsvParser implements Iterator<List<String>>{
 							field.append(c);
 						}
 					}
+					if(!lines.hasNext()){
+						row.add(field.toString());
+						return row;
+					}
 					line=lines.next();
 					field.append("\n");
+					i=-1;
 				}
 			}
 		}
@@ -111,7 +119,7 @@ public class CsvParser implements Iterator<List<String>>{
 	 * @return the records
 	 */
 	public static Stream<List<String>> parse(Stream<String> lines){
-		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new CsvParser(lines),0),true);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new CsvParser(lines),Spliterator.ORDERED|Spliterator.NONNULL),false).onClose(lines::close);
 	}
 	/**
 	 * Parse a CSV file
@@ -120,7 +128,7 @@ public class CsvParser implements Iterator<List<String>>{
 	 * @return the records
 	 */
 	public static Stream<List<String>> parse(Stream<String> lines,boolean skipHeader){
-		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new CsvParser(lines,skipHeader),0),true);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new CsvParser(lines,skipHeader),Spliterator.ORDERED|Spliterator.NONNULL),false).onClose(lines::close);
 	}
 	/**
 	 * Parse a CSV file
@@ -131,6 +139,6 @@ public class CsvParser implements Iterator<List<String>>{
 	 * @return the records
 	 */
 	public static Stream<List<String>> parse(Stream<String> lines,boolean skipHeader,char separator,char quotationMark){
-		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new CsvParser(lines,skipHeader,separator,quotationMark),0),true);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new CsvParser(lines,skipHeader,separator,quotationMark),Spliterator.ORDERED|Spliterator.NONNULL),false).onClose(lines::close);
 	}
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.util;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * CSV reader that memory-maps a file and parses it in parallel. The file is
+ * cut into byte ranges that start at record boundaries: the quotation marks
+ * in each fixed-size block are counted in parallel first, so that whether a
+ * block starts inside a quoted field is known from the parity of the quotation
+ * marks before it, and a range is cut after the first line break outside
+ * quotes following a block boundary near its middle. So quoted fields may
+ * contain line breaks, but quotation marks must only appear around fields and
+ * doubled inside them as in RFC 4180.
+ * <p>
+ * The charset must encode the separator, the quotation mark and line breaks
+ * as single bytes that never appear inside other characters, e.g. UTF-8 or
+ * ISO-8859-1. Records end with "\n" or "\r\n", line breaks inside quoted
+ * fields are reported as "\n".
+ * @author S.Welcker
+ */
+public class MappedCsvReader{
+	private static final int BLOCK_SIZE=1<<20;
+	private MappedCsvReader(){
+	}
+	/**
+	 * Parse a UTF-8 CSV file
+	 * @param path the file
+	 * @param skipHeader if the first record should be skiped
+	 * @param separator the separator between fields
+	 * @param quotationMark the quotationMark
+	 * @return parallel stream of records
+	 * @throws IOException if the file cannot be mapped
+	 */
+	public static Stream<List<String>> parse(Path path,boolean skipHeader,char separator,char quotationMark) throws IOException{
+		return parse(path,skipHeader,separator,quotationMark,StandardCharsets.UTF_8);
+	}
+	/**
+	 * Parse a CSV file
+	 * @param path the file
+	 * @param skipHeader if the first record should be skiped
+	 * @param separator the separator between fields
+	 * @param quotationMark the quotationMark
+	 * @param charset the encoding of the file
+	 * @return parallel stream of records
+	 * @throws IOException if the file cannot be mapped
+	 */
+	public static Stream<List<String>> parse(Path path,boolean skipHeader,char separator,char quotationMark,Charset charset) throws IOException{
+		if(separator>=0x80||quotationMark>=0x80||"\n".getBytes(charset).length!=1)
+			throw new IllegalArgumentException("Separator, quotation mark and line break must be single byte");
+		MappedFile file=new MappedFile(path);
+		boolean[] quoted=getQuotedBlocks(file,(byte)quotationMark);
+		Chunk chunk=new Chunk(file,quoted,0,file.size(),(byte)separator,(byte)quotationMark,charset);
+		if(skipHeader)
+			chunk.tryAdvance((header)->{
+			});
+		return StreamSupport.stream(chunk,true);
+	}
+	/**
+	 * Find the blocks starting inside quotes
+	 * @param file the file
+	 * @param quotationMark the quotation mark
+	 * @return if the number of quotation marks before each block is odd
+	 */
+	private static boolean[] getQuotedBlocks(MappedFile file,byte quotationMark){
+		int blocks=(int)((file.size()+BLOCK_SIZE-1)/BLOCK_SIZE);
+		int[] parities=IntStream.range(0,blocks).parallel().map((block)->getParity(file,block,quotationMark)).toArray();
+		boolean[] quoted=new boolean[blocks+1];
+		for(int i=0;i<blocks;i++)
+			quoted[i+1]=quoted[i]^(parities[i]!=0);
+		return quoted;
+	}
+	private static int getParity(MappedFile file,int block,byte quotationMark){
+		long p=(long)block*BLOCK_SIZE;
+		long end=Math.min(file.size(),p+BLOCK_SIZE);
+		byte[] buffer=new byte[1<<16];
+		int parity=0;
+		while(p<end){
+			int length=file.copy(p,buffer);
+			length=(int)Math.min(length,end-p);
+			for(int i=0;i<length;i++)
+				if(buffer[i]==quotationMark)
+					parity^=1;
+			p+=length;
+		}
+		return parity;
+	}
+	private static class Chunk implements Spliterator<List<String>>{
+		private final MappedFile file;
+		private final boolean[] quotedBlocks;
+		private final byte separator;
+		private final byte quotationMark;
+		private final Charset charset;
+		private long position;
+		private final long end;
+		private byte[] field=new byte[256];
+		private int length;
+		private final MappedFile.Cursor cursor;
+		Chunk(MappedFile file,boolean[] quotedBlocks,long position,long end,byte separator,byte quotationMark,Charset charset){
+			this.file=file;
+			this.quotedBlocks=quotedBlocks;
+			this.position=position;
+			this.end=end;
+			this.separator=separator;
+			this.quotationMark=quotationMark;
+			this.charset=charset;
+			this.cursor=file.cursor();
+		}
+		@Override
+		public boolean tryAdvance(Consumer<? super List<String>> action){
+			if(position>=end)
+				return false;
+			List<String> row=new ArrayList<>();
+			long size=file.size();
+			long p=position;
+			while(true){
+				length=0;
+				if(p<size&&cursor.get(p)==quotationMark){
+					for(++p;p<size;p++){
+						byte c=cursor.get(p);
+						if(c==quotationMark){
+							if(p+1<size&&cursor.get(p+1)==quotationMark){
+								append(c);
+								++p;
+							}else{
+								++p;
+								break;
+							}
+						}else if(c!='\r'||p+1>=size||cursor.get(p+1)!='\n'){
+							append(c);
+						}
+					}
+				}
+				byte c=0;
+				for(;p<size&&(c=cursor.get(p))!=separator&&c!='\n';p++)
+					append(c);
+				if(p<size&&c==separator){
+					row.add(new String(field,0,length,charset));
+					++p;
+				}else{
+					if(length>0&&field[length-1]=='\r')
+						--length;
+					row.add(new String(field,0,length,charset));
+					position=p+1;
+					break;
+				}
+			}
+			action.accept(row);
+			return true;
+		}
+		private void append(byte c){
+			if(length==field.length)
+				field=Arrays.copyOf(field,length*2);
+			field[length++]=c;
+		}
+		@Override
+		public Spliterator<List<String>> trySplit(){
+			if(end-position<2*BLOCK_SIZE)
+				return null;
+			int block=(int)((position+(end-position)/2)/BLOCK_SIZE);
+			long middle=(long)block*BLOCK_SIZE;
+			boolean quoted=quotedBlocks[block];
+			long boundary=-1;
+			for(long p=middle;p<end;p++){
+				byte c=cursor.get(p);
+				if(c==quotationMark){
+					quoted=!quoted;
+				}else if(c=='\n'&&!quoted){
+					boundary=p+1;
+					break;
+				}
+			}
+			if(boundary<0||boundary>=end)
+				return null;
+			Chunk prefix=new Chunk(file,quotedBlocks,position,boundary,separator,quotationMark,charset);
+			position=boundary;
+			return prefix;
+		}
+		@Override
+		public long estimateSize(){
+			return end-position;
+		}
+		@Override
+		public int characteristics(){
+			return ORDERED|NONNULL;
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read only file mapped into memory in segments of up to 1GB, so that files
+ * larger than 2GB can be mapped. The mapping stays valid after the channel is
+ * closed and is released by the garbage collector.
+ * @author S.Welcker
+ */
+public class MappedFile{
+	private static final int SEGMENT_BITS=30;
+	private static final int WINDOW_SIZE=1<<16;
+	private final ByteBuffer[] segments;
+	private final long size;
+	/**
+	 * Map a file
+	 * @param path the file
+	 * @throws IOException if the file cannot be mapped
+	 */
+	public MappedFile(Path path) throws IOException{
+		try(FileChannel channel=FileChannel.open(path,StandardOpenOption.READ)){
+			size=channel.size();
+			segments=new ByteBuffer[(int)((size+(1L<<SEGMENT_BITS)-1)>>>SEGMENT_BITS)];
+			for(int i=0;i<segments.length;i++){
+				long start=(long)i<<SEGMENT_BITS;
+				segments[i]=channel.map(FileChannel.MapMode.READ_ONLY,start,Math.min(size-start,1L<<SEGMENT_BITS));
+			}
+		}
+	}
+	/**
+	 * @return the size of the file in bytes
+	 */
+	public long size(){
+		return size;
+	}
+	/**
+	 * Copy bytes starting at a position, the bytes copied do not cross the
+	 * end of the segment containing the position
+	 * @param position the position
+	 * @param buffer the destination
+	 * @return the number of bytes copied
+	 */
+	public int copy(long position,byte[] buffer){
+		ByteBuffer segment=segments[(int)(position>>>SEGMENT_BITS)].duplicate();
+		segment.position((int)(position&((1<<SEGMENT_BITS)-1)));
+		int length=Math.min(buffer.length,segment.remaining());
+		segment.get(buffer,0,length);
+		return length;
+	}
+	/**
+	 * @return a new cursor over this file
+	 */
+	public Cursor cursor(){
+		return new Cursor();
+	}
+	/**
+	 * Reader of the file through a window copied from the mapping, so that
+	 * most reads are plain array accesses. A cursor is not thread safe, each
+	 * thread should use its own cursor.
+	 */
+	public class Cursor{
+		private final byte[] window=new byte[WINDOW_SIZE];
+		private long windowStart;
+		private int windowLength;
+		private Cursor(){
+		}
+		/**
+		 * @param position the position, must be less than the size of the file
+		 * @return the byte at the position
+		 */
+		public byte get(long position){
+			int i=(int)(position-windowStart);
+			if(i<0||i>=windowLength){
+				windowStart=position;
+				windowLength=copy(position,window);
+				i=0;
+			}
+			return window[i];
+		}
+		/**
+		 * @param position the position, must be at least 4 bytes before the
+		 * end of the file
+		 * @return the big-endian int starting at the position
+		 */
+		public int getInt(long position){
+			int i=(int)(position-windowStart);
+			if(i>=0&&i+4<=windowLength)
+				return (window[i]<<24)|((window[i+1]&0xFF)<<16)|((window[i+2]&0xFF)<<8)|(window[i+3]&0xFF);
+			return (get(position)<<24)|((get(position+1)&0xFF)<<16)|((get(position+2)&0xFF)<<8)|(get(position+3)&0xFF);
+		}
+		/**
+		 * Decode a range of the file
+		 * @param start the first position
+		 * @param end the position after the last one
+		 * @param charset the encoding
+		 * @return the decoded string
+		 */
+		public String decode(long start,long end,Charset charset){
+			int length=(int)(end-start);
+			if(start>=windowStart&&end<=windowStart+windowLength)
+				return new String(window,(int)(start-windowStart),length,charset);
+			byte[] bytes=new byte[length];
+			for(int i=0;i<length;i++)
+				bytes[i]=get(start+i);
+			return new String(bytes,charset);
+		}
+		/**
+		 * @param start the first position
+		 * @param end the position after the last one
+		 * @param bytes the expected content
+		 * @return if the range of the file contains the given bytes
+		 */
+		public boolean matches(long start,long end,byte[] bytes){
+			if(end-start!=bytes.length)
+				return false;
+			for(int i=0;i<bytes.length;i++)
+				if(get(start+i)!=bytes[i])
+					return false;
+			return true;
+		}
+		/**
+		 * @param start the first position
+		 * @param end the position after the last one
+		 * @return a copy of a range of the file
+		 */
+		public byte[] toBytes(long start,long end){
+			byte[] bytes=new byte[(int)(end-start)];
+			for(int i=0;i<bytes.length;i++)
+				bytes[i]=get(start+i);
+			return bytes;
+		}
+	}
+}
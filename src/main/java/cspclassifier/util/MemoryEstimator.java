@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.util;
+
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Estimate the memory used by common structures from their sizes, assuming a
+ * 64-bit JVM with compressed references. The contents of collections are not
+ * walked except for a few keys which are sampled to estimate their average
+ * size.
+ * @author S.Welcker
+ */
+public class MemoryEstimator{
+	/**
+	 * Size of object header
+	 */
+	public static final int OBJECT_HEADER=12;
+	/**
+	 * Size of array header
+	 */
+	public static final int ARRAY_HEADER=16;
+	/**
+	 * Size of a reference
+	 */
+	public static final int REFERENCE=4;
+	/**
+	 * Size of a Counter
+	 */
+	public static final int COUNTER=24;
+	private static final int HASH_MAP=48;
+	private static final int HASH_MAP_ENTRY=32;
+	private static final int TREE_MAP=48;
+	private static final int TREE_MAP_ENTRY=40;
+	private static final int LINKED_LIST=32;
+	private static final int LINKED_LIST_NODE=24;
+	private static final int ARRAY_LIST=24;
+	private static final int SAMPLE_SIZE=32;
+	private MemoryEstimator(){
+	}
+	/**
+	 * @param bytes size of a object
+	 * @return the size rounded up to multiple of 8
+	 */
+	public static long align(long bytes){
+		return (bytes+7)&~7L;
+	}
+	/**
+	 * @param length the length of the array
+	 * @param elementBytes size of each element
+	 * @return size of the array
+	 */
+	public static long ofArray(long length,int elementBytes){
+		return align(ARRAY_HEADER+length*elementBytes);
+	}
+	/**
+	 * Estimate the size of a map excluding its keys and values
+	 * @param map the map
+	 * @return estimated size
+	 */
+	public static long ofMap(Map<?,?> map){
+		int size=map.size();
+		if(map instanceof TreeMap)
+			return TREE_MAP+(long)TREE_MAP_ENTRY*size;
+		return HASH_MAP+(long)HASH_MAP_ENTRY*size+(size==0?0:ofArray(getTableSize(size),REFERENCE));
+	}
+	private static long getTableSize(int size){
+		return Long.highestOneBit(Math.max((long)(size/0.75f)+1,16)-1)<<1;
+	}
+	/**
+	 * Estimate the size of a collection excluding its elements
+	 * @param collection the collection
+	 * @return estimated size
+	 */
+	public static long ofCollection(Collection<?> collection){
+		if(collection instanceof LinkedList)
+			return LINKED_LIST+(long)LINKED_LIST_NODE*collection.size();
+		return ARRAY_LIST+ofArray(collection.size(),REFERENCE);
+	}
+	/**
+	 * Estimate the size of a frequencies table excluding its keys and counters
+	 * @param frequencies the frequencies table
+	 * @return estimated size
+	 */
+	public static long ofFrequencies(Frequencies<?> frequencies){
+		return align(OBJECT_HEADER+REFERENCE)+ofMap(frequencies.toMap());
+	}
+	/**
+	 * Estimate the total size of some objects by sampling a few of them
+	 * @param objects the objects
+	 * @return estimated size
+	 */
+	public static long ofElements(Collection<?> objects){
+		return (long)(getAverageSize(objects)*objects.size());
+	}
+	/**
+	 * Estimate the average size of some objects by sampling a few of them
+	 * @param objects the objects
+	 * @return average size, 0 if there are no objects
+	 */
+	public static double getAverageSize(Collection<?> objects){
+		long total=0;
+		int count=0;
+		for(Object object:objects){
+			if(count==SAMPLE_SIZE)
+				break;
+			total+=of(object);
+			++count;
+		}
+		return count==0?0:(double)total/count;
+	}
+	/**
+	 * Estimate the size of a object which is usually used as key
+	 * @param object the object
+	 * @return estimated size, strings and boxed numbers are estimated
+	 * accurately and other objects are counted as object header only
+	 */
+	public static long of(Object object){
+		if(object==null)
+			return 0;
+		if(object instanceof String)
+			return align(OBJECT_HEADER+3*4)+ofArray(((String)object).length(),1);
+		if(object instanceof Number||object instanceof Character||object instanceof Boolean)
+			return 16;
+		return align(OBJECT_HEADER+REFERENCE);
+	}
+	/**
+	 * Format a size in human readable form
+	 * @param bytes the size
+	 * @return formatted size
+	 */
+	public static String format(long bytes){
+		if(bytes<1024)
+			return bytes+"B";
+		else if(bytes<1024*1024)
+			return String.format("%.1fKB",bytes/1024.0);
+		else if(bytes<1024L*1024*1024)
+			return String.format("%.1fMB",bytes/(1024.0*1024));
+		else
+			return String.format("%.1fGB",bytes/(1024.0*1024*1024));
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Input stream that reads another stream on a dedicated thread into large
+ * buffers and hands them over through a bounded queue, so that reading and
+ * decompression overlap with the work of the consumer. At most queueSize+2
+ * buffers are allocated and they are reused. Any failure of the reader
+ * thread is rethrown to the consumer after the data read before it.
+ * @author S.Welcker
+ */
+public class PrefetchInputStream extends InputStream{
+	/**
+	 * Default size of each buffer
+	 */
+	public static final int DEFAULT_BUFFER_SIZE=1<<20;
+	/**
+	 * Default number of filled buffers waiting for the consumer
+	 */
+	public static final int DEFAULT_QUEUE_SIZE=4;
+	private static final Chunk END=new Chunk(new byte[0]);
+	private final BlockingQueue<Chunk> filled;
+	private final BlockingQueue<Chunk> free;
+	private final Thread reader;
+	private Chunk current;
+	private int position;
+	private boolean ended;
+	/**
+	 * Create a stream with default buffer size and queue size
+	 * @param source the stream to be read, it is closed by the reader thread
+	 * when the end is reached or this stream is closed
+	 */
+	public PrefetchInputStream(InputStream source){
+		this(source,DEFAULT_BUFFER_SIZE,DEFAULT_QUEUE_SIZE);
+	}
+	/**
+	 * Create a stream
+	 * @param source the stream to be read, it is closed by the reader thread
+	 * when the end is reached or this stream is closed
+	 * @param bufferSize the size of each buffer
+	 * @param queueSize the number of filled buffers waiting for the consumer
+	 */
+	public PrefetchInputStream(InputStream source,int bufferSize,int queueSize){
+		filled=new ArrayBlockingQueue<>(queueSize+1);
+		free=new ArrayBlockingQueue<>(queueSize+2);
+		for(int i=0;i<queueSize+2;i++)
+			free.add(new Chunk(new byte[bufferSize]));
+		reader=new Thread(()->readLoop(source),"prefetch-reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+	private void readLoop(InputStream source){
+		Chunk chunk=null;
+		try(InputStream in=source){
+			while(true){
+				chunk=free.take();
+				chunk.length=0;
+				int count;
+				while(chunk.length<chunk.data.length&&(count=in.read(chunk.data,chunk.length,chunk.data.length-chunk.length))!=-1)
+					chunk.length+=count;
+				boolean end=chunk.length<chunk.data.length;
+				if(chunk.length>0)
+					filled.put(chunk);
+				chunk=null;
+				if(end){
+					filled.put(END);
+					return;
+				}
+			}
+		}catch(InterruptedException ex){
+			//closed by consumer
+		}catch(Throwable ex){
+			Chunk failure=new Chunk(new byte[0]);
+			failure.exception=ex;
+			try{
+				if(chunk!=null&&chunk.length>0)
+					filled.put(chunk);
+				filled.put(failure);
+			}catch(InterruptedException ie){
+				//closed by consumer
+			}
+		}
+	}
+	private boolean fill() throws IOException{
+		if(ended)
+			return false;
+		if(current!=null&&position<current.length)
+			return true;
+		if(current!=null)
+			free.offer(current);
+		try{
+			current=filled.take();
+		}catch(InterruptedException ex){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		position=0;
+		if(current.exception!=null){
+			ended=true;
+			if(current.exception instanceof IOException)
+				throw (IOException)current.exception;
+			if(current.exception instanceof RuntimeException)
+				throw (RuntimeException)current.exception;
+			if(current.exception instanceof Error)
+				throw (Error)current.exception;
+			throw new IOException(current.exception);
+		}
+		if(current==END){
+			ended=true;
+			current=null;
+			return false;
+		}
+		return true;
+	}
+	@Override
+	public int read() throws IOException{
+		return fill()?current.data[position++]&0xFF:-1;
+	}
+	@Override
+	public int read(byte[] b,int off,int len) throws IOException{
+		if(len==0)
+			return 0;
+		if(!fill())
+			return -1;
+		int count=Math.min(len,current.length-position);
+		System.arraycopy(current.data,position,b,off,count);
+		position+=count;
+		return count;
+	}
+	@Override
+	public int available(){
+		return current==null?0:current.length-position;
+	}
+	/**
+	 * Stop the reader thread, the source is closed by it
+	 */
+	@Override
+	public void close(){
+		ended=true;
+		current=null;
+		reader.interrupt();
+	}
+	private static class Chunk{
+		private final byte[] data;
+		private int length;
+		private Throwable exception;
+		Chunk(byte[] data){
+			this.data=data;
+		}
+	}
+}
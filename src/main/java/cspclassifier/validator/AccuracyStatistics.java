@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.validator;
+
+import java.util.Locale;
+
+/**
+ * Accuracy of a classifier factory over several datasets, e.g. the folds of
+ * a cross validation
+ * @author S.Welcker
+ */
+public class AccuracyStatistics{
+	private final int count;
+	private final double mean;
+	private final double variance;
+	private final double min;
+	private final double max;
+	/**
+	 * Compute the statistics
+	 * @param accuracies the accuracy on each dataset
+	 */
+	public AccuracyStatistics(double... accuracies){
+		double mean=0,squares=0,min=Double.NaN,max=Double.NaN;
+		for(int i=0;i<accuracies.length;i++){
+			double accuracy=accuracies[i];
+			double delta=accuracy-mean;
+			mean+=delta/(i+1);
+			squares+=delta*(accuracy-mean);
+			min=i==0?accuracy:Math.min(min,accuracy);
+			max=i==0?accuracy:Math.max(max,accuracy);
+		}
+		this.count=accuracies.length;
+		this.mean=count==0?Double.NaN:mean;
+		this.variance=count<2?0:squares/(count-1);
+		this.min=min;
+		this.max=max;
+	}
+	/**
+	 * @return the number of datasets
+	 */
+	public int getCount(){
+		return count;
+	}
+	/**
+	 * @return the mean accuracy
+	 */
+	public double getMean(){
+		return mean;
+	}
+	/**
+	 * @return the sample variance of accuracy
+	 */
+	public double getVariance(){
+		return variance;
+	}
+	/**
+	 * @return the sample standard deviation of accuracy
+	 */
+	public double getStandardDeviation(){
+		return Math.sqrt(variance);
+	}
+	/**
+	 * @return the lowest accuracy
+	 */
+	public double getMin(){
+		return min;
+	}
+	/**
+	 * @return the highest accuracy
+	 */
+	public double getMax(){
+		return max;
+	}
+	@Override
+	public String toString(){
+		return String.format(Locale.ROOT,"%.4f+-%.4f(n=%d min=%.4f max=%.4f)",mean,getStandardDeviation(),count,min,max);
+	}
+}
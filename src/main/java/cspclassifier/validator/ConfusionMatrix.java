@@ -19,22 +19,58 @@ package cspclassifier.validator;
 import cspclassifier.*;
 import cspclassifier.util.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
 /**
- * Confusion matrix
+ * Confusion matrix, it is not thread safe, so each thread should fill its own
+ * matrix and then merge them. Categories are numbered in the order they
+ * appear and the cells are kept in a square array together with the totals
+ * of each row and column, so recording a prediction allocates nothing and
+ * the rates are computed in constant time.
  * @author Chan Chung Kwong, modified by S.Welcker 2019
  */
 public class ConfusionMatrix{
-	private final Frequencies<Pair<Category,Category>> matrix;
+	private final Map<Category,Integer> ordinals=new HashMap<>();
+	private final List<Category> categories=new ArrayList<>();
+	private long[][] matrix=new long[0][];
+	private long[] realTotals=new long[0];
+	private long[] classifiedTotals=new long[0];
+	private long correct;
+	private long total;
 	private long testTime;
+	private long modelBytes=-1;
+	private long classifierBytes=-1;
 	/**
 	 * Create a confusion matrix
 	 */
 	public ConfusionMatrix(){
-		this.matrix=new Frequencies<>(true);
+	}
+	private int getOrdinal(Category category){
+		Integer ordinal=ordinals.get(category);
+		if(ordinal==null){
+			ordinal=categories.size();
+			ordinals.put(category,ordinal);
+			categories.add(category);
+			if(ordinal==matrix.length)
+				grow(Math.max(4,ordinal*2));
+			matrix[ordinal]=new long[matrix.length];
+		}
+		return ordinal;
+	}
+	private void grow(int capacity){
+		long[][] newMatrix=new long[capacity][];
+		for(int i=0;i<matrix.length;i++)
+			newMatrix[i]=matrix[i]==null?null:Arrays.copyOf(matrix[i],capacity);
+		matrix=newMatrix;
+		realTotals=Arrays.copyOf(realTotals,capacity);
+		classifiedTotals=Arrays.copyOf(classifiedTotals,capacity);
 	}
 	/**
 	 * Advance a cell in the matrix by one
@@ -42,7 +78,7 @@ public class ConfusionMatrix{
 	 * @param classified the classified category of a sample
 	 */
 	public void advanceFrequency(Category real,Category classified){
-		matrix.advanceFrequency(new Pair<>(real,classified));
+		advanceFrequency(real,classified,1);
 	}
 	/**
 	 * Advance a cell in the matrix by a given value
@@ -51,7 +87,27 @@ public class ConfusionMatrix{
 	 * @param times to be added
 	 */
 	public void advanceFrequency(Category real,Category classified,long times){
-		matrix.advanceFrequency(new Pair<>(real,classified),times);
+		int i=getOrdinal(real);
+		int j=getOrdinal(classified);
+		matrix[i][j]+=times;
+		realTotals[i]+=times;
+		classifiedTotals[j]+=times;
+		if(i==j)
+			correct+=times;
+		total+=times;
+	}
+	/**
+	 * Add the cells and the test time of another matrix to this matrix, so
+	 * that matrices filled by different threads can be combined
+	 * @param toMerge the source
+	 */
+	public void merge(ConfusionMatrix toMerge){
+		List<Category> others=toMerge.categories;
+		for(int i=0;i<others.size();i++)
+			for(int j=0;j<others.size();j++)
+				if(toMerge.matrix[i][j]!=0)
+					advanceFrequency(others.get(i),others.get(j),toMerge.matrix[i][j]);
+		testTime+=toMerge.testTime;
 	}
 	/**
 	 * @param real the actual category of a sample
@@ -59,14 +115,16 @@ public class ConfusionMatrix{
 	 * @return the number of samples in a category being classified into another category
 	 */
 	public long getFrequency(Category real,Category classified){
-		return matrix.getFrequency(new Pair<>(real,classified));
+		Integer i=ordinals.get(real);
+		Integer j=ordinals.get(classified);
+		return i==null||j==null?0:matrix[i][j];
 	}
 	/**
 	 * Advance total time(millisecond) used for test
 	 * @param testTime to be added
 	 */
 	public void advanceTestTime(long testTime){
-		this.testTime=testTime;
+		this.testTime+=testTime;
 	}
 	/**
 	 * @return total time being used for test
@@ -74,6 +132,39 @@ public class ConfusionMatrix{
 	public long getTestTime(){
 		return testTime;
 	}
+	/**
+	 * Set the estimated memory used by the model and the classifier tested
+	 * @param modelBytes estimated number of bytes used by the model, -1 if unknown
+	 * @param classifierBytes estimated number of bytes used by the classifier, -1 if unknown
+	 */
+	public void setEstimatedBytes(long modelBytes,long classifierBytes){
+		this.modelBytes=modelBytes;
+		this.classifierBytes=classifierBytes;
+	}
+	/**
+	 * @return estimated number of bytes used by the model, -1 if unknown
+	 */
+	public long getModelBytes(){
+		return modelBytes;
+	}
+	/**
+	 * @return estimated number of bytes used by the classifier, -1 if unknown
+	 */
+	public long getClassifierBytes(){
+		return classifierBytes;
+	}
+	/**
+	 * @return accuracy, test time and estimated memory in one line
+	 */
+	public String getSummary(){
+		StringBuilder buf=new StringBuilder();
+		buf.append(getAccuracy()).append(' ').append(getTestTime()).append("ms");
+		if(modelBytes>=0)
+			buf.append(" model:").append(MemoryEstimator.format(modelBytes));
+		if(classifierBytes>=0)
+			buf.append(" classifier:").append(MemoryEstimator.format(classifierBytes));
+		return buf.toString();
+	}
 	/**
 	 * The F1 measure for a category
 	 * @param category the category
@@ -91,12 +182,8 @@ public class ConfusionMatrix{
 	 * divided by the number of samples in the category
 	 */
 	public double getRecall(Category category){
-		Counter total=new Counter();
-		matrix.toMap().forEach((k,v)->{
-			if(Objects.equals(category,k.getKey()))
-				total.advance(v.getCount());
-		});
-		return (matrix.getFrequency(new Pair<>(category,category))+0.0)/total.getCount();
+		Integer i=ordinals.get(category);
+		return i==null?Double.NaN:(matrix[i][i]+0.0)/realTotals[i];
 	}
 	/**
 	 * The precision rate for a category
@@ -105,55 +192,45 @@ public class ConfusionMatrix{
 	 * divided by the number of samples classified into the category
 	 */
 	public double getPrecision(Category category){
-		Counter total=new Counter();
-		matrix.toMap().forEach((k,v)->{
-			if(Objects.equals(category,k.getValue()))
-				total.advance(v.getCount());
-		});
-		return (matrix.getFrequency(new Pair<>(category,category))+0.0)/total.getCount();
+		Integer i=ordinals.get(category);
+		return i==null?Double.NaN:(matrix[i][i]+0.0)/classifiedTotals[i];
 	}
 	/**
 	 * @return the number of test samples correctly classified divided by the number of samples
 	 */
 	public double getAccuracy(){
-		Counter accurate=new Counter();
-		Counter total=new Counter();
-		matrix.toMap().forEach((k,v)->{
-			total.advance(v.getCount());
-			if(Objects.equals(k.getKey(),k.getValue()))
-				accurate.advance(v.getCount());
-		});
-		return (accurate.getCount()+0.0)/total.getCount();
+		return (correct+0.0)/total;
 	}
 	/**
 	 * @return the number of test samples
 	 */
 	public long getTestSampleCount(){
-		Counter total=new Counter();
-		matrix.toMap().forEach((k,v)->{
-			total.advance(v.getCount());
-		});
-		return total.getCount();
+		return total;
 	}
 	/**
 	 * @return Set of categories appeared in the matrix
 	 */
 	public Set<Category> getCategories(){
-		HashSet<Category> categories=new HashSet<>();
-		matrix.toMap().forEach((k,v)->{
-			categories.add(k.getKey());
-			categories.add(k.getValue());
-		});
-		return categories;
+		return new HashSet<>(categories);
 	}
 	@Override
 	public boolean equals(Object obj){
-		return obj instanceof ConfusionMatrix&&Objects.equals(matrix,((ConfusionMatrix)obj).matrix);
+		if(!(obj instanceof ConfusionMatrix)||((ConfusionMatrix)obj).total!=total)
+			return false;
+		ConfusionMatrix other=(ConfusionMatrix)obj;
+		for(int i=0;i<categories.size();i++)
+			for(int j=0;j<categories.size();j++)
+				if(matrix[i][j]!=other.getFrequency(categories.get(i),categories.get(j)))
+					return false;
+		return true;
 	}
 	@Override
 	public int hashCode(){
 		int hash=7;
-		hash=79*hash+Objects.hashCode(this.matrix);
+		for(int i=0;i<categories.size();i++)
+			for(int j=0;j<categories.size();j++)
+				if(matrix[i][j]!=0)
+					hash+=(31*Objects.hashCode(categories.get(i))+Objects.hashCode(categories.get(j)))^Long.hashCode(matrix[i][j]);
 		return hash;
 	}
 	@Override
@@ -166,12 +243,16 @@ public class ConfusionMatrix{
 		for(Category first:categories){
 			buf.append('\n').append(first);
 			for(Category second:categories){
-				buf.append('\t').append(matrix.getFrequency(new Pair<>(first,second)));
+				buf.append('\t').append(getFrequency(first,second));
 			}
 		}
 		buf.append("\nSample:").append(getTestSampleCount());
 		buf.append("\nAccuracy:").append(getAccuracy());
 		buf.append("\nTime:").append(getTestTime());
+		if(modelBytes>=0)
+			buf.append("\nModel:").append(MemoryEstimator.format(modelBytes));
+		if(classifierBytes>=0)
+			buf.append("\nClassifier:").append(MemoryEstimator.format(classifierBytes));
 		return buf.toString();
 	}
 }
\ No newline at end of file
@@ -16,11 +16,28 @@
  */
 package cspclassifier.validator;
 
-import java.util.BitSet;
+import cspclassifier.*;
+
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongPredicate;
+import java.util.function.LongToIntFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Utility being used to divide dataset
@@ -37,8 +54,22 @@ public class DataDivider{
 	 * @return split data set
 	 */
 	public static <T> SplitDataSet<T> randomSplitInRam(DataSet<T> dataset,double trainRatio){
+		return randomSplitInRam(dataset,trainRatio,ThreadLocalRandom.current().nextLong());
+	}
+	/**
+	 * Partition dataset into train set and test set randomly, such that the
+	 * train set is exactly the given ratio and both sets are shuffled.
+	 * All sample are cached in RAM, so randomSplit should be used instead for
+	 * large dataset.
+	 * @param <T> the type of the data
+	 * @param dataset to be divided
+	 * @param trainRatio the ratio of data used for train
+	 * @param seed the same seed gives the same partition and order
+	 * @return split data set
+	 */
+	public static <T> SplitDataSet<T> randomSplitInRam(DataSet<T> dataset,double trainRatio,long seed){
 		List<Sample<T>> list=dataset.getSamples().collect(Collectors.toList());
-		Collections.shuffle(list);//FIXME: all data are loaded to RAM
+		Collections.shuffle(list,new Random(seed));
 		int cut=(int)(list.size()*trainRatio);
 		String name=dataset.getName()+"(train=random"+trainRatio+')';
 		return new SplitDataSet<>(()->list.subList(0,cut).stream(),()->list.subList(cut,list.size()).stream(),name);
@@ -66,20 +97,172 @@ public class DataDivider{
 	 * @return split data set
 	 */
 	public static <T> SplitDataSet<T> randomSplit(DataSet<T> dataset,double trainRatio){
-		int count=(int)dataset.getSamples().count();
-		BitSet bitSet=new BitSet(count);
-		for(int i=0;i<count;i++)
-			bitSet.set(i,Math.random()<trainRatio);
+		return randomSplit(dataset,trainRatio,ThreadLocalRandom.current().nextLong());
+	}
+	/**
+	 * Partition dataset into train set and test set randomly, whether a sample
+	 * is used for train is decided by hashing its index, so the dataset is
+	 * traversed only when the samples are requested
+	 * @param <T> the type of the data
+	 * @param dataset to be divided
+	 * @param trainRatio the ratio of data used for train
+	 * @param seed the same seed gives the same partition
+	 * @return split data set
+	 */
+	public static <T> SplitDataSet<T> randomSplit(DataSet<T> dataset,double trainRatio,long seed){
 		String name=dataset.getName()+"(train=random"+trainRatio+')';
-		return new SplitDataSet<>(()->getTrainStream(bitSet,dataset),()->getTestStream(bitSet,dataset),name);
+		return new SplitDataSet<>(()->filterInOrder(dataset.getSamples(),byIndex((index)->toUnit(hash(seed,index))<trainRatio)),
+				()->filterInOrder(dataset.getSamples(),byIndex((index)->toUnit(hash(seed,index))>=trainRatio)),name);
 	}
-	private static <T> Stream<Sample<T>> getTrainStream(BitSet bitSet,DataSet<T> dataset){
-		int[] index=new int[]{0};
-		return dataset.getSamples().filter((sample)->bitSet.get(index[0]++));
+	/**
+	 * Partition dataset into train set and test set randomly, whether a sample
+	 * is used for train is decided by hashing a key of it, so the partition
+	 * does not depend on the order of samples and each stream is filtered
+	 * independently, in parallel if requested
+	 * @param <T> the type of the data
+	 * @param dataset to be divided
+	 * @param trainRatio the ratio of data used for train
+	 * @param seed the same seed gives the same partition
+	 * @param key extract the key of a sample, e.g. its data or an id. Strings
+	 * and integral numbers are hashed into 64 bits by their content, other
+	 * keys by their hashCode, which should be the same across runs
+	 * @return split data set
+	 */
+	public static <T> SplitDataSet<T> randomSplit(DataSet<T> dataset,double trainRatio,long seed,Function<? super Sample<T>,?> key){
+		String name=dataset.getName()+"(train=random"+trainRatio+')';
+		Predicate<Sample<T>> isTrain=(sample)->toUnit(hash(seed,hashKey(key.apply(sample))))<trainRatio;
+		return new SplitDataSet<>(()->dataset.getSamples().filter(isTrain),()->dataset.getSamples().filter(isTrain.negate()),name);
 	}
-	private static <T> Stream<Sample<T>> getTestStream(BitSet bitSet,DataSet<T> dataset){
-		int[] index=new int[]{0};
-		return dataset.getSamples().filter((sample)->!bitSet.get(index[0]++));
+	/**
+	 * Partition dataset into k folds, the fold of a sample is decided by
+	 * hashing its index, so the folds may differ in size slightly
+	 * @param <T> the type of the data
+	 * @param dataset to be divided
+	 * @param k the number of folds
+	 * @param seed the same seed gives the same partition
+	 * @return for each fold, a split data set that test on the fold and train
+	 * on the other folds
+	 */
+	public static <T> List<SplitDataSet<T>> kFold(DataSet<T> dataset,int k,long seed){
+		return folds(dataset,k,"fold",()->foldByIndex((index)->(int)Long.remainderUnsigned(hash(seed,index),k)));
+	}
+	/**
+	 * Partition dataset into k folds such that each category is divided
+	 * evenly, samples of a category are taken in blocks of k and the samples
+	 * in a block are assigned to different folds by a permutation derived from
+	 * the seed
+	 * @param <T> the type of the data
+	 * @param dataset to be divided
+	 * @param k the number of folds
+	 * @param seed the same seed gives the same partition
+	 * @return for each fold, a split data set that test on the fold and train
+	 * on the other folds
+	 */
+	public static <T> List<SplitDataSet<T>> stratifiedKFold(DataSet<T> dataset,int k,long seed){
+		return folds(dataset,k,"stratified fold",()->{
+			Map<Category,long[]> counters=new HashMap<>();
+			return (sample)->{
+				long index=counters.computeIfAbsent(sample.getCategory(),(key)->new long[1])[0]++;
+				long block=hash(seed^sample.getCategory().hashCode(),index/k);
+				return getPermuted(block,(int)(index%k),k);
+			};
+		});
+	}
+	private static <T> List<SplitDataSet<T>> folds(DataSet<T> dataset,int k,String kind,Supplier<ToIntFunction<Sample<T>>> foldSupplier){
+		if(k<2)
+			throw new IllegalArgumentException("At least 2 folds are required: "+k);
+		List<SplitDataSet<T>> folds=new ArrayList<>(k);
+		for(int i=0;i<k;i++){
+			int fold=i;
+			String name=dataset.getName()+"("+kind+"="+(i+1)+"/"+k+')';
+			folds.add(new SplitDataSet<>(()->filterInOrder(dataset.getSamples(),isNotIn(foldSupplier.get(),fold)),
+					()->filterInOrder(dataset.getSamples(),isIn(foldSupplier.get(),fold)),name));
+		}
+		return folds;
+	}
+	private static <T> Predicate<Sample<T>> isIn(ToIntFunction<Sample<T>> folds,int fold){
+		return (sample)->folds.applyAsInt(sample)==fold;
+	}
+	private static <T> Predicate<Sample<T>> isNotIn(ToIntFunction<Sample<T>> folds,int fold){
+		return (sample)->folds.applyAsInt(sample)!=fold;
+	}
+	/**
+	 * The element at a position of a random permutation of 0..k-1
+	 */
+	private static int getPermuted(long seed,int position,int k){
+		int[] permutation=new int[k];
+		for(int i=0;i<k;i++)
+			permutation[i]=i;
+		for(int i=k-1;i>0;i--){
+			seed=hash(seed,i);
+			int j=(int)Long.remainderUnsigned(seed,i+1);
+			int tmp=permutation[i];
+			permutation[i]=permutation[j];
+			permutation[j]=tmp;
+		}
+		return permutation[position];
+	}
+	private static <T> ToIntFunction<Sample<T>> foldByIndex(LongToIntFunction function){
+		long[] index=new long[1];
+		return (sample)->function.applyAsInt(index[0]++);
+	}
+	private static <T> Predicate<Sample<T>> byIndex(LongPredicate predicate){
+		long[] index=new long[1];
+		return (sample)->predicate.test(index[0]++);
+	}
+	/**
+	 * SplitMix64 finalizer applied to the seed combined with the index
+	 */
+	private static long hash(long seed,long index){
+		long z=seed+(index+1)*0x9E3779B97F4A7C15L;
+		z=(z^(z>>>30))*0xBF58476D1CE4E5B9L;
+		z=(z^(z>>>27))*0x94D049BB133111EBL;
+		return z^(z>>>31);
+	}
+	/**
+	 * 64-bit hash of a key, so that keys with the same 32-bit hashCode are
+	 * not always put on the same side
+	 */
+	private static long hashKey(Object key){
+		if(key instanceof CharSequence){
+			CharSequence chars=(CharSequence)key;
+			long h=0xCBF29CE484222325L;
+			for(int i=0;i<chars.length();i++)
+				h=(h^chars.charAt(i))*0x100000001B3L;
+			return h;
+		}else if(key instanceof Long||key instanceof Integer||key instanceof Short||key instanceof Byte){
+			return ((Number)key).longValue();
+		}else{
+			return Objects.hashCode(key);
+		}
+	}
+	private static double toUnit(long hash){
+		return (hash>>>11)*0x1.0p-53;
+	}
+	/**
+	 * Keep the samples accepted by a predicate, the predicate is called in
+	 * the encounter order of the source from one thread at a time, so it may
+	 * count samples, and the result is correct even if it is processed in
+	 * parallel
+	 */
+	private static <T> Stream<Sample<T>> filterInOrder(Stream<Sample<T>> samples,Predicate<Sample<T>> predicate){
+		Spliterator<Sample<T>> source=samples.sequential().spliterator();
+		Spliterator<Sample<T>> filtered=new Spliterators.AbstractSpliterator<Sample<T>>(Long.MAX_VALUE,Spliterator.ORDERED){
+			private boolean found;
+			@Override
+			public boolean tryAdvance(Consumer<? super Sample<T>> action){
+				found=false;
+				while(!found&&source.tryAdvance((sample)->{
+					if(predicate.test(sample)){
+						action.accept(sample);
+						found=true;
+					}
+				})){
+				}
+				return found;
+			}
+		};
+		return StreamSupport.stream(filtered,false).onClose(samples::close);
 	}
 	/**
 	 * Partition dataset into train set and test set sequentially
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.validator;
+
+import cspclassifier.*;
+import cspclassifier.util.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Loader of UTF-8 files where each line contains a category label, a tab and
+ * a piece of text. The file is memory-mapped and cut into blocks whose lines
+ * are counted in parallel, so the stream of samples is sized and can be
+ * split at any line. Labels are compared as bytes against the labels already
+ * seen, so they are decoded only once per split, and text of samples being
+ * filtered out by category is never decoded.
+ * @author S.Welcker
+ */
+public class LabeledLinesReader{
+	private static final int BLOCK_SIZE=1<<24;
+	private static final int MIN_SPLIT=1<<10;
+	private static final int MAX_CACHED_LABELS=256;
+	private final MappedFile file;
+	private final long[] firstRecords;
+	private LabeledLinesReader(MappedFile file){
+		this.file=file;
+		int blocks=(int)((file.size()+BLOCK_SIZE-1)/BLOCK_SIZE);
+		long[] counts=IntStream.range(0,blocks).parallel().mapToLong(this::countRecords).toArray();
+		firstRecords=new long[blocks+1];
+		for(int i=0;i<blocks;i++)
+			firstRecords[i+1]=firstRecords[i]+counts[i];
+	}
+	/**
+	 * Load samples from a file
+	 * @param path the path to the file
+	 * @return parallel and sized stream of samples
+	 * @throws IOException if the file cannot be mapped
+	 */
+	public static Stream<Sample<String>> labeledLines(Path path) throws IOException{
+		return labeledLines(path,null);
+	}
+	/**
+	 * Load samples of some categories from a file
+	 * @param path the path to the file
+	 * @param categories the categories to be kept, or null to keep all
+	 * @return parallel stream of samples
+	 * @throws IOException if the file cannot be mapped
+	 */
+	public static Stream<Sample<String>> labeledLines(Path path,Predicate<Category> categories) throws IOException{
+		LabeledLinesReader reader=new LabeledLinesReader(new MappedFile(path));
+		return StreamSupport.stream(reader.new Records(0,reader.getRecordCount(),0,categories),true);
+	}
+	/**
+	 * @return the number of lines containing a tab
+	 */
+	private long getRecordCount(){
+		return firstRecords[firstRecords.length-1];
+	}
+	private long getFirstLine(MappedFile.Cursor cursor,int block){
+		if(block==0)
+			return 0;
+		long size=file.size();
+		long p=(long)block*BLOCK_SIZE-1;
+		while(p<size&&cursor.get(p)!='\n')
+			++p;
+		return p+1;
+	}
+	private long countRecords(int block){
+		long size=file.size();
+		long end=Math.min(size,(long)(block+1)*BLOCK_SIZE);
+		long p=getFirstLine(file.cursor(),block);
+		if(p>=end)
+			return 0;
+		byte[] buffer=new byte[1<<16];
+		long count=0;
+		boolean tab=false;
+		while(p<size){
+			int length=file.copy(p,buffer);
+			for(int i=0;i<length;i++){
+				byte c=buffer[i];
+				if(c=='\t'){
+					tab=true;
+				}else if(c=='\n'){
+					if(tab)
+						++count;
+					if(p+i+1>=end)
+						return count;
+					tab=false;
+				}
+			}
+			p+=length;
+		}
+		return tab?count+1:count;
+	}
+	/**
+	 * Find the start of a record
+	 * @param record the index of the record, less than the number of records
+	 * @return the position of the first byte of the line
+	 */
+	private long getRecordStart(MappedFile.Cursor cursor,long record){
+		int low=0,high=firstRecords.length-2;
+		while(low<high){
+			int mid=(low+high+1)>>>1;
+			if(firstRecords[mid]<=record)
+				low=mid;
+			else
+				high=mid-1;
+		}
+		long remaining=record-firstRecords[low];
+		long size=file.size();
+		long p=getFirstLine(cursor,low);
+		while(true){
+			long start=p;
+			boolean tab=false;
+			byte c;
+			for(;p<size&&(c=cursor.get(p))!='\n';p++)
+				if(c=='\t')
+					tab=true;
+			if(tab&&remaining--==0)
+				return start;
+			++p;
+		}
+	}
+	private class Records implements Spliterator<Sample<String>>{
+		private final MappedFile.Cursor cursor=file.cursor();
+		private final Predicate<Category> categories;
+		private long record;
+		private final long end;
+		private long position;
+		private byte[][] labels=new byte[8][];
+		private Category[] labelCategories=new Category[8];
+		private int labelCount;
+		Records(long record,long end,long position,Predicate<Category> categories){
+			this.record=record;
+			this.end=end;
+			this.position=position;
+			this.categories=categories;
+		}
+		@Override
+		public boolean tryAdvance(Consumer<? super Sample<String>> action){
+			long size=file.size();
+			while(record<end){
+				long start=position;
+				long tab=-1;
+				long p=start;
+				byte c;
+				for(;p<size&&(c=cursor.get(p))!='\n';p++)
+					if(c=='\t'&&tab==-1)
+						tab=p;
+				position=p+1;
+				if(tab==-1)
+					continue;
+				++record;
+				Category category=getCategory(start,tab);
+				if(categories!=null&&!categories.test(category))
+					continue;
+				long textEnd=p>tab+1&&cursor.get(p-1)=='\r'?p-1:p;
+				action.accept(new Sample<>(cursor.decode(tab+1,textEnd,StandardCharsets.UTF_8),category));
+				return true;
+			}
+			return false;
+		}
+		private Category getCategory(long start,long end){
+			for(int i=0;i<labelCount;i++)
+				if(cursor.matches(start,end,labels[i]))
+					return labelCategories[i];
+			Category category=new Category(cursor.decode(start,end,StandardCharsets.UTF_8));
+			if(labelCount<MAX_CACHED_LABELS){
+				if(labelCount==labels.length){
+					labels=Arrays.copyOf(labels,labelCount*2);
+					labelCategories=Arrays.copyOf(labelCategories,labelCount*2);
+				}
+				labels[labelCount]=cursor.toBytes(start,end);
+				labelCategories[labelCount]=category;
+				++labelCount;
+			}
+			return category;
+		}
+		@Override
+		public Spliterator<Sample<String>> trySplit(){
+			if(end-record<2*MIN_SPLIT)
+				return null;
+			long middle=record+(end-record)/2;
+			long middlePosition=getRecordStart(cursor,middle);
+			Records prefix=new Records(record,middle,position,categories);
+			record=middle;
+			position=middlePosition;
+			return prefix;
+		}
+		@Override
+		public long estimateSize(){
+			return end-record;
+		}
+		@Override
+		public int characteristics(){
+			return categories==null?ORDERED|NONNULL|SIZED|SUBSIZED:ORDERED|NONNULL;
+		}
+	}
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.validator;
+
+import cspclassifier.*;
+import cspclassifier.util.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Preprocessed samples of a split dataset, so that factories sharing a
+ * preprocessor do not tokenize the same text again. Each sample is
+ * preprocessed once and stored as token ids and counts, either in an int array
+ * or in a temporary file. The cached streams can be read many times and
+ * concurrently.
+ * @author S.Welcker
+ * @param <S> the type of the tokens
+ */
+public class SampleCache<S> implements Closeable{
+	private final List<S> tokens=new ArrayList<>();
+	private final Map<S,Integer> tokenIds=new HashMap<>();
+	private final List<Category> categories=new ArrayList<>();
+	private final Map<Category,Integer> categoryIds=new HashMap<>();
+	private final Segment train;
+	private final Segment test;
+	private final String name;
+	private long testPreprocessTime;
+	private SampleCache(String name,File spillDirectory) throws IOException{
+		this.name=name;
+		this.train=new Segment(spillDirectory);
+		this.test=new Segment(spillDirectory);
+	}
+	/**
+	 * Preprocess the samples of a dataset and cache them
+	 * @param <T> the type of the data before preprocessing
+	 * @param <S> the type of the tokens
+	 * @param dataset the dataset
+	 * @param preprocessor being applied to each sample
+	 * @param spillDirectory the directory where the temporary files are
+	 * created, or null if the samples should be kept in memory
+	 * @return the cache
+	 * @throws IOException if the temporary files cannot be written
+	 */
+	public static <T,S> SampleCache<S> create(SplitDataSet<T> dataset,Function<T,Frequencies<S>> preprocessor,File spillDirectory) throws IOException{
+		SampleCache<S> cache=new SampleCache<>(dataset.getName(),spillDirectory);
+		try{
+			cache.encode(dataset.getTrainSamples(),preprocessor,cache.train);
+			long time=System.currentTimeMillis();
+			cache.encode(dataset.getTestSamples(),preprocessor,cache.test);
+			cache.testPreprocessTime=System.currentTimeMillis()-time;
+		}catch(IOException|UncheckedIOException ex){
+			cache.close();
+			throw ex instanceof UncheckedIOException?((UncheckedIOException)ex).getCause():(IOException)ex;
+		}
+		return cache;
+	}
+	private <T> void encode(Stream<Sample<T>> samples,Function<T,Frequencies<S>> preprocessor,Segment segment) throws IOException{
+		try(Stream<Sample<T>> source=samples){
+			source.parallel().map((sample)->new Sample<>(preprocessor.apply(sample.getData()),sample.getCategory())).
+					forEachOrdered((sample)->{
+						try{
+							encode(sample,segment);
+						}catch(IOException ex){
+							throw new UncheckedIOException(ex);
+						}
+					});
+		}
+		segment.finish();
+	}
+	private void encode(Sample<Frequencies<S>> sample,Segment segment) throws IOException{
+		Integer category=categoryIds.get(sample.getCategory());
+		if(category==null){
+			category=categories.size();
+			categories.add(sample.getCategory());
+			categoryIds.put(sample.getCategory(),category);
+		}
+		Map<S,Counter> frequencies=sample.getData().toMap();
+		segment.write(category);
+		segment.write(frequencies.size());
+		for(Map.Entry<S,Counter> entry:frequencies.entrySet()){
+			Integer id=tokenIds.get(entry.getKey());
+			if(id==null){
+				id=tokens.size();
+				tokens.add(entry.getKey());
+				tokenIds.put(entry.getKey(),id);
+			}
+			segment.write(id);
+			segment.write((int)Math.min(entry.getValue().getCount(),Integer.MAX_VALUE));
+		}
+		++segment.count;
+	}
+	/**
+	 * @return the preprocessed train samples
+	 */
+	public Stream<Sample<Frequencies<S>>> getTrainSamples(){
+		return decode(train);
+	}
+	/**
+	 * @return the preprocessed test samples
+	 */
+	public Stream<Sample<Frequencies<S>>> getTestSamples(){
+		return decode(test);
+	}
+	/**
+	 * @return the time in milliseconds spent preprocessing the test samples
+	 */
+	public long getTestPreprocessTime(){
+		return testPreprocessTime;
+	}
+	/**
+	 * @return a dataset backed by this cache
+	 */
+	public SplitDataSet<Frequencies<S>> toSplitDataSet(){
+		return new SplitDataSet<>(this::getTrainSamples,this::getTestSamples,name);
+	}
+	/**
+	 * @return the number of distinct tokens
+	 */
+	public int getVocabularySize(){
+		return tokens.size();
+	}
+	private Stream<Sample<Frequencies<S>>> decode(Segment segment){
+		Segment.Reader reader=segment.open();
+		Iterator<Sample<Frequencies<S>>> iterator=new Iterator<Sample<Frequencies<S>>>(){
+			private int remaining=segment.count;
+			@Override
+			public boolean hasNext(){
+				return remaining>0;
+			}
+			@Override
+			public Sample<Frequencies<S>> next(){
+				if(remaining<=0)
+					throw new NoSuchElementException();
+				--remaining;
+				Category category=categories.get(reader.read());
+				int size=reader.read();
+				Map<S,Counter> frequencies=new HashMap<>(size*4/3+1);
+				for(int i=0;i<size;i++){
+					S token=tokens.get(reader.read());
+					frequencies.put(token,new Counter(reader.read()));
+				}
+				return new Sample<>(new Frequencies<>(frequencies),category);
+			}
+		};
+		return StreamSupport.stream(Spliterators.spliterator(iterator,segment.count,Spliterator.ORDERED|Spliterator.NONNULL),false).onClose(reader::close);
+	}
+	/**
+	 * Delete the temporary files
+	 */
+	@Override
+	public void close(){
+		train.delete();
+		test.delete();
+	}
+	@Override
+	public String toString(){
+		return name;
+	}
+	private static class Segment{
+		private int[] buffer;
+		private int size;
+		private final File file;
+		private DataOutputStream out;
+		private int count;
+		Segment(File spillDirectory) throws IOException{
+			if(spillDirectory!=null){
+				file=File.createTempFile("samples",".bin",spillDirectory);
+				out=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			}else{
+				file=null;
+				buffer=new int[1024];
+			}
+		}
+		void write(int value) throws IOException{
+			if(file!=null){
+				out.writeInt(value);
+			}else{
+				if(size==buffer.length)
+					buffer=Arrays.copyOf(buffer,size*2);
+				buffer[size++]=value;
+			}
+		}
+		void finish() throws IOException{
+			if(file!=null)
+				out.close();
+			else
+				buffer=Arrays.copyOf(buffer,size);
+		}
+		Reader open(){
+			if(file==null){
+				return new Reader(){
+					private int index=0;
+					@Override
+					public int read(){
+						return buffer[index++];
+					}
+				};
+			}
+			try{
+				DataInputStream in=new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+				return new Reader(){
+					@Override
+					public int read(){
+						try{
+							return in.readInt();
+						}catch(EOFException ex){
+							throw new NoSuchElementException();
+						}catch(IOException ex){
+							throw new UncheckedIOException(ex);
+						}
+					}
+					@Override
+					public void close(){
+						try{
+							in.close();
+						}catch(IOException ex){
+							throw new UncheckedIOException(ex);
+						}
+					}
+				};
+			}catch(IOException ex){
+				throw new UncheckedIOException(ex);
+			}
+		}
+		void delete(){
+			try{
+				if(out!=null)
+					out.close();
+			}catch(IOException ex){
+				Logger.getLogger(SampleCache.class.getName()).log(Level.SEVERE,null,ex);
+			}
+			if(file!=null)
+				file.delete();
+		}
+		private interface Reader{
+			int read();
+			default void close(){
+			}
+		}
+	}
+}
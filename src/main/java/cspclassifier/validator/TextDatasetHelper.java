@@ -19,37 +19,64 @@ package cspclassifier.validator;
 import cspclassifier.*;
 import cspclassifier.util.*;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 /**
- * Utility being used to load textual data
+ * Utility being used to load textual data. Files whose name ends with .gz are
+ * decompressed on the fly by a dedicated reader thread, the streams of such
+ * files are sequential.
  * @author Chan Chung Kwong, modified by S.Welcker 2019
  */
 public class TextDatasetHelper{
 	/**
 	 * Load samples from a text file where each line provide one record,
-	 * Each line contains a category label ,a tab and a piece of text data
+	 * Each line contains a category label ,a tab and a piece of text data.
+	 * Unless compressed, the file is memory-mapped and parsed in parallel, so
+	 * the stream is parallel, ordered and sized.
 	 * @param path the path to the file
 	 * @return the samples stream
 	 */
 	public static Stream<Sample<String>> labeledLines(Path path){
+		return labeledLines(path,null);
+	}
+	/**
+	 * Load samples of some categories from a text file where each line
+	 * provide one record, Each line contains a category label ,a tab and a
+	 * piece of text data. Unless compressed, the file is memory-mapped and
+	 * parsed in parallel, so the stream is parallel but ordered.
+	 * @param path the path to the file
+	 * @param categories the categories to be kept, or null to keep all
+	 * @return the samples stream
+	 */
+	public static Stream<Sample<String>> labeledLines(Path path,Predicate<Category> categories){
 		try{
-			return Files.lines(path).filter((line)->line.indexOf('\t')!=-1).map((line)->{
-				int i=line.indexOf('\t');
-				return new Sample<>(line.substring(i+1,line.length()),new Category(line.substring(0,i)));
-			});
+			if(isGzip(path))
+				return lines(path).filter((line)->line.indexOf('\t')!=-1).map((line)->{
+					int i=line.indexOf('\t');
+					return new Sample<>(line.substring(i+1,line.length()),new Category(line.substring(0,i)));
+				}).filter((sample)->categories==null||categories.test(sample.getCategory()));
+			return LabeledLinesReader.labeledLines(path,categories);
 		}catch(IOException ex){
 			Logger.getLogger(TextDatasetHelper.class.getName()).log(Level.SEVERE,null,ex);
 			return Stream.empty();
 		}
 	}
 	/**
-	 * Load samples from a CSV file where each row provide one record
+	 * Load samples from a UTF-8 CSV file where each row provide one record,
+	 * unless compressed, the file is memory-mapped and parsed in parallel, so
+	 * the stream is parallel but ordered
 	 * @param path the path to the file
 	 * @param categoryField the index of category field
 	 * @param dataField the index of data field
@@ -60,7 +87,9 @@ public class TextDatasetHelper{
 	 */
 	public static Stream<Sample<String>> csvRecords(Path path,int dataField,int categoryField,boolean skipHeader,char separator,char quotationMark){
 		try{
-			return CsvParser.parse(Files.lines(path),skipHeader,separator,quotationMark).
+			Stream<List<String>> records=isGzip(path)?CsvParser.parse(lines(path),skipHeader,separator,quotationMark)
+					:MappedCsvReader.parse(path,skipHeader,separator,quotationMark);
+			return records.
 					map((record)->new Sample<>(record.get(dataField),new Category(record.get(categoryField))));
 		}catch(IOException ex){
 			Logger.getLogger(TextDatasetHelper.class.getName()).log(Level.SEVERE,null,ex);
@@ -68,19 +97,40 @@ public class TextDatasetHelper{
 		}
 	}
 	/**
-	 * Load samples from a CSV file where each row provide one record
+	 * Load samples from a UTF-8 CSV file with header where each row provide
+	 * one record, unless compressed, the file is memory-mapped and parsed in
+	 * parallel, so the stream is parallel but ordered
 	 * @param path the path to the file
 	 * @param categoryField the index of category field
 	 * @param dataField the index of data field
 	 * @return the samples stream
 	 */
 	public static Stream<Sample<String>> csvRecords(Path path,int dataField,int categoryField){
-		try{
-			return CsvParser.parse(Files.lines(path)).
-					map((record)->new Sample<>(record.get(dataField),new Category(record.get(categoryField))));
-		}catch(IOException ex){
-			Logger.getLogger(TextDatasetHelper.class.getName()).log(Level.SEVERE,null,ex);
-			return Stream.empty();
-		}
+		return csvRecords(path,dataField,categoryField,true,',','"');
+	}
+	/**
+	 * @param path the path to the file
+	 * @return if the file is gzip compressed, judging from the name
+	 */
+	private static boolean isGzip(Path path){
+		return path.getFileName().toString().endsWith(".gz");
+	}
+	/**
+	 * Read lines of a gzip compressed UTF-8 file, decompression runs ahead on
+	 * a dedicated thread
+	 * @param path the path to the file
+	 * @return the lines, the stream should be closed
+	 * @throws IOException if the file cannot be opened
+	 */
+	private static Stream<String> lines(Path path) throws IOException{
+		InputStream in=new PrefetchInputStream(new GZIPInputStream(Files.newInputStream(path),1<<16));
+		BufferedReader reader=new BufferedReader(new InputStreamReader(in,StandardCharsets.UTF_8),1<<16);
+		return reader.lines().onClose(()->{
+			try{
+				reader.close();
+			}catch(IOException ex){
+				Logger.getLogger(TextDatasetHelper.class.getName()).log(Level.SEVERE,null,ex);
+			}
+		});
 	}
 }
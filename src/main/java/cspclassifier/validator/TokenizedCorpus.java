@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier.validator;
+
+import cspclassifier.*;
+import cspclassifier.util.*;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Preprocessed corpus stored in a directory, so that repeated training runs
+ * need not to parse and tokenize the raw data again. The directory contains:
+ * <ul>
+ * <li>samples.bin: a header and then for each sample the category ordinal,
+ * the number of distinct tokens and the id and count of each token, all as
+ * big-endian ints</li>
+ * <li>tokens.txt: the encoded token of each id, one per line</li>
+ * <li>categories.txt: the name and the number of samples of each category
+ * separated by a tab, one per line</li>
+ * </ul>
+ * Samples are read through a memory-mapped file sequentially.
+ * @author S.Welcker
+ * @param <S> the type of the tokens
+ */
+public class TokenizedCorpus<S>{
+	private static final String SAMPLES="samples.bin";
+	private static final String TOKENS="tokens.txt";
+	private static final String CATEGORIES="categories.txt";
+	private static final int MAGIC=0x43535054;
+	private static final int VERSION=1;
+	private static final int HEADER_SIZE=8;
+	private final MappedFile samples;
+	private final List<S> tokens;
+	private final List<Category> categories;
+	private final long[] sampleCounts;
+	private TokenizedCorpus(MappedFile samples,List<S> tokens,List<Category> categories,long[] sampleCounts){
+		this.samples=samples;
+		this.tokens=tokens;
+		this.categories=categories;
+		this.sampleCounts=sampleCounts;
+	}
+	/**
+	 * Preprocess samples and write them to a directory
+	 * @param <T> the type of the data before preprocessing
+	 * @param <S> the type of the tokens
+	 * @param samples the samples, preprocessing is done in parallel if the
+	 * stream is parallel
+	 * @param preprocessor being applied to each sample
+	 * @param directory where the corpus will be saved to
+	 * @param encoder encode token to String without new line
+	 * @throws IOException if the corpus cannot be written
+	 */
+	public static <T,S> void write(Stream<Sample<T>> samples,Function<T,Frequencies<S>> preprocessor,File directory,Function<S,String> encoder) throws IOException{
+		directory.mkdirs();
+		Map<S,Integer> tokenIds=new LinkedHashMap<>();
+		Map<Category,Integer> categoryIds=new LinkedHashMap<>();
+		List<long[]> sampleCounts=new ArrayList<>();
+		try(DataOutputStream out=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(directory,SAMPLES)),1<<16));
+				Stream<Sample<T>> source=samples){
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			source.map((sample)->new Sample<>(preprocessor.apply(sample.getData()),sample.getCategory())).forEachOrdered((sample)->{
+				Integer category=categoryIds.get(sample.getCategory());
+				if(category==null){
+					category=categoryIds.size();
+					categoryIds.put(sample.getCategory(),category);
+					sampleCounts.add(new long[1]);
+				}
+				++sampleCounts.get(category)[0];
+				try{
+					Map<S,Counter> frequencies=sample.getData().toMap();
+					out.writeInt(category);
+					out.writeInt(frequencies.size());
+					for(Map.Entry<S,Counter> entry:frequencies.entrySet()){
+						Integer id=tokenIds.get(entry.getKey());
+						if(id==null){
+							id=tokenIds.size();
+							tokenIds.put(entry.getKey(),id);
+						}
+						out.writeInt(id);
+						out.writeInt((int)Math.min(entry.getValue().getCount(),Integer.MAX_VALUE));
+					}
+				}catch(IOException ex){
+					throw new UncheckedIOException(ex);
+				}
+			});
+		}catch(UncheckedIOException ex){
+			throw ex.getCause();
+		}
+		Files.write(new File(directory,TOKENS).toPath(),tokenIds.keySet().stream().map((token)->(CharSequence)encoder.apply(token))::iterator,StandardCharsets.UTF_8);
+		Files.write(new File(directory,CATEGORIES).toPath(),categoryIds.entrySet().stream().
+				map((e)->(CharSequence)(e.getKey().getName()+"\t"+sampleCounts.get(e.getValue())[0]))::iterator,StandardCharsets.UTF_8);
+	}
+	/**
+	 * Open a corpus written by write
+	 * @param <S> the type of the tokens
+	 * @param directory where the corpus is saved to
+	 * @param decoder decode String to token
+	 * @return the corpus
+	 * @throws IOException if the corpus cannot be read
+	 */
+	public static <S> TokenizedCorpus<S> open(File directory,Function<String,S> decoder) throws IOException{
+		MappedFile samples=new MappedFile(new File(directory,SAMPLES).toPath());
+		MappedFile.Cursor cursor=samples.cursor();
+		if(samples.size()<HEADER_SIZE||cursor.getInt(0)!=MAGIC||cursor.getInt(4)!=VERSION)
+			throw new IOException("Not a tokenized corpus: "+directory);
+		List<S> tokens;
+		try(Stream<String> lines=Files.lines(new File(directory,TOKENS).toPath(),StandardCharsets.UTF_8)){
+			tokens=lines.map(decoder).collect(Collectors.toList());
+		}
+		List<Category> categories=new ArrayList<>();
+		List<String> lines=Files.readAllLines(new File(directory,CATEGORIES).toPath(),StandardCharsets.UTF_8);
+		long[] sampleCounts=new long[lines.size()];
+		for(String line:lines){
+			int i=line.lastIndexOf('\t');
+			sampleCounts[categories.size()]=Long.parseLong(line.substring(i+1));
+			categories.add(new Category(line.substring(0,i)));
+		}
+		return new TokenizedCorpus<>(samples,tokens,categories,sampleCounts);
+	}
+	/**
+	 * @return the samples in the order they were written
+	 */
+	public Stream<Sample<Frequencies<S>>> getSamples(){
+		MappedFile.Cursor cursor=samples.cursor();
+		long size=samples.size();
+		Iterator<Sample<Frequencies<S>>> iterator=new Iterator<Sample<Frequencies<S>>>(){
+			private long position=HEADER_SIZE;
+			@Override
+			public boolean hasNext(){
+				return position<size;
+			}
+			@Override
+			public Sample<Frequencies<S>> next(){
+				if(position>=size)
+					throw new NoSuchElementException();
+				Category category=categories.get(cursor.getInt(position));
+				int length=cursor.getInt(position+4);
+				position+=8;
+				Map<S,Counter> frequencies=new HashMap<>(length*4/3+1);
+				for(int i=0;i<length;i++,position+=8)
+					frequencies.put(tokens.get(cursor.getInt(position)),new Counter(cursor.getInt(position+4)));
+				return new Sample<>(new Frequencies<>(frequencies),category);
+			}
+		};
+		return StreamSupport.stream(Spliterators.spliterator(iterator,getSampleCount(),Spliterator.ORDERED|Spliterator.NONNULL),false);
+	}
+	/**
+	 * @param name the name of the dataset
+	 * @return a dataset backed by this corpus
+	 */
+	public DataSet<Frequencies<S>> toDataSet(String name){
+		return new DataSet<>(this::getSamples,name);
+	}
+	/**
+	 * @return the number of samples
+	 */
+	public long getSampleCount(){
+		long count=0;
+		for(long sampleCount:sampleCounts)
+			count+=sampleCount;
+		return count;
+	}
+	/**
+	 * @param category the category
+	 * @return the number of samples in the category
+	 */
+	public long getSampleCount(Category category){
+		int i=categories.indexOf(category);
+		return i==-1?0:sampleCounts[i];
+	}
+	/**
+	 * @return the categories in the order they first appear
+	 */
+	public List<Category> getCategories(){
+		return Collections.unmodifiableList(categories);
+	}
+	/**
+	 * @return the number of distinct tokens
+	 */
+	public int getVocabularySize(){
+		return tokens.size();
+	}
+}
@@ -19,25 +19,94 @@ package cspclassifier.validator;
 import cspclassifier.*;
 import cspclassifier.util.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
- * Validator being used to evaluate classifier
+ * Validator being used to evaluate classifier, it is thread safe. By default
+ * the (dataset, factory) pairs are evaluated concurrently and the test
+ * samples are scored in parallel, so the classifiers being tested must be
+ * thread safe. TokenStreamClassifierFactory sharing the same tokenizer are
+ * trained and tested from a SampleCache, so each sample is tokenized once.
  * @author Chan Chung Kwong, modified by S.Welcker 2019
  * @param <T> the type of object to be classified
  */
 public class Validator<T>{
-	private final Map<Pair<ClassifierFactory,SplitDataSet<T>>,ConfusionMatrix> matrices=new HashMap<>();
+	private final Map<Pair<ClassifierFactory<?,?,T>,SplitDataSet<T>>,ConfusionMatrix> matrices=new ConcurrentHashMap<>();
+	private volatile boolean parallel=true;
+	private volatile boolean cacheSamples=true;
+	private volatile File spillDirectory;
 	/**
 	 * Create a validator
 	 */
 	public Validator(){
 	}
+	/**
+	 * Set if the validation should use multiple threads
+	 * @param parallel if false, factories are evaluated one by one and test
+	 * samples are scored in order on the calling thread
+	 * @return this
+	 */
+	public Validator<T> setParallel(boolean parallel){
+		this.parallel=parallel;
+		return this;
+	}
+	/**
+	 * @return if the validation use multiple threads
+	 */
+	public boolean isParallel(){
+		return parallel;
+	}
+	/**
+	 * Set if samples should be preprocessed once for all TokenStreamClassifierFactory
+	 * sharing the same tokenizer, the time spent preprocessing the test
+	 * samples once is added to the test time of each of them, so that it can
+	 * still be compared with the test time of other factories
+	 * @param cacheSamples if a SampleCache should be used
+	 * @return this
+	 */
+	public Validator<T> setCacheSamples(boolean cacheSamples){
+		this.cacheSamples=cacheSamples;
+		return this;
+	}
+	/**
+	 * @return if samples are preprocessed once for factories sharing a tokenizer
+	 */
+	public boolean isCacheSamples(){
+		return cacheSamples;
+	}
+	/**
+	 * Set the directory where cached samples are written
+	 * @param spillDirectory the directory, or null to keep cached samples in memory
+	 * @return this
+	 */
+	public Validator<T> setSpillDirectory(File spillDirectory){
+		this.spillDirectory=spillDirectory;
+		return this;
+	}
+	/**
+	 * @return the directory where cached samples are written, null if they are
+	 * kept in memory
+	 */
+	public File getSpillDirectory(){
+		return spillDirectory;
+	}
 	/**
 	 * Generate confusion matrix for specified datasets and classifier 
 	 * factories
@@ -45,16 +114,156 @@ public class Validator<T>{
 	 * @param factories
 	 */
 	public void validate(SplitDataSet<T>[] datasets,ClassifierFactory<? extends Classifier<T>,? extends Trainable<T>,T>[] factories){
-		for(SplitDataSet<T> dataset:datasets){
-			for(ClassifierFactory<? extends Classifier<T>,? extends Trainable<T>,T> factory:factories){
-				validate(dataset,factory);
+		validate(Arrays.asList(datasets),Arrays.asList(factories));
+	}
+	/**
+	 * Generate confusion matrix for specified datasets and classifier
+	 * factories
+	 * @param datasets
+	 * @param factories
+	 * @throws UncheckedIOException if the samples cannot be cached
+	 */
+	public void validate(List<SplitDataSet<T>> datasets,List<? extends ClassifierFactory<? extends Classifier<T>,? extends Trainable<T>,T>> factories){
+		List<SharedCache> caches=new ArrayList<>();
+		try{
+			List<Runnable> jobs=new ArrayList<>();
+			for(SplitDataSet<T> dataset:datasets){
+				Map<Function<T,?>,SharedCache> datasetCaches=cacheSamples?createCaches(dataset,factories):Collections.emptyMap();
+				caches.addAll(datasetCaches.values());
+				for(ClassifierFactory<? extends Classifier<T>,? extends Trainable<T>,T> factory:factories){
+					SharedCache cache=factory instanceof TokenStreamClassifierFactory?datasetCaches.get(((TokenStreamClassifierFactory<?,?,?>)factory).getTokenizer()):null;
+					if(cache!=null)
+						jobs.add(()->{
+							try{
+								validateCached(dataset,(TokenStreamClassifierFactory<?,?,?>)factory,cache.acquire());
+							}finally{
+								cache.release();
+							}
+						});
+					else
+						jobs.add(()->validate(dataset,factory));
+				}
 			}
+			Stream<Runnable> stream=jobs.stream();
+			if(parallel)
+				stream=stream.parallel();
+			stream.forEach(Runnable::run);
+		}finally{
+			caches.forEach(SharedCache::close);
 		}
 	}
+	private Map<Function<T,?>,SharedCache> createCaches(SplitDataSet<T> dataset,List<? extends ClassifierFactory<?,?,T>> factories){
+		Map<Function<T,?>,List<TokenStreamClassifierFactory<?,T,?>>> groups=new IdentityHashMap<>();
+		for(ClassifierFactory<?,?,T> factory:factories)
+			if(factory instanceof TokenStreamClassifierFactory){
+				TokenStreamClassifierFactory<?,T,?> streamFactory=asTokenStreamFactory(factory);
+				groups.computeIfAbsent(streamFactory.getTokenizer(),(key)->new ArrayList<>()).add(streamFactory);
+			}
+		Map<Function<T,?>,SharedCache> caches=new IdentityHashMap<>();
+		for(Map.Entry<Function<T,?>,List<TokenStreamClassifierFactory<?,T,?>>> group:groups.entrySet()){
+			if(group.getValue().size()>1)
+				caches.put(group.getKey(),new SharedCache(dataset,group.getValue().get(0),group.getValue().size()));
+		}
+		return caches;
+	}
+	/**
+	 * SampleCache of a dataset shared by the factories with the same
+	 * tokenizer, it is created by the first of them to run and closed when
+	 * the last of them finishes, so that only the datasets being validated
+	 * are cached at the same time
+	 */
+	private final class SharedCache{
+		private final SplitDataSet<T> dataset;
+		private final TokenStreamClassifierFactory<?,T,?> factory;
+		private int users;
+		private SampleCache<?> cache;
+		SharedCache(SplitDataSet<T> dataset,TokenStreamClassifierFactory<?,T,?> factory,int users){
+			this.dataset=dataset;
+			this.factory=factory;
+			this.users=users;
+		}
+		synchronized SampleCache<?> acquire(){
+			if(cache==null){
+				try{
+					cache=create(factory);
+				}catch(IOException ex){
+					throw new UncheckedIOException(ex);
+				}
+			}
+			return cache;
+		}
+		private <S> SampleCache<S> create(TokenStreamClassifierFactory<?,T,S> factory) throws IOException{
+			return SampleCache.create(dataset,factory.getPreprocessor(),spillDirectory);
+		}
+		synchronized void release(){
+			if(--users==0)
+				close();
+		}
+		synchronized void close(){
+			if(cache!=null){
+				cache.close();
+				cache=null;
+			}
+		}
+	}
+	/**
+	 * A factory building Classifier&lt;T&gt; preprocesses objects of type T
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> TokenStreamClassifierFactory<?,T,?> asTokenStreamFactory(ClassifierFactory<?,?,T> factory){
+		return (TokenStreamClassifierFactory<?,T,?>)factory;
+	}
+	/**
+	 * The cache was created with the preprocessor of the factory, so that the
+	 * types of the tokens match
+	 */
+	@SuppressWarnings("unchecked")
+	private <M extends Trainable<Frequencies<S>>,S> void validateCached(SplitDataSet<T> dataset,TokenStreamClassifierFactory<M,?,S> classifierFactory,SampleCache<?> cache){
+		validate(dataset,(TokenStreamClassifierFactory<M,T,S>)classifierFactory,(SampleCache<S>)cache);
+	}
+	private <M extends Trainable<Frequencies<S>>,S> void validate(SplitDataSet<T> dataset,TokenStreamClassifierFactory<M,T,S> classifierFactory,SampleCache<S> cache){
+		ClassifierFactory<? extends Classifier<Frequencies<S>>,M,Frequencies<S>> baseFactory=classifierFactory.getBaseFactory();
+		M model=baseFactory.createModel();
+		try(Stream<Sample<Frequencies<S>>> samples=cache.getTrainSamples()){
+			model.train(samples);
+		}
+		Classifier<Frequencies<S>> classifier=baseFactory.getClassifier(model);
+		ConfusionMatrix matrix;
+		try(Stream<Sample<Frequencies<S>>> samples=cache.getTestSamples()){
+			matrix=validate(samples,classifier);
+		}
+		matrix.advanceTestTime(cache.getTestPreprocessTime());
+		matrix.setEstimatedBytes(MemoryAccountable.estimatedBytes(model),MemoryAccountable.estimatedBytes(classifier));
+		matrices.put(new Pair<>(classifierFactory,dataset),matrix);
+	}
+	/**
+	 * Cross validate classifier factories, the folds are trained and
+	 * evaluated in parallel like any other datasets
+	 * @param folds the folds, e.g. generated by DataDivider.kFold
+	 * @param factories
+	 * @return the accuracy of each factory over the folds
+	 */
+	public Map<ClassifierFactory<?,?,T>,AccuracyStatistics> crossValidate(List<SplitDataSet<T>> folds,List<? extends ClassifierFactory<? extends Classifier<T>,? extends Trainable<T>,T>> factories){
+		validate(folds,factories);
+		Map<ClassifierFactory<?,?,T>,AccuracyStatistics> statistics=new LinkedHashMap<>();
+		for(ClassifierFactory<?,?,T> factory:factories)
+			statistics.put(factory,getAccuracyStatistics(factory,folds));
+		return statistics;
+	}
+	/**
+	 * @param factory the classifier factory
+	 * @param datasets the datasets
+	 * @return the accuracy of the factory over the datasets that have been
+	 * validated
+	 */
+	public AccuracyStatistics getAccuracyStatistics(ClassifierFactory<?,?,T> factory,List<SplitDataSet<T>> datasets){
+		return new AccuracyStatistics(datasets.stream().map((dataset)->getFrequency(factory,dataset)).
+				filter(Objects::nonNull).mapToDouble(ConfusionMatrix::getAccuracy).toArray());
+	}
 	/**
 	 * @return Set of ClassifierFactory appeared in the matrix
 	 */
-	public Set<ClassifierFactory> getClassifierFactories(){
+	public Set<ClassifierFactory<?,?,T>> getClassifierFactories(){
 		return matrices.keySet().stream().map((e)->e.getKey()).collect(Collectors.toSet());
 	}
 	/**
@@ -68,7 +277,7 @@ public class Validator<T>{
 	 * @param dataset the dataset
 	 * @return the confusion matrix
 	 */
-	public ConfusionMatrix getFrequency(ClassifierFactory factory,SplitDataSet<T> dataset){
+	public ConfusionMatrix getFrequency(ClassifierFactory<?,?,T> factory,SplitDataSet<T> dataset){
 		return matrices.get(new Pair<>(factory,dataset));
 	}
 	/**
@@ -77,16 +286,41 @@ public class Validator<T>{
 	 * @param classifierFactory the factory for classifier being tested
 	 * @return confusion matrix
 	 */
-	public ConfusionMatrix validate(SplitDataSet<T> dataset,ClassifierFactory classifierFactory){
+	public ConfusionMatrix validate(SplitDataSet<T> dataset,ClassifierFactory<? extends Classifier<T>,? extends Trainable<T>,T> classifierFactory){
 		ConfusionMatrix matrix=validate(dataset.getTrainSamples(),dataset.getTestSamples(),classifierFactory);
 		matrices.put(new Pair<>(classifierFactory,dataset),matrix);
 		return matrix;
 	}
+	/**
+	 * Generate confusion matrices of a cascade classifier for some thresholds,
+	 * the model is trained once and the test time of each matrix shows the
+	 * cost of the escalations at that threshold
+	 * @param <M1> the type of the model of the cheap stage
+	 * @param <M2> the type of the model of the expensive stage
+	 * @param <S> the type of the objects after preprocessing
+	 * @param dataset the dataset
+	 * @param preprocessor being applied to the data before classification
+	 * @param classifierFactory the factory for the cascade classifier
+	 * @param thresholds the thresholds to be tested
+	 * @return confusion matrix for each threshold
+	 */
+	public <M1 extends Trainable<S>,M2 extends Trainable<S>,S> Map<Double,ConfusionMatrix> validateThresholds(SplitDataSet<T> dataset,
+			Function<T,S> preprocessor,CascadeClassifierFactory<M1,M2,S> classifierFactory,double... thresholds){
+		CascadeClassifierFactory.CascadeModel<M1,M2,S> model=classifierFactory.createModel();
+		model.train(dataset.getTrainSamples().map((sample)->new Sample<>(preprocessor.apply(sample.getData()),sample.getCategory())));
+		CascadeClassifierFactory.CascadeClassifier<S> classifier=classifierFactory.getClassifier(model);
+		Map<Double,ConfusionMatrix> result=new TreeMap<>();
+		for(double threshold:thresholds){
+			Classifier<S> candidate=classifier.withThreshold(threshold);
+			result.put(threshold,validate(dataset.getTestSamples(),(T object,int max)->candidate.getCandidates(preprocessor.apply(object),max)));
+		}
+		return result;
+	}
 	/**
 	 * @return the ClassifierFactory that produce the most accurate results
 	 */
-	public ClassifierFactory selectMostAccurate(){
-		Map<ClassifierFactory,Double> worst=new HashMap<>();
+	public ClassifierFactory<?,?,T> selectMostAccurate(){
+		Map<ClassifierFactory<?,?,T>,Double> worst=new HashMap<>();
 		matrices.forEach((k,v)->{
 			Double o=worst.get(k.getKey());
 			double accuracy=v.getAccuracy();
@@ -98,7 +332,7 @@ public class Validator<T>{
 	}
 	@Override
 	public boolean equals(Object obj){
-		return obj instanceof Validator&&Objects.equals(matrices,((Validator)obj).matrices);
+		return obj instanceof Validator&&Objects.equals(matrices,((Validator<?>)obj).matrices);
 	}
 	@Override
 	public int hashCode(){
@@ -108,43 +342,43 @@ public class Validator<T>{
 	}
 	@Override
 	public String toString(){
-		ClassifierFactory[] factories=getClassifierFactories().toArray(new ClassifierFactory[0]);
-		SplitDataSet[] datasets=getDatasets().toArray(new SplitDataSet[0]);
+		Set<ClassifierFactory<?,?,T>> factories=getClassifierFactories();
+		Set<SplitDataSet<T>> datasets=getDatasets();
 		StringBuilder buf=new StringBuilder("\n");
 		matrices.forEach((k,v)->{
 			buf.append("\n\n").append(k.getKey()).append('-').append(k.getValue()).append("\n");
 			buf.append(Objects.toString(v));
 		});
 		buf.append("\n\nsummary:\n");
-		for(SplitDataSet dataSet:datasets){
+		for(SplitDataSet<T> dataSet:datasets){
 			buf.append('\t').append(dataSet.getName());
 		}
-		for(ClassifierFactory first:factories){
+		for(ClassifierFactory<?,?,T> first:factories){
 			buf.append('\n').append(first);
 			for(SplitDataSet<T> second:datasets){
 				ConfusionMatrix matrix=matrices.get(new Pair<>(first,second));
 				buf.append('\t');
 				if(matrix!=null)
-					buf.append(matrix.getAccuracy());
+					buf.append(matrix.getSummary());
 			}
 		}
 		return buf.toString();
 	}
 	public String printSummary(){
-		ClassifierFactory[] factories=getClassifierFactories().toArray(new ClassifierFactory[0]);
-		SplitDataSet[] datasets=getDatasets().toArray(new SplitDataSet[0]);
+		Set<ClassifierFactory<?,?,T>> factories=getClassifierFactories();
+		Set<SplitDataSet<T>> datasets=getDatasets();
 		StringBuilder buf=new StringBuilder("\n");
 		buf.append("\nsummary:");
-		for(SplitDataSet dataSet:datasets){
+		for(SplitDataSet<T> dataSet:datasets){
 			buf.append('\t').append(dataSet.getName());
 		}
-		for(ClassifierFactory first:factories){
+		for(ClassifierFactory<?,?,T> first:factories){
 			buf.append('\n').append(first);
 			for(SplitDataSet<T> second:datasets){
 				ConfusionMatrix matrix=matrices.get(new Pair<>(first,second));
 				buf.append('\t');
 				if(matrix!=null)
-					buf.append(matrix.getAccuracy());
+					buf.append(matrix.getSummary());
 			}
 		}
 		return buf.toString();
@@ -158,12 +392,16 @@ public class Validator<T>{
 	 * @param classifierFactory the factory for classifier being tested
 	 * @return confusion matrix
 	 */
-	public  <M extends Trainable<T>,T> ConfusionMatrix validate(Stream<Sample<T>> trainSampleStream,Stream<Sample<T>> testSampleStream,ClassifierFactory<Classifier<T>,M,T> classifierFactory){
-		return validate(testSampleStream,classifierFactory.getClassifier(train(trainSampleStream,classifierFactory)));
+	public  <M extends Trainable<T>,T> ConfusionMatrix validate(Stream<Sample<T>> trainSampleStream,Stream<Sample<T>> testSampleStream,ClassifierFactory<? extends Classifier<T>,M,T> classifierFactory){
+		M model=train(trainSampleStream,classifierFactory);
+		Classifier<T> classifier=classifierFactory.getClassifier(model);
+		ConfusionMatrix matrix=validate(testSampleStream,classifier);
+		matrix.setEstimatedBytes(MemoryAccountable.estimatedBytes(model),MemoryAccountable.estimatedBytes(classifier));
+		return matrix;
 	}
-	private  <M extends Trainable<T>,T> M train(Stream<Sample<T>> trainSampleStream,ClassifierFactory<Classifier<T>,M,T> classifierFactory){
+	private  <M extends Trainable<T>,T> M train(Stream<Sample<T>> trainSampleStream,ClassifierFactory<? extends Classifier<T>,M,T> classifierFactory){
 		M model=classifierFactory.createModel();
-		model.train(trainSampleStream);
+		model.train(trainSampleStream.sequential());
 		return model;
 	}
 	/**
@@ -174,11 +412,19 @@ public class Validator<T>{
 	 * @return confusion matrix
 	 */
 	public  <T> ConfusionMatrix validate(Stream<Sample<T>> testSampleStream,Classifier<T> classifier){
-		ConfusionMatrix table=new ConfusionMatrix();
-		Long time=System.currentTimeMillis();
-		testSampleStream.forEachOrdered((sample)->{
-			table.advanceFrequency(sample.getCategory(),classifier.classify(sample.getData()).getCategory());
-		});
+		long time=System.currentTimeMillis();
+		ConfusionMatrix table;
+		if(parallel){
+			table=testSampleStream.parallel().collect(ConfusionMatrix::new,
+					(matrix,sample)->matrix.advanceFrequency(sample.getCategory(),classifier.classify(sample.getData()).getCategory()),
+					ConfusionMatrix::merge);
+		}else{
+			ConfusionMatrix matrix=new ConfusionMatrix();
+			testSampleStream.sequential().forEachOrdered((sample)->{
+				matrix.advanceFrequency(sample.getCategory(),classifier.classify(sample.getData()).getCategory());
+			});
+			table=matrix;
+		}
 		table.advanceTestTime(System.currentTimeMillis()-time);
 		return table;
 	}
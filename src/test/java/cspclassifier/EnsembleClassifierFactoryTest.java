@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier;
+
+import cspclassifier.validator.*;
+import java.util.*;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Check that the ensemble always answers with at least one member
+ * @author S.Welcker
+ */
+public class EnsembleClassifierFactoryTest{
+	@Test
+	public void membersSlowerThanDeadlineStillAnswer(){
+		EnsembleClassifierFactory<String> factory=new EnsembleClassifierFactory<String>().
+				addMember(new FixedFactory("a",200,false),1).addMember(new FixedFactory("b",400,false),1).setDeadline(20);
+		EnsembleClassifierFactory.EnsembleClassifier<String> classifier=factory.getClassifier(factory.createModel());
+		ClassificationResult result=classifier.classify("x");
+		assertNotNull(result);
+		assertEquals(new Category("a"),result.getCategory());
+		assertEquals(1,classifier.getPartialCount());
+	}
+	@Test
+	public void failingMembersAreReported(){
+		EnsembleClassifierFactory<String> factory=new EnsembleClassifierFactory<String>().
+				addMember(new FixedFactory("a",0,true),1).addMember(new FixedFactory("b",50,true),1).setDeadline(20);
+		EnsembleClassifierFactory.EnsembleClassifier<String> classifier=factory.getClassifier(factory.createModel());
+		try{
+			classifier.classify("x");
+			fail();
+		}catch(IllegalStateException ex){
+		}
+	}
+	/**
+	 * Factory of classifiers that always answer the same category after a delay
+	 */
+	private static class FixedFactory implements ClassifierFactory<Classifier<String>,Trainable<String>,String>{
+		private final String category;
+		private final long delay;
+		private final boolean failing;
+		FixedFactory(String category,long delay,boolean failing){
+			this.category=category;
+			this.delay=delay;
+			this.failing=failing;
+		}
+		@Override
+		public Classifier<String> getClassifier(Trainable<String> model){
+			return (object,max)->{
+				long end=System.currentTimeMillis()+delay;
+				while(System.currentTimeMillis()<end){
+					Thread.yield();
+				}
+				if(failing)
+					throw new IllegalArgumentException(category);
+				return Collections.singletonList(new ClassificationResult(1.0,new Category(category)));
+			};
+		}
+		@Override
+		public Trainable<String> createModel(){
+			return (data,category)->{
+			};
+		}
+	}
+}
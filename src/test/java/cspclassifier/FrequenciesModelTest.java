@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier;
+
+import cspclassifier.util.*;
+import cspclassifier.validator.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.*;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Compare the bounded, spilling and decaying modes of FrequenciesModel with
+ * the exact unbounded model
+ * @author S.Welcker
+ */
+public class FrequenciesModelTest{
+	private final List<Sample<Frequencies<String>>> samples=TestCorpus.generate(2000,4,3000,7);
+	private final FrequenciesModel<String> exact=TestCorpus.exact(samples);
+	@Test
+	public void boundedModeWithinLimitIsExact(){
+		FrequenciesModel<String> bounded=new FrequenciesModel<>(CountMinSketch.withMemory(1<<16,0.01),1,Long.MAX_VALUE);
+		bounded.train(samples.stream());
+		assertSameCounts(exact,bounded);
+	}
+	@Test
+	public void boundedModeKeepsFrequentTokens(){
+		FrequenciesModel<String> bounded=new FrequenciesModel<>(1<<17);
+		bounded.train(samples.stream());
+		long threshold=bounded.getThreshold();
+		assertTrue(threshold>2);
+		assertEquals(exact.getSampleCounts(),bounded.getSampleCounts());
+		Frequencies<String> kept=bounded.getTotalTokenFrequencies();
+		exact.getTotalTokenFrequencies().toMap().forEach((token,counter)->{
+			long count=counter.getCount();
+			long approximation=kept.getFrequency(token);
+			assertTrue(token,approximation<=count);
+			assertTrue(token,count-approximation<threshold);
+			if(count>=threshold)
+				assertTrue(token,approximation>0);
+		});
+		exact.getTokenFrequencies().forEach((category,frequencies)->{
+			Frequencies<String> approximation=bounded.getTokenFrequencies().get(category);
+			approximation.toMap().forEach((token,counter)->assertTrue(token,counter.getCount()<=frequencies.getFrequency(token)));
+		});
+	}
+	@Test
+	public void spillingModeIsExact() throws IOException{
+		File directory=Files.createTempDirectory("spill").toFile();
+		try{
+			FrequenciesModel<String> spilled=new FrequenciesModel<String>().setSpilling(directory,Function.identity(),Function.identity()).setSpillBufferSize(16);
+			spilled.train(samples.stream());
+			assertSameCounts(exact,spilled);
+			assertEquals(0,directory.list().length);
+		}finally{
+			TestCorpus.delete(directory);
+		}
+	}
+	@Test
+	public void spillingModeKeepsLongTokens() throws IOException{
+		char[] chars=new char[70000];
+		Arrays.fill(chars,'x');
+		String token=new String(chars);
+		List<Sample<Frequencies<String>>> withLong=new ArrayList<>(samples);
+		withLong.add(new Sample<>(new Frequencies<>(Arrays.asList(token,token,"t1").stream()),new Category("c0")));
+		File directory=Files.createTempDirectory("spill").toFile();
+		try{
+			FrequenciesModel<String> spilled=new FrequenciesModel<String>().setSpilling(directory,Function.identity(),Function.identity()).setSpillBufferSize(16);
+			spilled.train(withLong.stream());
+			assertSameCounts(TestCorpus.exact(withLong),spilled);
+			assertEquals(2,spilled.getTokenFrequencies().get(new Category("c0")).getFrequency(token));
+		}finally{
+			TestCorpus.delete(directory);
+		}
+	}
+	@Test
+	public void spillingModeRefusesBoundedMode(){
+		try{
+			new FrequenciesModel<String>(1<<16).setSpilling(new File("spill"),Function.identity(),Function.identity());
+			fail();
+		}catch(IllegalStateException ex){
+		}
+	}
+	@Test
+	public void decayingModeHalvesOldSamples(){
+		int halfLife=1000;
+		FrequenciesModel<String> decaying=new FrequenciesModel<String>().setHalfLife(halfLife);
+		Frequencies<String> old=new Frequencies<>(Arrays.asList("old").stream());
+		Frequencies<String> recent=new Frequencies<>(Arrays.asList("recent").stream());
+		for(int i=0;i<8;i++)
+			decaying.train(old,new Category("old"));
+		for(int i=0;i<halfLife;i++)
+			decaying.train(recent,new Category("recent"));
+		double expected=0;
+		for(int i=1;i<=halfLife;i++)
+			expected+=Math.pow(2,-(double)i/halfLife);
+		assertEquals(4,decaying.getSampleCounts().getFrequency(new Category("old")));
+		assertEquals(4,decaying.getTokenFrequencies().get(new Category("old")).getFrequency("old"));
+		assertEquals(expected,decaying.getSampleCounts().getFrequency(new Category("recent")),1);
+	}
+	@Test
+	public void decayingModeWithoutDecayIsExact(){
+		FrequenciesModel<String> decaying=new FrequenciesModel<String>().setHalfLife(1e12).setCompactionInterval(500);
+		decaying.train(samples.stream());
+		assertSameCounts(exact,decaying);
+	}
+	@Test
+	public void decayingModeDoesNotOverflow(){
+		int halfLife=100,count=1000;
+		long frequency=1L<<30;
+		FrequenciesModel<String> decaying=new FrequenciesModel<String>().setHalfLife(halfLife);
+		Frequencies<String> data=new Frequencies<>();
+		data.advanceFrequency("token",frequency);
+		for(int i=0;i<count;i++)
+			decaying.train(data,new Category("c"));
+		double expected=0;
+		for(int i=1;i<=count;i++)
+			expected+=frequency*Math.pow(2,-(double)i/halfLife);
+		long actual=decaying.getTokenFrequencies().get(new Category("c")).getFrequency("token");
+		assertEquals(1,actual/expected,1e-3);
+	}
+	@Test
+	public void decayingModeRefusesOtherModes(){
+		try{
+			new FrequenciesModel<String>(1<<16).setHalfLife(100);
+			fail();
+		}catch(IllegalStateException ex){
+		}
+		try{
+			new FrequenciesModel<String>().setSpilling(new File("spill"),Function.identity(),Function.identity()).setHalfLife(100);
+			fail();
+		}catch(IllegalStateException ex){
+		}
+		try{
+			new FrequenciesModel<String>().setHalfLife(100).setSpilling(new File("spill"),Function.identity(),Function.identity());
+			fail();
+		}catch(IllegalStateException ex){
+		}
+		try{
+			new BayesianClassifierFactory<String>().setMemoryLimit(1<<16).setHalfLife(100);
+			fail();
+		}catch(IllegalStateException ex){
+		}
+		try{
+			new TfIdfClassifierFactory<String>().setHalfLife(100).setMemoryLimit(1<<16);
+			fail();
+		}catch(IllegalStateException ex){
+		}
+		try{
+			exact.setHalfLife(100);
+			fail();
+		}catch(IllegalStateException ex){
+		}
+	}
+	/**
+	 * Counts are saved decayed per category, so only the totals over
+	 * categories may differ by rounding
+	 */
+	@Test
+	public void decayingModeSurvivesSaveAndLoad() throws IOException{
+		FrequenciesModel<String> decaying=new FrequenciesModel<String>().setHalfLife(500);
+		decaying.train(samples.stream());
+		File directory=Files.createTempDirectory("model").toFile();
+		try{
+			decaying.save(directory,Function.identity());
+			FrequenciesModel<String> loaded=new FrequenciesModel<String>().setHalfLife(500);
+			loaded.load(directory,Function.identity());
+			assertEquals(decaying.getSampleCounts(),loaded.getSampleCounts());
+			assertEquals(decaying.getTokenFrequencies(),loaded.getTokenFrequencies());
+			Frequencies<String> documentFrequencies=loaded.getTotalDocumentFrequencies();
+			decaying.getTotalDocumentFrequencies().toMap().forEach((token,counter)->
+					assertEquals(token,counter.getCount(),documentFrequencies.getFrequency(token),decaying.getSampleCounts().getTokenCount()));
+			FrequenciesModel<String> undecayed=new FrequenciesModel<>();
+			undecayed.load(directory,Function.identity());
+			assertSameCounts(loaded,undecayed);
+		}finally{
+			TestCorpus.delete(directory);
+		}
+	}
+	private static void assertSameCounts(FrequenciesModel<String> expected,FrequenciesModel<String> actual){
+		assertEquals(expected.getSampleCounts(),actual.getSampleCounts());
+		assertEquals(expected.getTokenFrequencies(),actual.getTokenFrequencies());
+		assertEquals(expected.getTotalDocumentFrequencies(),actual.getTotalDocumentFrequencies());
+	}
+}
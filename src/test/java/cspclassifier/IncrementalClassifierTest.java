@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier;
+
+import cspclassifier.util.*;
+import cspclassifier.validator.*;
+import java.util.*;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Compare incrementally trained classifiers with classifiers rebuilt from
+ * the model
+ * @author S.Welcker
+ */
+public class IncrementalClassifierTest{
+	private final List<Sample<Frequencies<String>>> initial=TestCorpus.generate(1000,3,2000,11);
+	private final List<Sample<Frequencies<String>>> update=TestCorpus.generate(1000,4,2000,13);
+	private final List<Sample<Frequencies<String>>> test=TestCorpus.generate(300,4,2000,17);
+	@Test
+	public void classifiersAreIncrementalOnlyWhenRequested(){
+		assertFalse(build(new BayesianClassifierFactory<>(),initial) instanceof IncrementalClassifier);
+		assertFalse(build(new TfIdfClassifierFactory<>(),initial) instanceof IncrementalClassifier);
+		assertTrue(build(new BayesianClassifierFactory<String>().setIncremental(true),initial) instanceof IncrementalClassifier);
+		assertTrue(build(new TfIdfClassifierFactory<String>().setIncremental(true),initial) instanceof IncrementalClassifier);
+	}
+	@Test
+	public void incrementalBayesianEqualsRebuilt(){
+		BayesianClassifierFactory<String> factory=new BayesianClassifierFactory<String>().setIncremental(true);
+		Classifier<Frequencies<String>> incremental=trainIncrementally(factory);
+		Classifier<Frequencies<String>> rebuilt=build(factory,all());
+		for(Sample<Frequencies<String>> sample:test)
+			assertArrayEquals(scores(rebuilt,sample),scores(incremental,sample),1e-9);
+	}
+	@Test
+	public void incrementalTfIdfApproximatesRebuilt(){
+		TfIdfClassifierFactory<String> factory=new TfIdfClassifierFactory<String>().setIncremental(true);
+		Classifier<Frequencies<String>> incremental=trainIncrementally(factory);
+		Classifier<Frequencies<String>> rebuilt=build(factory,all());
+		int agree=0;
+		for(Sample<Frequencies<String>> sample:test){
+			if(incremental.classify(sample.getData()).getCategory().equals(rebuilt.classify(sample.getData()).getCategory()))
+				++agree;
+		}
+		assertTrue(agree>=test.size()*9/10);
+	}
+	@Test
+	public void incrementalTrainingKeepsSelectedVocabulary(){
+		Set<String> selected=new HashSet<>();
+		initial.forEach((sample)->sample.getData().toMap().keySet().stream().filter((token)->token.startsWith("t")).forEach(selected::add));
+		for(BagClassifierFactory<Classifier<Frequencies<String>>,FrequenciesModel<String>,String> factory:
+				Arrays.<BagClassifierFactory<Classifier<Frequencies<String>>,FrequenciesModel<String>,String>>asList(
+						new BayesianClassifierFactory<String>().setIncremental(true),new TfIdfClassifierFactory<String>().setIncremental(true))){
+			factory.setFeatureSelector((model,classifierSupplier)->selected);
+			@SuppressWarnings("unchecked")
+			IncrementalClassifier<Frequencies<String>> classifier=(IncrementalClassifier<Frequencies<String>>)build(factory,initial);
+			update.forEach((sample)->classifier.train(sample.getData(),sample.getCategory()));
+			TokenStreamClassifier<String> tokens=(TokenStreamClassifier<String>)classifier;
+			for(Sample<Frequencies<String>> sample:update)
+				for(String token:sample.getData().toMap().keySet())
+					assertEquals(token,selected.contains(token),tokens.isKnown(token));
+		}
+	}
+	private List<Sample<Frequencies<String>>> all(){
+		List<Sample<Frequencies<String>>> all=new ArrayList<>(initial);
+		all.addAll(update);
+		return all;
+	}
+	@SuppressWarnings("unchecked")
+	private Classifier<Frequencies<String>> trainIncrementally(BagClassifierFactory<? extends Classifier<Frequencies<String>>,FrequenciesModel<String>,String> factory){
+		IncrementalClassifier<Frequencies<String>> classifier=(IncrementalClassifier<Frequencies<String>>)build(factory,initial);
+		update.forEach((sample)->classifier.train(sample.getData(),sample.getCategory()));
+		return classifier;
+	}
+	private static Classifier<Frequencies<String>> build(BagClassifierFactory<? extends Classifier<Frequencies<String>>,FrequenciesModel<String>,String> factory,List<Sample<Frequencies<String>>> samples){
+		FrequenciesModel<String> model=factory.createModel();
+		model.train(samples.stream());
+		return factory.getClassifier(model);
+	}
+	private static double[] scores(Classifier<Frequencies<String>> classifier,Sample<Frequencies<String>> sample){
+		Map<Category,Double> scores=new TreeMap<>(Comparator.comparing(Category::getName));
+		classifier.getCandidates(sample.getData()).forEach((result)->scores.put(result.getCategory(),result.getScore()));
+		return scores.values().stream().mapToDouble(Double::doubleValue).toArray();
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2019 S.Welcker
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package cspclassifier;
+
+import cspclassifier.util.*;
+import cspclassifier.validator.*;
+import java.io.*;
+import java.util.*;
+
+/**
+ * Small deterministic corpus shared by the tests, token frequencies roughly
+ * follow Zipf's law and half of the tokens of a sample are specific to its
+ * category
+ * @author S.Welcker
+ */
+final class TestCorpus{
+	private TestCorpus(){
+	}
+	/**
+	 * Generate samples
+	 * @param count the number of samples
+	 * @param categories the number of categories
+	 * @param vocabulary the number of distinct ranks of tokens
+	 * @param seed the random seed
+	 * @return the samples
+	 */
+	static List<Sample<Frequencies<String>>> generate(int count,int categories,int vocabulary,long seed){
+		Random random=new Random(seed);
+		List<Sample<Frequencies<String>>> samples=new ArrayList<>(count);
+		for(int i=0;i<count;i++){
+			int category=random.nextInt(categories);
+			Frequencies<String> data=new Frequencies<>();
+			for(int j=5+random.nextInt(20);j>0;j--){
+				int rank=(int)Math.pow(vocabulary,random.nextDouble());
+				data.advanceFrequency(random.nextBoolean()?"t"+rank:"c"+category+"_"+rank);
+			}
+			samples.add(new Sample<>(data,new Category("c"+category)));
+		}
+		return samples;
+	}
+	/**
+	 * @param samples the training samples
+	 * @return the exact unbounded model trained on the samples
+	 */
+	static FrequenciesModel<String> exact(List<Sample<Frequencies<String>>> samples){
+		FrequenciesModel<String> model=new FrequenciesModel<>();
+		model.train(samples.stream());
+		return model;
+	}
+	/**
+	 * Delete a directory and its content
+	 * @param file the directory
+	 */
+	static void delete(File file){
+		File[] children=file.listFiles();
+		if(children!=null)
+			for(File child:children)
+				delete(child);
+		file.delete();
+	}
+}